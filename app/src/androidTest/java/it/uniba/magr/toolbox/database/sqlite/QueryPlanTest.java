@@ -0,0 +1,192 @@
+package it.uniba.magr.toolbox.database.sqlite;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
+import it.uniba.magr.toolbox.database.sqlite.bean.OutboxOperation;
+import it.uniba.magr.toolbox.database.sqlite.bean.Type;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The query plans of the frequent queries: the main list pages, the sync
+ * lookups and the outbox of a measure must be served by an index, so their
+ * cost doesn't grow with the number of measurements.
+ * The queries are the ones of the DAOs, with their arguments.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+
+    /**
+     * The number of measurements, so the planner statistics are not the empty table ones.
+     * An operation is queued for a measure out of five.
+     */
+    private static final int MEASUREMENTS_COUNT = 200;
+
+    private SqliteManager sqliteManager;
+
+    @Before
+    public void createDatabase() {
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        sqliteManager = Room.inMemoryDatabaseBuilder(context, SqliteManager.class).build();
+
+        List<Measure> measurements = new ArrayList<>(MEASUREMENTS_COUNT);
+
+        for (int i = 0 ; i < MEASUREMENTS_COUNT ; i++) {
+
+            Measure measure = new Measure();
+
+            measure.setUuid(UUID.randomUUID().toString());
+            measure.setType(Type.RULER);
+            measure.setTitle("Measure " + i);
+            measure.setCardOrder(i);
+            measure.setDeleted(i % 10 == 0);
+
+            measurements.add(measure);
+
+        }
+
+        sqliteManager.measurementsDao().insertMeasurements(measurements.toArray(new Measure[0]));
+
+        for (int measureId = 1 ; measureId <= MEASUREMENTS_COUNT ; measureId += 5) {
+            sqliteManager.outboxDao().enqueue(measureId, OutboxOperation.UPDATE);
+        }
+
+        // like the migrated databases, see SqliteManager.MIGRATION_6_7.
+        sqliteManager.getOpenHelper().getWritableDatabase().execSQL("ANALYZE");
+
+    }
+
+    @After
+    public void closeDatabase() {
+        sqliteManager.close();
+    }
+
+    @Test
+    public void visibleFirstPageReadsTheOrderIndex() {
+
+        List<String> plan = explain("SELECT * FROM Measurements WHERE NOT deleted "
+                + "ORDER BY card_order, id LIMIT ?", 30);
+
+        assertIndexed(plan);
+        assertNotSorted(plan);
+
+    }
+
+    @Test
+    public void visiblePageSeeksTheOrderIndex() {
+
+        List<String> plan = explain("SELECT * FROM Measurements WHERE NOT deleted "
+                + "AND card_order >= ? AND (card_order > ? OR id > ?) "
+                + "ORDER BY card_order, id LIMIT ?", 100, 100, 101, 30);
+
+        assertIndexed(plan);
+        assertNotSorted(plan);
+        assertTrue(plan.toString(), plan.toString().contains("card_order>"));
+
+    }
+
+    @Test
+    public void existingUuidsSearchTheUuidIndex() {
+
+        List<String> plan = explain("SELECT uuid FROM Measurements WHERE uuid IN (?, ?, ?)",
+                "a", "b", "c");
+
+        assertIndexed(plan);
+
+    }
+
+    @Test
+    public void measureOperationsSearchTheOutboxIndex() {
+
+        List<String> plan = explain("SELECT * FROM Outbox WHERE measure_id=? ORDER BY id", 1);
+
+        assertIndexed(plan);
+        assertNotSorted(plan);
+
+    }
+
+    @Test
+    public void measureOperationsRemovalSearchesTheOutboxIndex() {
+        assertIndexed(explain("DELETE FROM Outbox WHERE measure_id=?", 1));
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    /**
+     * @param sql The not null query.
+     * @param arguments The not null arguments of the query.
+     * @return The not null details of the query plan, a line per step.
+     */
+    private List<String> explain(String sql, Object... arguments) {
+
+        List<String> plan = new ArrayList<>();
+
+        try (Cursor cursor = sqliteManager.query(new SimpleSQLiteQuery("EXPLAIN QUERY PLAN " + sql, arguments))) {
+
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detailIndex));
+            }
+
+        }
+
+        return plan;
+
+    }
+
+    /**
+     * Each table is searched or scanned through an index, never scanned row by row.
+     *
+     * @param plan The not null details of the query plan.
+     */
+    private static void assertIndexed(List<String> plan) {
+
+        assertFalse(plan.isEmpty());
+
+        for (String step : plan) {
+
+            boolean tableStep = step.startsWith("SCAN") || step.startsWith("SEARCH");
+
+            if (tableStep) {
+                assertTrue(plan.toString(), step.contains("USING INDEX") || step.contains("USING COVERING INDEX"));
+            }
+
+        }
+
+    }
+
+    /**
+     * The rows are read in the index order, the result is not sorted afterwards.
+     *
+     * @param plan The not null details of the query plan.
+     */
+    private static void assertNotSorted(List<String> plan) {
+
+        for (String step : plan) {
+            assertFalse(plan.toString(), step.contains("TEMP B-TREE"));
+        }
+
+    }
+
+}
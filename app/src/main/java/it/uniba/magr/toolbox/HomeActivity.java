@@ -16,7 +16,6 @@ import androidx.navigation.NavController;
 import androidx.navigation.NavDestination;
 import androidx.navigation.fragment.NavHostFragment;
 import androidx.navigation.ui.NavigationUI;
-import androidx.room.Room;
 
 import android.content.Context;
 import android.content.Intent;
@@ -48,6 +47,8 @@ import java.util.Optional;
 import it.uniba.magr.toolbox.auth.AuthActivity;
 import it.uniba.magr.toolbox.database.realtime.RealtimeManager;
 import it.uniba.magr.toolbox.database.sqlite.SqliteManager;
+import it.uniba.magr.toolbox.database.sync.MeasureWriteCoalescer;
+import it.uniba.magr.toolbox.database.sync.SyncEngine;
 import it.uniba.magr.toolbox.introduction.IntroductionFragment;
 import it.uniba.magr.toolbox.loading.LoadingFragment;
 import it.uniba.magr.toolbox.navigation.Navigable;
@@ -159,6 +160,18 @@ public class HomeActivity extends AppCompatActivity implements
     @Getter
     private RealtimeManager realtimeManager;
 
+    /**
+     * Gets the background synchronization engine of this application.
+     */
+    @Getter
+    private SyncEngine syncEngine;
+
+    /**
+     * Gets the write layer of the interactive edits of the measurements.
+     */
+    @Getter
+    private MeasureWriteCoalescer writeCoalescer;
+
     /**
      * The loading fragment that will be replaced
      * when the activity is starting.
@@ -176,10 +189,13 @@ public class HomeActivity extends AppCompatActivity implements
         super.onCreate(bundle);
         setContentView(R.layout.activity_home);
 
-        sqliteManager = Room.databaseBuilder(getApplicationContext(),
-                SqliteManager.class, "ToolBox").build();
+        // the databases and their engines belong to the application, see ToolboxApplication.
+        ToolboxApplication application = (ToolboxApplication) getApplication();
 
-        realtimeManager = new RealtimeManager(this);
+        sqliteManager   = application.getSqliteManager();
+        realtimeManager = application.getRealtimeManager();
+        syncEngine      = application.getSyncEngine();
+        writeCoalescer  = application.getWriteCoalescer();
 
         LocaleUtil.onActivityCreated();
         setupNavigation();
@@ -216,7 +232,11 @@ public class HomeActivity extends AppCompatActivity implements
     protected void onDestroy() {
 
         super.onDestroy();
-        sqliteManager.close();
+
+        // the engines outlive the activity, they are neither stopped nor waited here.
+        if (isFinishing()) {
+            realtimeManager.stopSession();
+        }
 
     }
 
@@ -400,6 +420,7 @@ public class HomeActivity extends AppCompatActivity implements
 
             }
 
+            realtimeManager.startSession();
             requestRequiredPermissions();
 
         }
@@ -555,6 +576,8 @@ public class HomeActivity extends AppCompatActivity implements
             firebaseAuth.signOut();
         }
 
+        realtimeManager.stopSession();
+
         AuthActivity.setAnonymousUser(this, false);
         Intent intent = new Intent(this, AuthActivity.class);
         startActivity(intent);
@@ -570,6 +593,8 @@ public class HomeActivity extends AppCompatActivity implements
             firebaseAuth.signOut();
         }
 
+        realtimeManager.stopSession();
+
         Intent intent = new Intent(this, AuthActivity.class);
         startActivity(intent);
 
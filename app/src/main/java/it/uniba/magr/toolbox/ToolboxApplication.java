@@ -0,0 +1,88 @@
+package it.uniba.magr.toolbox;
+
+import android.app.Application;
+
+import androidx.room.Room;
+
+import it.uniba.magr.toolbox.database.realtime.ConnectivityMonitor;
+import it.uniba.magr.toolbox.database.realtime.RealtimeManager;
+import it.uniba.magr.toolbox.database.sqlite.SqliteManager;
+import it.uniba.magr.toolbox.database.sqlite.TombstoneCompactor;
+import it.uniba.magr.toolbox.database.sync.FirebaseRemoteStore;
+import it.uniba.magr.toolbox.database.sync.MeasureWriteCoalescer;
+import it.uniba.magr.toolbox.database.sync.SyncEngine;
+import it.uniba.magr.toolbox.database.sync.SyncState;
+import lombok.Getter;
+
+/**
+ * The owner of the databases and of their background engines.
+ *
+ * <p>
+ *     They live as long as the process: an activity that is destroyed, also
+ *     by a configuration change, neither stops them nor waits for their work.
+ *     The process is never terminated gracefully, so they are never stopped:
+ *     the pending operations are kept by the outbox of the local database.
+ * </p>
+ */
+public class ToolboxApplication extends Application {
+
+    /**
+     * The delay of the synchronization when the connection is back,
+     * so the network changes of the same reconnection are merged.
+     */
+    private static final long CONNECTIVITY_SYNC_DELAY_MILLIS = 2_000L;
+
+    /**
+     * Gets the SQLite database manager of this application.
+     */
+    @Getter
+    private SqliteManager sqliteManager;
+
+    /**
+     * Gets the Realtime database manager of this application.
+     */
+    @Getter
+    private RealtimeManager realtimeManager;
+
+    /**
+     * Gets the background synchronization engine of this application.
+     */
+    @Getter
+    private SyncEngine syncEngine;
+
+    /**
+     * Gets the write layer of the interactive edits of the measurements.
+     */
+    @Getter
+    private MeasureWriteCoalescer writeCoalescer;
+
+    @Override
+    public void onCreate() {
+
+        super.onCreate();
+
+        sqliteManager = Room.databaseBuilder(this, SqliteManager.class, "ToolBox")
+                .addMigrations(SqliteManager.MIGRATION_1_2, SqliteManager.MIGRATION_2_3,
+                        SqliteManager.MIGRATION_3_4, SqliteManager.MIGRATION_4_5,
+                        SqliteManager.MIGRATION_5_6, SqliteManager.MIGRATION_6_7,
+                        SqliteManager.MIGRATION_7_8)
+                .build();
+
+        realtimeManager = new RealtimeManager(this);
+        FirebaseRemoteStore remoteStore = new FirebaseRemoteStore(realtimeManager);
+
+        syncEngine = new SyncEngine(sqliteManager, remoteStore,
+                new SyncState(this), realtimeManager.getMetrics());
+        writeCoalescer = new MeasureWriteCoalescer(sqliteManager, remoteStore);
+
+        TombstoneCompactor tombstoneCompactor = new TombstoneCompactor(sqliteManager);
+        tombstoneCompactor.start();
+
+        // the pending operations are sent as soon as the connection is back.
+        ConnectivityMonitor connectivityMonitor = realtimeManager.getConnectivityMonitor();
+        connectivityMonitor.addListener(() -> syncEngine.requestSync(CONNECTIVITY_SYNC_DELAY_MILLIS));
+        connectivityMonitor.start();
+
+    }
+
+}
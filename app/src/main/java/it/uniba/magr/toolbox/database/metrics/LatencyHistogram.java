@@ -0,0 +1,106 @@
+package it.uniba.magr.toolbox.database.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of latencies with fixed buckets.
+ * Recording a value is lock free, so it can be done from any callback thread.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The upper bounds of the buckets in milliseconds, the last bucket is unbounded.
+     */
+    private static final long[] BUCKET_BOUNDS_MILLIS = {
+            10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000
+    };
+
+    @NotNull
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+
+    @NotNull
+    private final AtomicLong count = new AtomicLong();
+
+    @NotNull
+    private final AtomicLong totalMillis = new AtomicLong();
+
+    @NotNull
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    /**
+     * @param millis The latency in milliseconds.
+     */
+    public void record(long millis) {
+
+        int bucket = 0;
+
+        while (bucket < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalMillis.addAndGet(millis);
+        maxMillis.accumulateAndGet(millis, Math :: max);
+
+    }
+
+    /**
+     * @return The number of recorded latencies.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The mean latency in milliseconds, 0 if nothing has been recorded.
+     */
+    public long getMeanMillis() {
+
+        long current = count.get();
+        return current == 0 ? 0 : totalMillis.get() / current;
+
+    }
+
+    /**
+     * @return The max recorded latency in milliseconds.
+     */
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    /**
+     * The percentile is approximated by the upper bound of its bucket.
+     *
+     * @param percentile The percentile between 0 and 1.
+     * @return The latency in milliseconds, 0 if nothing has been recorded.
+     */
+    public long getPercentileMillis(double percentile) {
+
+        long current = count.get();
+
+        if (current == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percentile * current);
+        long seen = 0;
+
+        for (int i = 0 ; i < BUCKET_BOUNDS_MILLIS.length ; i++) {
+
+            seen += buckets.get(i);
+
+            if (seen >= rank) {
+                return BUCKET_BOUNDS_MILLIS[i];
+            }
+
+        }
+
+        return getMaxMillis();
+
+    }
+
+}
@@ -0,0 +1,326 @@
+package it.uniba.magr.toolbox.database.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.uniba.magr.toolbox.database.realtime.MeasurePage;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMagnetometer;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+
+/**
+ * The instrumentation of the remote operations and of the synchronizations.
+ *
+ * <p>
+ *     Each remote operation has its own counters and latency histogram.
+ *     The payload bytes are estimated from the written and decoded values,
+ *     firebase doesn't expose the size of the exchanged messages.
+ *     All the methods are thread-safe and lock free.
+ * </p>
+ */
+public class SyncMetrics {
+
+    /**
+     * The estimated size of a number, a boolean or a missing value.
+     */
+    private static final int SCALAR_BYTES = 8;
+
+    /**
+     * The estimated size of the fields shared by all the measurements.
+     */
+    private static final int MEASURE_OVERHEAD_BYTES = 64;
+
+    @NotNull
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+    @NotNull
+    private final AtomicLong bytesUp = new AtomicLong();
+
+    @NotNull
+    private final AtomicLong bytesDown = new AtomicLong();
+
+    @NotNull
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * The number of pending operations of the outbox, -1 if unknown.
+     */
+    @NotNull
+    private final AtomicLong queueDepth = new AtomicLong(-1);
+
+    /**
+     * The time of the creation or of the latest reset.
+     */
+    private volatile long startMillis = System.currentTimeMillis();
+
+    //
+    // RECORDING METHODS
+    //
+
+    /**
+     * @param operation The not null name of the operation.
+     * @param millis The latency in milliseconds.
+     * @param successful True if the operation has been completed.
+     */
+    public void recordOperation(@NotNull String operation, long millis, boolean successful) {
+
+        OperationMetrics operationMetrics = operations.computeIfAbsent(operation, key -> new OperationMetrics());
+
+        operationMetrics.calls.incrementAndGet();
+        operationMetrics.latency.record(millis);
+
+        if (!successful) {
+            operationMetrics.failures.incrementAndGet();
+        }
+
+    }
+
+    /**
+     * @param bytes The estimated number of uploaded bytes.
+     */
+    public void addBytesUp(long bytes) {
+        bytesUp.addAndGet(bytes);
+    }
+
+    /**
+     * @param bytes The estimated number of downloaded bytes.
+     */
+    public void addBytesDown(long bytes) {
+        bytesDown.addAndGet(bytes);
+    }
+
+    /**
+     * Record a retry scheduled after a failure.
+     */
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * @param depth The number of pending operations of the outbox.
+     */
+    public void setQueueDepth(long depth) {
+        queueDepth.set(depth);
+    }
+
+    /**
+     * Clear all the counters.
+     */
+    public void reset() {
+
+        operations.clear();
+        bytesUp.set(0);
+        bytesDown.set(0);
+        retries.set(0);
+        startMillis = System.currentTimeMillis();
+
+    }
+
+    //
+    // READING METHODS
+    //
+
+    /**
+     * @return The number of recorded operations, the failed ones included.
+     */
+    public long getCalls() {
+
+        long calls = 0;
+
+        for (OperationMetrics operationMetrics : operations.values()) {
+            calls += operationMetrics.calls.get();
+        }
+
+        return calls;
+
+    }
+
+    /**
+     * @return The estimated number of uploaded bytes.
+     */
+    public long getBytesUp() {
+        return bytesUp.get();
+    }
+
+    /**
+     * @return The estimated number of downloaded bytes.
+     */
+    public long getBytesDown() {
+        return bytesDown.get();
+    }
+
+    /**
+     * @return The number of retries scheduled after a failure.
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return The number of pending operations of the outbox, -1 if unknown.
+     */
+    public long getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return A not null plain text report of all the metrics.
+     */
+    @NotNull
+    public String dump() {
+
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("Since: ").append(new Date(startMillis)).append('\n');
+        builder.append("Bytes up: ").append(getBytesUp()).append('\n');
+        builder.append("Bytes down: ").append(getBytesDown()).append('\n');
+        builder.append("Retries: ").append(getRetries()).append('\n');
+        builder.append("Queue depth: ").append(getQueueDepth()).append('\n');
+        builder.append('\n');
+
+        // sorted by name, so two dumps can be compared.
+        for (Map.Entry<String, OperationMetrics> entry : new TreeMap<>(operations).entrySet()) {
+
+            OperationMetrics operationMetrics = entry.getValue();
+            LatencyHistogram latency = operationMetrics.latency;
+
+            builder.append(String.format(Locale.ROOT,
+                    "%s: calls=%d failures=%d mean=%dms p50<=%dms p95<=%dms max=%dms%n",
+                    entry.getKey(),
+                    operationMetrics.calls.get(),
+                    operationMetrics.failures.get(),
+                    latency.getMeanMillis(),
+                    latency.getPercentileMillis(0.5),
+                    latency.getPercentileMillis(0.95),
+                    latency.getMaxMillis()));
+
+        }
+
+        return builder.toString();
+
+    }
+
+    /**
+     * @param file The not null file where the report is written, it is replaced if it exists.
+     * @throws IOException Invoked if the file cannot be written.
+     */
+    public void dumpToFile(@NotNull File file) throws IOException {
+
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(dump());
+        }
+
+    }
+
+    //
+    // ESTIMATION METHODS
+    //
+
+    /**
+     * Estimate the size of a value exchanged with the remote database.
+     *
+     * @param value The value, a measure, a page, a collection, a map or a scalar.
+     * @return The estimated size in bytes.
+     */
+    public static long estimateBytes(@Nullable Object value) {
+
+        if (value instanceof String) {
+            return ((String) value).length();
+        }
+
+        if (value instanceof RealtimeMeasure) {
+            return estimateMeasureBytes((RealtimeMeasure) value);
+        }
+
+        if (value instanceof MeasurePage) {
+            return estimateBytes(((MeasurePage) value).getMeasurements());
+        }
+
+        if (value instanceof Collection) {
+
+            long bytes = 0;
+
+            for (Object element : (Collection<?>) value) {
+                bytes += estimateBytes(element);
+            }
+
+            return bytes;
+
+        }
+
+        if (value instanceof Map) {
+
+            long bytes = 0;
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += estimateBytes(entry.getKey()) + estimateBytes(entry.getValue());
+            }
+
+            return bytes;
+
+        }
+
+        return SCALAR_BYTES;
+
+    }
+
+    private static long estimateMeasureBytes(@NotNull RealtimeMeasure measure) {
+
+        long bytes = MEASURE_OVERHEAD_BYTES
+                + measure.getTitle().length()
+                + measure.getDescription().length();
+
+        if (measure instanceof RealtimeMagnetometer) {
+
+            RealtimeMagnetometer magnetometer = (RealtimeMagnetometer) measure;
+            String samples = magnetometer.getSamples();
+
+            if (samples != null) {
+                bytes += samples.length();
+            }
+
+            int[] sampleSeconds = magnetometer.getSampleSeconds();
+            int listSize = magnetometer.getSeconds().size() + magnetometer.getValues().size();
+
+            // the decoded legacy lists are read directly into the unpacked samples.
+            if (listSize == 0 && samples == null && sampleSeconds != null) {
+                listSize = sampleSeconds.length * 2;
+            }
+
+            bytes += (long) listSize * SCALAR_BYTES;
+
+        }
+
+        return bytes;
+
+    }
+
+    /**
+     * The counters of a single remote operation.
+     */
+    private static class OperationMetrics {
+
+        @NotNull
+        private final AtomicLong calls = new AtomicLong();
+
+        @NotNull
+        private final AtomicLong failures = new AtomicLong();
+
+        @NotNull
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+    }
+
+}
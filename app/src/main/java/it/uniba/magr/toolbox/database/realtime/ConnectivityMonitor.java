@@ -0,0 +1,176 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The connectivity state of the device, kept updated by a network callback.
+ *
+ * <p>
+ *     The state is cached, so checking it doesn't query the connectivity service.
+ *     Only the validated networks (that really reach internet) are considered,
+ *     and the listeners are notified when the first of them appears.
+ * </p>
+ */
+public class ConnectivityMonitor extends ConnectivityManager.NetworkCallback {
+
+    /**
+     * The not null connectivity manager instance.
+     */
+    @NotNull
+    private final ConnectivityManager connectivityManager;
+
+    /**
+     * The networks that have internet access and have been validated.
+     */
+    @NotNull
+    private final Set<Network> validatedNetworks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The listeners notified when the device goes online.
+     */
+    @NotNull
+    private final List<ConnectivityListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * True if the callback is registered.
+     */
+    private boolean started;
+
+    public ConnectivityMonitor(@NotNull ConnectivityManager connectivityManager) {
+        this.connectivityManager = connectivityManager;
+    }
+
+    //
+    // PUBLIC METHODS
+    //
+
+    /**
+     * Register the network callback, the current state is read once.
+     * Nothing happens if the monitor is already started.
+     */
+    public synchronized void start() {
+
+        if (started) {
+            return;
+        }
+
+        Network activeNetwork = connectivityManager.getActiveNetwork();
+
+        if (activeNetwork != null && isValidated(connectivityManager.getNetworkCapabilities(activeNetwork))) {
+            validatedNetworks.add(activeNetwork);
+        }
+
+        NetworkRequest networkRequest = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+
+        connectivityManager.registerNetworkCallback(networkRequest, this);
+        started = true;
+
+    }
+
+    /**
+     * Unregister the network callback.
+     */
+    public synchronized void stop() {
+
+        if (!started) {
+            return;
+        }
+
+        connectivityManager.unregisterNetworkCallback(this);
+        validatedNetworks.clear();
+
+        started = false;
+
+    }
+
+    /**
+     * @return True if the device is connected to a validated internet connection.
+     */
+    public boolean isConnected() {
+        return !validatedNetworks.isEmpty();
+    }
+
+    /**
+     * @param listener The not null listener to add.
+     */
+    public void addListener(@NotNull ConnectivityListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener The not null listener to remove.
+     */
+    public void removeListener(@NotNull ConnectivityListener listener) {
+        listeners.remove(listener);
+    }
+
+    //
+    // NETWORK CALLBACK METHODS
+    //
+
+    @Override
+    public void onCapabilitiesChanged(@NotNull Network network, @NotNull NetworkCapabilities capabilities) {
+
+        if (!isValidated(capabilities)) {
+
+            validatedNetworks.remove(network);
+            return;
+
+        }
+
+        boolean wasConnected = isConnected();
+
+        if (validatedNetworks.add(network) && !wasConnected) {
+
+            for (ConnectivityListener listener : listeners) {
+                listener.onConnected();
+            }
+
+        }
+
+    }
+
+    @Override
+    public void onLost(@NotNull Network network) {
+        validatedNetworks.remove(network);
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    private static boolean isValidated(@Nullable NetworkCapabilities capabilities) {
+
+        return capabilities != null
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+
+    }
+
+    /**
+     * The listener of the connectivity changes.
+     * It is called from the connectivity thread.
+     */
+    public interface ConnectivityListener {
+
+        /**
+         * Invoked when a validated network appears while the device was offline.
+         */
+        void onConnected();
+
+    }
+
+}
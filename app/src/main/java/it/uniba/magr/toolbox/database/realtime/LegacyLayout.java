@@ -0,0 +1,101 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The moves of the measurements from the legacy array layout
+ * (measurements/{type}/{index}) to the keyed layout (measurements/{type}/{key}).
+ *
+ * <p>
+ *     The legacy measure ids are not unique: the old clients uploaded every
+ *     measure with the same id. So each legacy measure is keyed by its type
+ *     and its array index, that are unique for the user and never change:
+ *     the same measure gets the same key from every device.
+ * </p>
+ */
+public final class LegacyLayout {
+
+    /**
+     * The prefix of the keys of the migrated legacy measurements.
+     */
+    public static final String KEY_PREFIX = "legacy_";
+
+    private LegacyLayout() {
+        throw new IllegalStateException("This is a static class");
+    }
+
+    /**
+     * @param key The key of a child of a type node.
+     * @return True if the key is an index of the legacy array layout.
+     */
+    public static boolean isLegacyIndex(@NotNull String key) {
+        return key.matches("\\d+");
+    }
+
+    /**
+     * @param key The not null key of a measure.
+     * @return True if the key has been given to a legacy measure by the migration.
+     */
+    public static boolean isLegacyKey(@NotNull String key) {
+        return key.startsWith(KEY_PREFIX);
+    }
+
+    /**
+     * @param typeChildName The not null child name of the type node.
+     * @param index The not null legacy array index.
+     * @return The not null key of the migrated measure.
+     */
+    @NotNull
+    public static String getKey(@NotNull String typeChildName, @NotNull String index) {
+        return KEY_PREFIX + typeChildName + "_" + index;
+    }
+
+    /**
+     * Compute the moves of the legacy measurements of a type node.
+     * The raw values are moved as they are, without decoding them.
+     *
+     * @param typePath The not null path of the type node, with the trailing separator.
+     * @param typeChildName The not null child name of the type node.
+     * @param children The not null raw children of the type node, by key.
+     * @return The not null multi-path updates: the legacy indexes are removed
+     *         and their values are written under the new keys.
+     * @throws IllegalStateException Invoked if a new key is already used, nothing must be overwritten.
+     */
+    @NotNull
+    public static Map<String, Object> getMoves(@NotNull String typePath,
+                                               @NotNull String typeChildName,
+                                               @NotNull Map<String, Object> children) {
+
+        Map<String, Object> updates = new HashMap<>();
+
+        for (Map.Entry<String, Object> child : children.entrySet()) {
+
+            String index = child.getKey();
+
+            if (!isLegacyIndex(index)) {
+                continue;
+            }
+
+            String key = getKey(typeChildName, index);
+
+            if (children.containsKey(key) || updates.containsKey(typePath + key)) {
+                throw new IllegalStateException("The legacy measure " + typePath + index
+                        + " cannot be moved, the key " + key + " is already used");
+            }
+
+            updates.put(typePath + index, null);
+
+            if (child.getValue() != null) {
+                updates.put(typePath + key, child.getValue());
+            }
+
+        }
+
+        return updates;
+
+    }
+
+}
@@ -0,0 +1,747 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import com.google.firebase.database.Exclude;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An in-process stand-in of the subset of the firebase realtime database
+ * used by the app: the child references, the reads, setValue, updateChildren
+ * and the value listeners. It doesn't depend on android, so it runs on a plain JVM.
+ *
+ * <p>
+ *     The data is a tree of plain values like the firebase one: the nodes are
+ *     maps sorted by key, the leaves are strings, longs, doubles and booleans.
+ *     The written beans are converted with their properties, the {@link Exclude}
+ *     ones are skipped, the null values and the empty nodes are removed and the
+ *     arrays are stored as nodes keyed by index. The server timestamp placeholders
+ *     are replaced with the server time, that never goes back.
+ * </p>
+ *
+ * <p>
+ *     The operations are synchronous and atomic. The listeners are called
+ *     by the writing thread, after the write, with the new value of their node.
+ * </p>
+ */
+public class LocalRealtimeDatabase {
+
+    private static final String SERVER_VALUE_KEY       = ".sv";
+    private static final String SERVER_VALUE_TIMESTAMP = "timestamp";
+
+    /**
+     * The dates are stored as milliseconds, like the server timestamps.
+     */
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Date.class, (JsonSerializer<Date>)
+                    (date, type, context) -> new JsonPrimitive(date.getTime()))
+            .setExclusionStrategies(new ExcludedPropertyStrategy())
+            .create();
+
+    /**
+     * The root node, it is never null.
+     */
+    @NotNull
+    private final TreeMap<String, Object> root = new TreeMap<>();
+
+    /**
+     * The registered listeners, in registration order.
+     */
+    @NotNull
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    /**
+     * The latest returned server time.
+     */
+    private long serverTime;
+
+    /**
+     * @return The not null reference of the root node.
+     */
+    @NotNull
+    public Reference getReference() {
+        return new Reference("");
+    }
+
+    /**
+     * @param path The not null path of the node, relative to the root.
+     * @return The not null reference of the node.
+     */
+    @NotNull
+    public Reference getReference(@NotNull String path) {
+        return getReference().child(path);
+    }
+
+    /**
+     * The server time follows the local clock, but every call returns
+     * a greater value, so each write has its own timestamp.
+     *
+     * @return The current server time in milliseconds.
+     */
+    public synchronized long getServerTime() {
+
+        serverTime = Math.max(serverTime + 1, System.currentTimeMillis());
+        return serverTime;
+
+    }
+
+    /**
+     * A reference to a node of the database, the node may not exist.
+     */
+    public class Reference {
+
+        /**
+         * The path of the node without the leading and trailing separators, empty for the root.
+         */
+        @NotNull
+        private final String path;
+
+        private Reference(@NotNull String path) {
+            this.path = path;
+        }
+
+        /**
+         * @param childPath The not null path of a descendant, relative to this node.
+         * @return The not null reference of the descendant.
+         */
+        @NotNull
+        public Reference child(@NotNull String childPath) {
+
+            String normalizedPath = normalize(childPath);
+
+            if (normalizedPath.isEmpty()) {
+                throw new IllegalArgumentException("The child path is empty");
+            }
+
+            return new Reference(path.isEmpty() ? normalizedPath : path + "/" + normalizedPath);
+
+        }
+
+        /**
+         * @return The key of the node, null for the root.
+         */
+        @Nullable
+        public String getKey() {
+            return path.isEmpty() ? null : path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        /**
+         * @return The not null path of the node, empty for the root.
+         */
+        @NotNull
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Read the node, like the get of firebase.
+         *
+         * @return A copy of the value of the node: a map, a list, a string, a long,
+         *         a double or a boolean. Null if the node doesn't exist.
+         */
+        @Nullable
+        public Object get() {
+
+            synchronized (LocalRealtimeDatabase.this) {
+                return copy(find(path));
+            }
+
+        }
+
+        /**
+         * Read a page of the children, like orderByKey().startAfter(key).limitToFirst(limit).
+         *
+         * @param startAfterKey The key before the first child, null for the first page.
+         * @param limit The max number of children, greater than 0.
+         * @return The not null map of the copies of the children, sorted by key.
+         */
+        @NotNull
+        public Map<String, Object> getChildrenAfter(@Nullable String startAfterKey, int limit) {
+
+            if (limit <= 0) {
+                throw new IllegalArgumentException("The limit must be greater than 0");
+            }
+
+            Map<String, Object> children = new LinkedHashMap<>();
+
+            synchronized (LocalRealtimeDatabase.this) {
+
+                Object node = find(path);
+
+                if (!(node instanceof TreeMap)) {
+                    return children;
+                }
+
+                @SuppressWarnings("unchecked")
+                TreeMap<String, Object> childNodes = (TreeMap<String, Object>) node;
+                Map<String, Object> candidates = startAfterKey == null
+                        ? childNodes
+                        : childNodes.tailMap(startAfterKey, false);
+
+                for (Map.Entry<String, Object> entry : candidates.entrySet()) {
+
+                    if (children.size() == limit) {
+                        break;
+                    }
+
+                    children.put(entry.getKey(), copy(entry.getValue()));
+
+                }
+
+            }
+
+            return children;
+
+        }
+
+        /**
+         * Read the children whose numeric field is at least a value,
+         * like orderByChild(field).startAt(value).
+         *
+         * @param field The not null name of the field of the children.
+         * @param startValue The min value of the field.
+         * @return The not null map of the copies of the matching children, sorted by key.
+         */
+        @NotNull
+        public Map<String, Object> getChildrenStartingAt(@NotNull String field, long startValue) {
+
+            Map<String, Object> children = new LinkedHashMap<>();
+
+            synchronized (LocalRealtimeDatabase.this) {
+
+                Object node = find(path);
+
+                if (!(node instanceof TreeMap)) {
+                    return children;
+                }
+
+                for (Map.Entry<?, ?> entry : ((TreeMap<?, ?>) node).entrySet()) {
+
+                    Object child = entry.getValue();
+                    Object value = child instanceof Map ? ((Map<?, ?>) child).get(field) : null;
+
+                    if (value instanceof Number && ((Number) value).doubleValue() >= startValue) {
+                        children.put(entry.getKey().toString(), copy(child));
+                    }
+
+                }
+
+            }
+
+            return children;
+
+        }
+
+        /**
+         * Replace the node.
+         *
+         * @param value The new value of the node, a bean or a plain value.
+         *              Null to remove the node.
+         */
+        public void setValue(@Nullable Object value) {
+
+            Map<String, Object> updates = new LinkedHashMap<>();
+            updates.put("", value);
+
+            write(path, updates);
+
+        }
+
+        /**
+         * Remove the node.
+         */
+        public void removeValue() {
+            setValue(null);
+        }
+
+        /**
+         * Replace some descendants of the node with a single atomic write.
+         *
+         * @param updates The not null map of the new values by path, relative to this node.
+         *                The null values remove their node.
+         * @throws IllegalArgumentException Invoked if a path contains another one, like firebase.
+         */
+        public void updateChildren(@NotNull Map<String, Object> updates) {
+
+            Map<String, Object> normalizedUpdates = new LinkedHashMap<>();
+
+            for (Map.Entry<String, Object> entry : updates.entrySet()) {
+                normalizedUpdates.put(normalize(entry.getKey()), entry.getValue());
+            }
+
+            for (String updatePath : normalizedUpdates.keySet()) {
+
+                if (updatePath.isEmpty()) {
+                    throw new IllegalArgumentException("An update path is empty");
+                }
+
+                for (String otherPath : normalizedUpdates.keySet()) {
+
+                    if (!updatePath.equals(otherPath) && contains(updatePath, otherPath)) {
+                        throw new IllegalArgumentException("The update path " + updatePath
+                                + " is an ancestor of " + otherPath);
+                    }
+
+                }
+
+            }
+
+            write(path, normalizedUpdates);
+
+        }
+
+        /**
+         * Listen the changes of the node and of its descendants.
+         * The listener is called with the current value as soon as it is added.
+         *
+         * @param listener The not null listener.
+         */
+        public void addValueEventListener(@NotNull ValueListener listener) {
+
+            Object value;
+
+            synchronized (LocalRealtimeDatabase.this) {
+
+                registrations.add(new Registration(path, listener));
+                value = copy(find(path));
+
+            }
+
+            listener.onDataChange(value);
+
+        }
+
+        /**
+         * @param listener The not null listener to remove from this node.
+         */
+        public void removeEventListener(@NotNull ValueListener listener) {
+            registrations.removeIf(registration -> registration.path.equals(path) && registration.listener == listener);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return "/" + path;
+        }
+
+    }
+
+    /**
+     * The listener of the changes of a node.
+     */
+    public interface ValueListener {
+
+        /**
+         * @param value A copy of the new value of the node, null if the node doesn't exist.
+         */
+        void onDataChange(@Nullable Object value);
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    /**
+     * Apply some writes atomically and notify the listeners of the changed nodes.
+     *
+     * @param basePath The not null path of the written node.
+     * @param updates The not null new values by path, relative to the written node.
+     */
+    private void write(@NotNull String basePath, @NotNull Map<String, Object> updates) {
+
+        List<Registration> notified = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+
+        synchronized (this) {
+
+            long timestamp = getServerTime();
+            List<String> writtenPaths = new ArrayList<>();
+
+            for (Map.Entry<String, Object> entry : updates.entrySet()) {
+
+                String writtenPath = join(basePath, entry.getKey());
+                Object value = resolve(toPlainValue(GSON.toJsonTree(entry.getValue())), timestamp);
+
+                put(writtenPath, value);
+                writtenPaths.add(writtenPath);
+
+            }
+
+            for (Registration registration : registrations) {
+
+                for (String writtenPath : writtenPaths) {
+
+                    if (contains(registration.path, writtenPath) || contains(writtenPath, registration.path)) {
+
+                        notified.add(registration);
+                        values.add(copy(find(registration.path)));
+                        break;
+
+                    }
+
+                }
+
+            }
+
+        }
+
+        for (int i = 0 ; i < notified.size() ; i++) {
+            notified.get(i).listener.onDataChange(values.get(i));
+        }
+
+    }
+
+    /**
+     * @param path The not null path of the node.
+     * @return The stored value of the node, null if it doesn't exist.
+     */
+    @Nullable
+    private Object find(@NotNull String path) {
+
+        Object node = root;
+
+        if (path.isEmpty()) {
+            return root.isEmpty() ? null : root;
+        }
+
+        for (String key : path.split("/")) {
+
+            if (!(node instanceof TreeMap)) {
+                return null;
+            }
+
+            node = ((TreeMap<?, ?>) node).get(key);
+
+        }
+
+        return node;
+
+    }
+
+    /**
+     * Store a value, creating the missing parents and removing the emptied ones.
+     *
+     * @param path The not null path of the node.
+     * @param value The plain value, null to remove the node.
+     */
+    @SuppressWarnings("unchecked")
+    private void put(@NotNull String path, @Nullable Object value) {
+
+        if (path.isEmpty()) {
+
+            root.clear();
+
+            if (value instanceof TreeMap) {
+                root.putAll((TreeMap<String, Object>) value);
+            }
+
+            return;
+
+        }
+
+        String[] keys = path.split("/");
+        List<TreeMap<String, Object>> parents = new ArrayList<>(keys.length);
+        TreeMap<String, Object> node = root;
+
+        for (int i = 0 ; i < keys.length - 1 ; i++) {
+
+            parents.add(node);
+            Object child = node.get(keys[i]);
+
+            if (!(child instanceof TreeMap)) {
+
+                if (value == null) {
+                    return;
+                }
+
+                child = new TreeMap<String, Object>();
+                node.put(keys[i], child);
+
+            }
+
+            node = (TreeMap<String, Object>) child;
+
+        }
+
+        if (value != null) {
+            node.put(keys[keys.length - 1], value);
+            return;
+        }
+
+        node.remove(keys[keys.length - 1]);
+
+        // firebase doesn't keep the empty nodes.
+        for (int i = parents.size() - 1 ; i >= 0 && node.isEmpty() ; i--) {
+
+            parents.get(i).remove(keys[i]);
+            node = parents.get(i);
+
+        }
+
+    }
+
+    /**
+     * Convert a json tree into the stored plain values.
+     *
+     * @param json The json element.
+     * @return The plain value, null if the element is null or empty.
+     */
+    @Nullable
+    private static Object toPlainValue(@Nullable JsonElement json) {
+
+        if (json == null || json.isJsonNull()) {
+            return null;
+        }
+
+        if (json.isJsonPrimitive()) {
+
+            JsonPrimitive primitive = json.getAsJsonPrimitive();
+
+            if (primitive.isBoolean()) {
+                return primitive.getAsBoolean();
+            }
+
+            if (!primitive.isNumber()) {
+                return primitive.getAsString();
+            }
+
+            String number = primitive.getAsString();
+
+            // the integers are read as longs like firebase does, the too big ones as doubles.
+            if (number.matches("-?\\d{1,18}")) {
+                return Long.parseLong(number);
+            }
+
+            return Double.parseDouble(number);
+
+        }
+
+        TreeMap<String, Object> node = new TreeMap<>();
+
+        if (json.isJsonArray()) {
+
+            for (int i = 0 ; i < json.getAsJsonArray().size() ; i++) {
+                putIfNotNull(node, Integer.toString(i), toPlainValue(json.getAsJsonArray().get(i)));
+            }
+
+        } else {
+
+            for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject().entrySet()) {
+                putIfNotNull(node, entry.getKey(), toPlainValue(entry.getValue()));
+            }
+
+        }
+
+        return node.isEmpty() ? null : node;
+
+    }
+
+    /**
+     * Replace the server timestamp placeholders.
+     *
+     * @param value The plain value.
+     * @param timestamp The server time of the write.
+     * @return The value without placeholders.
+     */
+    @Nullable
+    private static Object resolve(@Nullable Object value, long timestamp) {
+
+        if (!(value instanceof TreeMap)) {
+            return value;
+        }
+
+        TreeMap<?, ?> node = (TreeMap<?, ?>) value;
+
+        if (node.size() == 1 && SERVER_VALUE_TIMESTAMP.equals(node.get(SERVER_VALUE_KEY))) {
+            return timestamp;
+        }
+
+        @SuppressWarnings("unchecked")
+        Iterator<Map.Entry<String, Object>> iterator = ((TreeMap<String, Object>) node).entrySet().iterator();
+
+        while (iterator.hasNext()) {
+
+            Map.Entry<String, Object> entry = iterator.next();
+            entry.setValue(resolve(entry.getValue(), timestamp));
+
+        }
+
+        return node;
+
+    }
+
+    /**
+     * Copy a stored value, the nodes keyed by a dense index are read as lists like firebase does.
+     *
+     * @param value The stored value.
+     * @return The copy of the value.
+     */
+    @Nullable
+    private static Object copy(@Nullable Object value) {
+
+        if (!(value instanceof TreeMap)) {
+            return value;
+        }
+
+        TreeMap<?, ?> node = (TreeMap<?, ?>) value;
+        int maxIndex = -1;
+
+        for (Object key : node.keySet()) {
+
+            String childKey = key.toString();
+
+            if (!childKey.matches("\\d{1,9}")) {
+                maxIndex = Integer.MAX_VALUE;
+                break;
+            }
+
+            maxIndex = Math.max(maxIndex, Integer.parseInt(childKey));
+
+        }
+
+        // the same rule of firebase: at least half of the indexes are used.
+        if (maxIndex < node.size() * 2) {
+
+            List<Object> list = new ArrayList<>(maxIndex + 1);
+
+            for (int i = 0 ; i <= maxIndex ; i++) {
+                list.add(copy(node.get(Integer.toString(i))));
+            }
+
+            return list;
+
+        }
+
+        Map<String, Object> map = new LinkedHashMap<>();
+
+        for (Map.Entry<?, ?> entry : node.entrySet()) {
+            map.put(entry.getKey().toString(), copy(entry.getValue()));
+        }
+
+        return map;
+
+    }
+
+    private static void putIfNotNull(@NotNull Map<String, Object> node, @NotNull String key, @Nullable Object value) {
+
+        if (value != null) {
+            node.put(key, value);
+        }
+
+    }
+
+    /**
+     * @param path The not null path.
+     * @return The path without the leading and trailing separators.
+     */
+    @NotNull
+    private static String normalize(@NotNull String path) {
+
+        String normalizedPath = path.replaceAll("/+", "/");
+
+        if (normalizedPath.startsWith("/")) {
+            normalizedPath = normalizedPath.substring(1);
+        }
+
+        if (normalizedPath.endsWith("/")) {
+            normalizedPath = normalizedPath.substring(0, normalizedPath.length() - 1);
+        }
+
+        return normalizedPath;
+
+    }
+
+    @NotNull
+    private static String join(@NotNull String parentPath, @NotNull String childPath) {
+
+        if (parentPath.isEmpty()) {
+            return childPath;
+        }
+
+        return childPath.isEmpty() ? parentPath : parentPath + "/" + childPath;
+
+    }
+
+    /**
+     * @param path The not null path of a node.
+     * @param otherPath The not null path of another node.
+     * @return True if the other node is the node itself or one of its descendants.
+     */
+    private static boolean contains(@NotNull String path, @NotNull String otherPath) {
+        return path.isEmpty() || otherPath.equals(path) || otherPath.startsWith(path + "/");
+    }
+
+    /**
+     * A listener added to a node.
+     */
+    private static class Registration {
+
+        @NotNull
+        private final String path;
+
+        @NotNull
+        private final ValueListener listener;
+
+        private Registration(@NotNull String path, @NotNull ValueListener listener) {
+
+            this.path = path;
+            this.listener = listener;
+
+        }
+
+    }
+
+    /**
+     * Skip the bean fields whose getter is excluded from firebase.
+     */
+    private static class ExcludedPropertyStrategy implements ExclusionStrategy {
+
+        @Override
+        public boolean shouldSkipField(@NotNull FieldAttributes field) {
+
+            String name = field.getName();
+            String property = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+
+            for (String prefix : new String[] { "get", "is" }) {
+
+                try {
+
+                    Method getter = field.getDeclaringClass().getMethod(prefix + property);
+                    return getter.isAnnotationPresent(Exclude.class);
+
+                } catch (NoSuchMethodException noSuchMethodEx) {
+                    // try the next prefix.
+                }
+
+            }
+
+            return false;
+
+        }
+
+        @Override
+        public boolean shouldSkipClass(@NotNull Class<?> clazz) {
+            return false;
+        }
+
+    }
+
+}
@@ -0,0 +1,365 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMagnetometer;
+import it.uniba.magr.toolbox.util.VarintUtil;
+
+/**
+ * The compact encoding of the magnetometer samples into the realtime database.
+ *
+ * <p>
+ *     Version 1 packs the samples into a base64 string:
+ *     <ul>
+ *         <li>varint: the number of samples;</li>
+ *         <li>zigzag varint: the second of the first sample;</li>
+ *         <li>varint: the seconds between two samples (implicit timestamps);</li>
+ *         <li>zigzag varint: for each sample, the difference from the previous
+ *         quantized value (the first one is the difference from 0).</li>
+ *     </ul>
+ *     The values are quantized to {@link #QUANTUM} microtesla.
+ * </p>
+ *
+ * <p>
+ *     The recordings longer than {@link #SEGMENT_SIZE} samples are split into
+ *     segments, each one packed with the version 1 layout. The segments are
+ *     uploaded into their own nodes before the measure, which only keeps the
+ *     number of segments (the manifest).
+ * </p>
+ */
+public final class MagnetometerCodec {
+
+    /**
+     * The samples are kept into the seconds and values lists.
+     */
+    public static final int ENCODING_LISTS = 0;
+
+    /**
+     * The samples are packed as delta encoded and quantized values.
+     */
+    public static final int ENCODING_DELTA_V1 = 1;
+
+    /**
+     * The samples are packed into segment nodes, each one with the version 1 layout.
+     */
+    public static final int ENCODING_SEGMENTS_V1 = 2;
+
+    /**
+     * The quantization step of the values in microtesla.
+     */
+    public static final float QUANTUM = 0.01F;
+
+    /**
+     * The max number of samples of a segment: half an hour at one sample per second.
+     */
+    public static final int SEGMENT_SIZE = 1800;
+
+    private MagnetometerCodec() {
+        throw new IllegalStateException("This is a static class");
+    }
+
+    /**
+     * Pack the unpacked samples of a magnetometer measure. The seconds must be
+     * equally spaced, otherwise the samples are written into the lists.
+     * A recording longer than a segment is packed into segments.
+     *
+     * @param magnetometer The not null magnetometer measure with unpacked samples.
+     * @return The not null list of the segments that must be uploaded before the
+     *         measure, empty if the samples are kept into the measure.
+     */
+    @NotNull
+    public static List<String> encode(@NotNull RealtimeMagnetometer magnetometer) {
+
+        int[]   seconds = magnetometer.getSampleSeconds();
+        float[] values  = magnetometer.getSampleValues();
+
+        if (seconds == null || values == null || seconds.length != values.length) {
+            throw new IllegalArgumentException("The magnetometer samples are not unpacked");
+        }
+
+        int count = seconds.length;
+
+        if (count <= SEGMENT_SIZE) {
+
+            String samples = pack(seconds, values, 0, count);
+
+            if (samples == null) {
+                encodeLists(magnetometer, seconds, values);
+            } else {
+                encodeFields(magnetometer, ENCODING_DELTA_V1, samples, 0);
+            }
+
+            return Collections.emptyList();
+
+        }
+
+        List<String> segments = new ArrayList<>(count / SEGMENT_SIZE + 1);
+
+        for (int from = 0 ; from < count ; from += SEGMENT_SIZE) {
+
+            String segment = pack(seconds, values, from, Math.min(from + SEGMENT_SIZE, count));
+
+            if (segment == null) {
+
+                encodeLists(magnetometer, seconds, values);
+                return Collections.emptyList();
+
+            }
+
+            segments.add(segment);
+
+        }
+
+        encodeFields(magnetometer, ENCODING_SEGMENTS_V1, null, segments.size());
+        return segments;
+
+    }
+
+    /**
+     * The quantized form of a sample value, as it is packed. A value decoded from
+     * the packed samples has the same quantized form up to 65536 microtesla,
+     * far above the range of the magnetic sensors.
+     *
+     * @param value The sample value, in microtesla.
+     * @return The number of quanta of the value, see {@link #QUANTUM}.
+     */
+    public static int quantize(float value) {
+        return Math.round(value / QUANTUM);
+    }
+
+    /**
+     * Unpack the samples of a magnetometer measure into primitive arrays.
+     * The encoded fields are left untouched and nothing happens if the
+     * samples are already unpacked or if they are kept into segments,
+     * see {@link #decodeSegments(RealtimeMagnetometer, List)}.
+     *
+     * @param magnetometer The not null magnetometer measure.
+     * @throws IllegalArgumentException Invoked if the encoding is unknown or the samples are corrupted.
+     */
+    public static void decode(@NotNull RealtimeMagnetometer magnetometer) {
+
+        if (magnetometer.isUnpacked()) {
+            return;
+        }
+
+        switch (magnetometer.getEncoding()) {
+
+            case ENCODING_LISTS:       decodeLists(magnetometer);   break;
+            case ENCODING_DELTA_V1:    decodeDeltaV1(magnetometer); break;
+            case ENCODING_SEGMENTS_V1: break;
+            default:
+                throw new IllegalArgumentException("Unknown magnetometer encoding: "
+                        + magnetometer.getEncoding());
+
+        }
+
+    }
+
+    /**
+     * Unpack the samples of a segmented magnetometer measure into primitive arrays.
+     *
+     * @param magnetometer The not null magnetometer measure.
+     * @param segments The not null segments of the measure, in order.
+     * @throws IllegalArgumentException Invoked if the segments don't match the manifest
+     *                                  or they are corrupted.
+     */
+    public static void decodeSegments(@NotNull RealtimeMagnetometer magnetometer, @NotNull List<String> segments) {
+
+        if (magnetometer.getEncoding() != ENCODING_SEGMENTS_V1) {
+            throw new IllegalArgumentException("The magnetometer samples are not segmented");
+        }
+
+        if (segments.size() != magnetometer.getSegmentCount()) {
+            throw new IllegalArgumentException("Expected " + magnetometer.getSegmentCount()
+                    + " magnetometer segments, found " + segments.size());
+        }
+
+        List<RealtimeMagnetometer> slices = new ArrayList<>(segments.size());
+        int count = 0;
+
+        for (String segment : segments) {
+
+            RealtimeMagnetometer slice = new RealtimeMagnetometer();
+
+            slice.setSamples(segment);
+            decodeDeltaV1(slice);
+
+            slices.add(slice);
+            count += slice.getSampleSeconds().length;
+
+        }
+
+        int[]   seconds = new int[count];
+        float[] values  = new float[count];
+        int position = 0;
+
+        for (RealtimeMagnetometer slice : slices) {
+
+            int length = slice.getSampleSeconds().length;
+
+            System.arraycopy(slice.getSampleSeconds(), 0, seconds, position, length);
+            System.arraycopy(slice.getSampleValues(),  0, values,  position, length);
+
+            position += length;
+
+        }
+
+        magnetometer.setUnpackedSamples(seconds, values);
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    /**
+     * Pack a range of samples with the version 1 layout.
+     *
+     * @return The packed samples, null if they are not equally spaced.
+     */
+    @Nullable
+    private static String pack(@NotNull int[] seconds, @NotNull float[] values, int from, int to) {
+
+        int count = to - from;
+
+        if (count <= 0) {
+            return null;
+        }
+
+        int firstSecond = seconds[from];
+        int stride = count > 1 ? seconds[from + 1] - firstSecond : 1;
+
+        if (stride <= 0) {
+            return null;
+        }
+
+        for (int i = 1 ; i < count ; i++) {
+
+            if (seconds[from + i] != firstSecond + i * stride) {
+                return null;
+            }
+
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(count * 2 + 8);
+
+        VarintUtil.writeVarint(output, count);
+        VarintUtil.writeVarint(output, VarintUtil.zigzag(firstSecond));
+        VarintUtil.writeVarint(output, stride);
+
+        long previous = 0;
+
+        for (int i = 0 ; i < count ; i++) {
+
+            long quantized = quantize(values[from + i]);
+
+            VarintUtil.writeVarint(output, VarintUtil.zigzag(quantized - previous));
+            previous = quantized;
+
+        }
+
+        return Base64.getEncoder().encodeToString(output.toByteArray());
+
+    }
+
+    private static void encodeFields(@NotNull RealtimeMagnetometer magnetometer,
+                                     int encoding,
+                                     @Nullable String samples,
+                                     int segmentCount) {
+
+        magnetometer.setSamples(samples);
+        magnetometer.setEncoding(encoding);
+        magnetometer.setSegmentCount(segmentCount);
+        magnetometer.setSeconds(new ArrayList<>());
+        magnetometer.setValues(new ArrayList<>());
+
+    }
+
+    private static void encodeLists(@NotNull RealtimeMagnetometer magnetometer,
+                                    @NotNull int[] seconds,
+                                    @NotNull float[] values) {
+
+        int count = seconds.length;
+
+        List<Integer> secondList = new ArrayList<>(count);
+        List<Float>   valueList  = new ArrayList<>(count);
+
+        for (int i = 0 ; i < count ; i++) {
+
+            secondList.add(seconds[i]);
+            valueList.add(values[i]);
+
+        }
+
+        encodeFields(magnetometer, ENCODING_LISTS, null, 0);
+        magnetometer.setSeconds(secondList);
+        magnetometer.setValues(valueList);
+
+    }
+
+    private static void decodeLists(@NotNull RealtimeMagnetometer magnetometer) {
+
+        List<Integer> secondList = magnetometer.getSeconds();
+        List<Float>   valueList  = magnetometer.getValues();
+
+        int count = Math.min(secondList.size(), valueList.size());
+
+        int[]   seconds = new int[count];
+        float[] values  = new float[count];
+
+        for (int i = 0 ; i < count ; i++) {
+
+            seconds[i] = secondList.get(i);
+            values[i]  = valueList.get(i);
+
+        }
+
+        magnetometer.setUnpackedSamples(seconds, values);
+
+    }
+
+    private static void decodeDeltaV1(@NotNull RealtimeMagnetometer magnetometer) {
+
+        String samples = magnetometer.getSamples();
+
+        if (samples == null) {
+            throw new IllegalArgumentException("Missing magnetometer samples");
+        }
+
+        byte[] input = Base64.getDecoder().decode(samples);
+        int[] position = new int[1];
+
+        int count       = (int) VarintUtil.readVarint(input, position);
+        int firstSecond = (int) VarintUtil.unzigzag(VarintUtil.readVarint(input, position));
+        int stride      = (int) VarintUtil.readVarint(input, position);
+
+        if (count < 0 || count > input.length) {
+            throw new IllegalArgumentException("Malformed magnetometer samples");
+        }
+
+        int[]   seconds = new int[count];
+        float[] values  = new float[count];
+
+        long quantized = 0;
+
+        for (int i = 0 ; i < count ; i++) {
+
+            quantized += VarintUtil.unzigzag(VarintUtil.readVarint(input, position));
+
+            seconds[i] = firstSecond + i * stride;
+            values[i]  = quantized * QUANTUM;
+
+        }
+
+        magnetometer.setUnpackedSamples(seconds, values);
+
+    }
+
+}
@@ -0,0 +1,222 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeBarometer;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMagnetometer;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeRuler;
+import it.uniba.magr.toolbox.database.sqlite.bean.Type;
+import it.uniba.magr.toolbox.util.DigestUtil;
+
+/**
+ * The content digest of the measurements.
+ *
+ * <p>
+ *     The digest is the md5 of the type, the title, the description and the payload
+ *     digest of a measure. The payload digest is the md5 of the tool values, it is
+ *     computed once when the measure is saved or imported and it is kept locally,
+ *     so an edit of the title or of the description never reads the payload again.
+ *     The magnetometer values are digested in the quantized form that is packed
+ *     (see {@link MagnetometerCodec#quantize(float)}), not as floats: a measure
+ *     downloaded from the remote database has the same digest of the uploaded one.
+ *     The start date and the server time are not part of the content.
+ * </p>
+ *
+ * <p>
+ *     The samples are streamed into the digest through a small buffer,
+ *     so a long recording is never copied into a single text or array.
+ * </p>
+ */
+public final class MeasureDigest {
+
+    /**
+     * The separator of the digested fields, it cannot be typed into a title.
+     */
+    private static final byte SEPARATOR = 0;
+
+    /**
+     * The size of the buffer where the payload is written before being digested.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The digested bytes of a magnetometer sample: the second and the quantized value.
+     */
+    private static final int SAMPLE_BYTES = Integer.BYTES * 2;
+
+    private MeasureDigest() {
+        throw new IllegalStateException("This is a static class");
+    }
+
+    /**
+     * @param measure The not null realtime measure, the magnetometer samples must be unpacked.
+     * @return The not null 32 chars md5 digest of the measure content.
+     */
+    @NotNull
+    public static String of(@NotNull RealtimeMeasure measure) {
+
+        Type type = RealtimeManager.getMeasureType(measure);
+        return of(type, measure.getTitle(), measure.getDescription(), ofPayload(measure));
+
+    }
+
+    /**
+     * @param type The not null measure type.
+     * @param title The not null title.
+     * @param description The not null description.
+     * @param payloadDigest The not null payload digest, see {@link #ofPayload(RealtimeMeasure)}.
+     * @return The not null 32 chars md5 digest of the measure content.
+     */
+    @NotNull
+    public static String of(@NotNull Type type,
+                            @NotNull String title,
+                            @NotNull String description,
+                            @NotNull String payloadDigest) {
+
+        MessageDigest md5Digest = newMD5Digest();
+
+        updateText(md5Digest, type.name());
+        updateText(md5Digest, title);
+        updateText(md5Digest, description);
+        updateText(md5Digest, payloadDigest);
+
+        return DigestUtil.toMD5String(md5Digest.digest());
+
+    }
+
+    /**
+     * @param measure The not null realtime measure, the magnetometer samples must be unpacked.
+     * @return The not null 32 chars md5 digest of the tool values of the measure.
+     */
+    @NotNull
+    public static String ofPayload(@NotNull RealtimeMeasure measure) {
+
+        if (measure instanceof RealtimeRuler) {
+            return ofScalarPayload(((RealtimeRuler) measure).getLength());
+        }
+
+        if (measure instanceof RealtimeBarometer) {
+            return ofScalarPayload(((RealtimeBarometer) measure).getPressure());
+        }
+
+        if (measure instanceof RealtimeMagnetometer) {
+
+            RealtimeMagnetometer magnetometer = (RealtimeMagnetometer) measure;
+
+            int[]   seconds = magnetometer.getSampleSeconds();
+            float[] values  = magnetometer.getSampleValues();
+
+            if (seconds == null || values == null) {
+                throw new IllegalArgumentException("The magnetometer samples are not unpacked");
+            }
+
+            return ofSamplesPayload(seconds, values);
+
+        }
+
+        return DigestUtil.toMD5String(newMD5Digest().digest());
+
+    }
+
+    /**
+     * @param value The value of a ruler or of a barometer measure.
+     * @return The not null 32 chars md5 digest of the value.
+     */
+    @NotNull
+    public static String ofScalarPayload(double value) {
+
+        MessageDigest md5Digest = newMD5Digest();
+        ByteBuffer buffer = ByteBuffer.allocate(Double.BYTES);
+
+        buffer.putDouble(value);
+        flush(md5Digest, buffer);
+
+        return DigestUtil.toMD5String(md5Digest.digest());
+
+    }
+
+    /**
+     * @param seconds The not null seconds of the magnetometer samples.
+     * @param values The not null values, with the same length of the seconds.
+     * @return The not null 32 chars md5 digest of the samples.
+     */
+    @NotNull
+    public static String ofSamplesPayload(@NotNull int[] seconds, @NotNull float[] values) {
+
+        MessageDigest md5Digest = newMD5Digest();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        for (int i = 0 ; i < seconds.length ; i++) {
+
+            if (buffer.remaining() < SAMPLE_BYTES) {
+                flush(md5Digest, buffer);
+            }
+
+            buffer.putInt(seconds[i]);
+            buffer.putInt(MagnetometerCodec.quantize(values[i]));
+
+        }
+
+        flush(md5Digest, buffer);
+        return DigestUtil.toMD5String(md5Digest.digest());
+
+    }
+
+    /**
+     * Compute the digest of a measure if it doesn't have one.
+     *
+     * @param measure The not null realtime measure, the magnetometer samples must be unpacked.
+     * @return The not null digest of the measure.
+     */
+    @NotNull
+    public static String ensure(@NotNull RealtimeMeasure measure) {
+
+        String digest = measure.getDigest();
+
+        if (digest == null) {
+
+            digest = of(measure);
+            measure.setDigest(digest);
+
+        }
+
+        return digest;
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    @NotNull
+    private static MessageDigest newMD5Digest() {
+
+        try {
+            return MessageDigest.getInstance(DigestUtil.MD5_DIGEST);
+        } catch (NoSuchAlgorithmException nsaEx) {
+            throw new IllegalStateException("The md5 digest is not available", nsaEx);
+        }
+
+    }
+
+    private static void updateText(@NotNull MessageDigest md5Digest, @NotNull String text) {
+
+        md5Digest.update(text.getBytes(StandardCharsets.UTF_8));
+        md5Digest.update(SEPARATOR);
+
+    }
+
+    private static void flush(@NotNull MessageDigest md5Digest, @NotNull ByteBuffer buffer) {
+
+        md5Digest.update(buffer.array(), 0, buffer.position());
+        buffer.clear();
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A page of the remote measurements of a type, sorted by key.
+ * The next page starts after the cursor of this one.
+ */
+@Getter
+@RequiredArgsConstructor
+public class MeasurePage {
+
+    /**
+     * The not null and unmodifiable measurements of the page.
+     */
+    @NotNull
+    private final List<RealtimeMeasure> measurements;
+
+    /**
+     * The key of the last measure of the page, null if this is the last page.
+     */
+    @Nullable
+    private final String nextCursor;
+
+    /**
+     * @return True if there are no more pages after this one.
+     */
+    public boolean isLast() {
+        return nextCursor == null;
+    }
+
+}
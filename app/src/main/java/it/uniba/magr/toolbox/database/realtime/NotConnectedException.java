@@ -1,8 +1,12 @@
 package it.uniba.magr.toolbox.database.realtime;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
 /**
  * The not connected to internet exception.
- * Used to prevent missing operations on the firebase database.
+ * Used to prevent missing operations on the firebase database:
+ * it is thrown also when a remote operation fails, so the operation is retried.
  */
 public class NotConnectedException extends Exception {
 
@@ -10,4 +14,12 @@ public class NotConnectedException extends Exception {
         super("Not connected to an internet connection");
     }
 
-}
\ No newline at end of file
+    /**
+     * @param message The not null detail message.
+     * @param cause The cause of the failure.
+     */
+    public NotConnectedException(@NotNull String message, @Nullable Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,239 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import com.google.firebase.database.ServerValue;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+import it.uniba.magr.toolbox.database.sqlite.bean.Type;
+
+/**
+ * A set of measure writes that will be applied to the measurements node of
+ * the user with a single multi-path update, so they are applied atomically
+ * and with only one round trip.
+ *
+ * <p>
+ *     A later operation on the same measure replaces the previous ones, because
+ *     firebase refuses an update that contains a path and one of its children.
+ *     The content digests of the written measurements are collected apart,
+ *     they are copied into the digests manifest by the same update.
+ * </p>
+ */
+public class RealtimeBatch {
+
+    /**
+     * The updates, relative to the measurements node, in insertion order.
+     */
+    @NotNull
+    private final Map<String, Object> updates = new LinkedHashMap<>();
+
+    /**
+     * The content digests by measure key, null for the removed measurements.
+     */
+    @NotNull
+    private final Map<String, String> digests = new LinkedHashMap<>();
+
+    /**
+     * Write a whole measure into its type node.
+     *
+     * @param measure The not null realtime measure instance.
+     * @return This batch instance.
+     */
+    @NotNull
+    public RealtimeBatch addMeasure(@NotNull RealtimeMeasure measure) {
+
+        Type type = RealtimeManager.getMeasureType(measure);
+        String measureKey = measure.getUuid();
+
+        if (type == Type.UNKNOWN || measureKey == null) {
+            return this;
+        }
+
+        removePaths(measureKey);
+        measure.setUpdatedAt(ServerValue.TIMESTAMP);
+        updates.put(RealtimeManager.getTypeChildName(type) + "/" + measureKey, measure);
+        digests.put(measureKey, MeasureDigest.ensure(measure));
+
+        return this;
+
+    }
+
+    /**
+     * Update the title, the description and the content digest of a measure.
+     *
+     * @param type The not null Type of the measure.
+     * @param measureKey The not null globally unique id of the measure.
+     * @param title The not null title.
+     * @param description The not null description.
+     * @param digest The not null content digest with the new title and description.
+     * @return This batch instance.
+     */
+    @NotNull
+    public RealtimeBatch updateMeasure(@NotNull Type type,
+                                       @NotNull String measureKey,
+                                       @NotNull String title,
+                                       @NotNull String description,
+                                       @NotNull String digest) {
+
+        if (!RealtimeManager.REMOTE_TYPES.contains(type)) {
+            return this;
+        }
+
+        String measurePath = RealtimeManager.getTypeChildName(type) + "/" + measureKey;
+        Object measure = updates.get(measurePath);
+
+        if (measure instanceof RealtimeMeasure) {
+
+            // the measure is written by this batch, so it is edited directly.
+            ((RealtimeMeasure) measure).setTitle(title);
+            ((RealtimeMeasure) measure).setDescription(description);
+            ((RealtimeMeasure) measure).setDigest(digest);
+
+            digests.put(measureKey, digest);
+            return this;
+
+        }
+
+        removePaths(measureKey);
+        updates.put(measurePath + "/" + RealtimeManager.FIELD_TITLE,       title);
+        updates.put(measurePath + "/" + RealtimeManager.FIELD_DESCRIPTION, description);
+        updates.put(measurePath + "/" + RealtimeManager.FIELD_DIGEST,      digest);
+        updates.put(measurePath + "/" + RealtimeManager.FIELD_UPDATED_AT,  ServerValue.TIMESTAMP);
+        digests.put(measureKey, digest);
+
+        return this;
+
+    }
+
+    /**
+     * Remove a measure from every type node.
+     *
+     * @param measureKey The not null globally unique id of the measure to remove.
+     * @return This batch instance.
+     */
+    @NotNull
+    public RealtimeBatch removeMeasure(@NotNull String measureKey) {
+
+        removePaths(measureKey);
+
+        for (Type type : RealtimeManager.REMOTE_TYPES) {
+            updates.put(RealtimeManager.getTypeChildName(type) + "/" + measureKey, null);
+        }
+
+        digests.put(measureKey, null);
+        return this;
+
+    }
+
+    /**
+     * @return The not null list of the keys of the measurements removed by the batch.
+     */
+    @NotNull
+    public List<String> getRemovedMeasureKeys() {
+
+        Set<String> measureKeys = new LinkedHashSet<>();
+
+        for (Map.Entry<String, Object> entry : updates.entrySet()) {
+
+            String[] segments = entry.getKey().split("/");
+
+            if (segments.length == 2 && entry.getValue() == null) {
+                measureKeys.add(segments[1]);
+            }
+
+        }
+
+        return new ArrayList<>(measureKeys);
+
+    }
+
+    /**
+     * @return The not null and unmodifiable map of the content digests by measure key,
+     *         the removed measurements are mapped to null.
+     */
+    @NotNull
+    public Map<String, String> getDigests() {
+        return Collections.unmodifiableMap(digests);
+    }
+
+    /**
+     * @return True if the batch doesn't contain any update.
+     */
+    public boolean isEmpty() {
+        return updates.isEmpty();
+    }
+
+    /**
+     * @return The number of paths written by the batch.
+     */
+    public int size() {
+        return updates.size();
+    }
+
+    /**
+     * @return The not null and unmodifiable map of the updates,
+     *         relative to the measurements node.
+     */
+    @NotNull
+    public Map<String, Object> getUpdates() {
+        return Collections.unmodifiableMap(updates);
+    }
+
+    /**
+     * The segments of the removed measurements are removed too
+     * and the digests manifest is updated.
+     *
+     * @return The not null map of the updates, relative to the user node.
+     */
+    @NotNull
+    public Map<String, Object> getUserUpdates() {
+
+        Map<String, Object> userUpdates = new HashMap<>();
+
+        for (Map.Entry<String, Object> entry : updates.entrySet()) {
+            userUpdates.put(RealtimeManager.CHILD_MEASUREMENTS + "/" + entry.getKey(), entry.getValue());
+        }
+
+        for (String measureKey : getRemovedMeasureKeys()) {
+            userUpdates.put(RealtimeManager.CHILD_SEGMENTS + "/" + measureKey, null);
+        }
+
+        for (Map.Entry<String, String> entry : digests.entrySet()) {
+            userUpdates.put(RealtimeManager.CHILD_DIGESTS + "/" + entry.getKey(), entry.getValue());
+        }
+
+        return userUpdates;
+
+    }
+
+    /**
+     * Remove all the paths of a measure.
+     * @param measureKey The not null measure key.
+     */
+    private void removePaths(@NotNull String measureKey) {
+
+        Iterator<String> iterator = updates.keySet().iterator();
+
+        while (iterator.hasNext()) {
+
+            String[] segments = iterator.next().split("/");
+
+            if (segments.length > 1 && segments[1].equals(measureKey)) {
+                iterator.remove();
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,183 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeBarometer;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMagnetometer;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeRuler;
+
+/**
+ * The hand-written decoders of the measure nodes.
+ *
+ * <p>
+ *     The raw value of a snapshot (maps, lists, numbers and strings) is walked
+ *     directly into the beans, without the reflective bean mapping of firebase.
+ *     The magnetometer samples of the legacy lists are read into primitive arrays,
+ *     so they are never boxed into Integer and Float objects. The decoded
+ *     measurements are read-only: their legacy lists are left empty.
+ * </p>
+ */
+public final class RealtimeDecoder {
+
+    private static final String FIELD_START_DATE = "startDate";
+    private static final String FIELD_DATE_TIME  = "time";
+    private static final String FIELD_LENGTH     = "length";
+    private static final String FIELD_PRESSURE   = "pressure";
+    private static final String FIELD_ENCODING   = "encoding";
+    private static final String FIELD_SAMPLES    = "samples";
+    private static final String FIELD_SEGMENTS   = "segmentCount";
+    private static final String FIELD_SECONDS    = "seconds";
+    private static final String FIELD_VALUES     = "values";
+
+    private RealtimeDecoder() {
+        throw new IllegalStateException("This is a static class");
+    }
+
+    /**
+     * @param rawValue The raw value of a measure node.
+     * @param measureClass The not null class of the measure.
+     * @param <T> The measure type.
+     * @return The decoded measure, null if the raw value is not a measure node.
+     */
+    @Nullable
+    public static <T extends RealtimeMeasure> T decode(@Nullable Object rawValue, @NotNull Class<T> measureClass) {
+
+        if (!(rawValue instanceof Map)) {
+            return null;
+        }
+
+        Map<?, ?> fields = (Map<?, ?>) rawValue;
+        RealtimeMeasure measure;
+
+        if (measureClass == RealtimeRuler.class) {
+            measure = decodeRuler(fields);
+        } else if (measureClass == RealtimeMagnetometer.class) {
+            measure = decodeMagnetometer(fields);
+        } else if (measureClass == RealtimeBarometer.class) {
+            measure = decodeBarometer(fields);
+        } else {
+            throw new IllegalArgumentException("Unknown measure class: " + measureClass.getName());
+        }
+
+        measure.setTitle(getString(fields, RealtimeManager.FIELD_TITLE));
+        measure.setDescription(getString(fields, RealtimeManager.FIELD_DESCRIPTION));
+        measure.setStartDate(getDate(fields.get(FIELD_START_DATE)));
+
+        Object updatedAt = fields.get(RealtimeManager.FIELD_UPDATED_AT);
+
+        if (updatedAt instanceof Number) {
+            measure.setUpdatedAt(updatedAt);
+        }
+
+        Object digest = fields.get(RealtimeManager.FIELD_DIGEST);
+        measure.setDigest(digest instanceof String ? (String) digest : null);
+
+        return measureClass.cast(measure);
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    @NotNull
+    private static RealtimeRuler decodeRuler(@NotNull Map<?, ?> fields) {
+
+        RealtimeRuler ruler = new RealtimeRuler();
+        ruler.setLength(getNumber(fields.get(FIELD_LENGTH)).doubleValue());
+
+        return ruler;
+
+    }
+
+    @NotNull
+    private static RealtimeBarometer decodeBarometer(@NotNull Map<?, ?> fields) {
+
+        RealtimeBarometer barometer = new RealtimeBarometer();
+        barometer.setPressure(getNumber(fields.get(FIELD_PRESSURE)).doubleValue());
+
+        return barometer;
+
+    }
+
+    @NotNull
+    private static RealtimeMagnetometer decodeMagnetometer(@NotNull Map<?, ?> fields) {
+
+        RealtimeMagnetometer magnetometer = new RealtimeMagnetometer();
+        int encoding = getNumber(fields.get(FIELD_ENCODING)).intValue();
+
+        magnetometer.setEncoding(encoding);
+
+        if (encoding != MagnetometerCodec.ENCODING_LISTS) {
+
+            Object samples = fields.get(FIELD_SAMPLES);
+            magnetometer.setSamples(samples instanceof String ? (String) samples : null);
+            magnetometer.setSegmentCount(getNumber(fields.get(FIELD_SEGMENTS)).intValue());
+
+            return magnetometer;
+
+        }
+
+        List<?> secondList = getList(fields.get(FIELD_SECONDS));
+        List<?> valueList  = getList(fields.get(FIELD_VALUES));
+
+        int count = Math.min(secondList.size(), valueList.size());
+
+        int[]   seconds = new int[count];
+        float[] values  = new float[count];
+
+        for (int i = 0 ; i < count ; i++) {
+
+            seconds[i] = getNumber(secondList.get(i)).intValue();
+            values[i]  = getNumber(valueList.get(i)).floatValue();
+
+        }
+
+        magnetometer.setUnpackedSamples(seconds, values);
+        return magnetometer;
+
+    }
+
+    @NotNull
+    private static String getString(@NotNull Map<?, ?> fields, @NotNull String field) {
+
+        Object value = fields.get(field);
+        return value instanceof String ? (String) value : "";
+
+    }
+
+    @NotNull
+    private static Number getNumber(@Nullable Object value) {
+        return value instanceof Number ? (Number) value : 0;
+    }
+
+    @NotNull
+    private static List<?> getList(@Nullable Object value) {
+        return value instanceof List ? (List<?>) value : Collections.emptyList();
+    }
+
+    /**
+     * The dates are written as milliseconds or as the bean of a java date.
+     *
+     * @param value The raw value of the date.
+     * @return The not null date, the epoch if the value is not a date.
+     */
+    @NotNull
+    private static Date getDate(@Nullable Object value) {
+
+        if (value instanceof Map) {
+            value = ((Map<?, ?>) value).get(FIELD_DATE_TIME);
+        }
+
+        return new Date(getNumber(value).longValue());
+
+    }
+
+}
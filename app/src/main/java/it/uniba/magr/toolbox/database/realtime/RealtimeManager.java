@@ -2,68 +2,161 @@ package it.uniba.magr.toolbox.database.realtime;
 
 import android.content.Context;
 import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.util.Log;
 
 import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.GenericTypeIndicator;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ServerValue;
+import com.google.firebase.database.ValueEventListener;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Function;
-
-import it.uniba.magr.toolbox.HomeActivity;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import it.uniba.magr.toolbox.database.metrics.SyncMetrics;
 import it.uniba.magr.toolbox.database.realtime.bean.RealtimeBarometer;
 import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMagnetometer;
 import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
 import it.uniba.magr.toolbox.database.realtime.bean.RealtimeRuler;
 import it.uniba.magr.toolbox.database.sqlite.bean.Type;
 
+/**
+ * The firebase realtime database manager.
+ *
+ * <p>
+ *     Every operation is available as an asynchronous method that returns a
+ *     {@link CompletableFuture}, its blocking version just waits for the future
+ *     and it is kept for the callers that already run on a background thread.
+ *     A future fails with a {@link NotConnectedException} if the device is not
+ *     connected to internet.
+ * </p>
+ */
 public class RealtimeManager {
 
-    private static final GenericTypeIndicator<List<RealtimeRuler>> RULER_TYPE_INDICATOR
-            = new GenericTypeIndicator<List<RealtimeRuler>>() {};
-
-    private static final GenericTypeIndicator<List<RealtimeBarometer>> BAROMETER_TYPE_INDICATOR
-            = new GenericTypeIndicator<List<RealtimeBarometer>>() {};
-
-    private static final GenericTypeIndicator<List<RealtimeMagnetometer>> MAGNETOMETER_TYPE_INDICATOR
-            = new GenericTypeIndicator<List<RealtimeMagnetometer>>() {};
+    private static final String LOG_TAG = "REALTIME-DB";
 
     private static final String CHILD_USERS         = "users";
-    private static final String CHILD_MEASUREMENTS  = "measurements";
     private static final String CHILD_RULERS        = "rulers";
     private static final String CHILD_MAGNETOMETERS = "magnetometers";
     private static final String CHILD_BAROMETERS    = "barometers";
 
+    static final String CHILD_MEASUREMENTS = "measurements";
+    static final String CHILD_SEGMENTS     = "segments";
+    static final String CHILD_DIGESTS      = "digests";
+
+    private static final String CHILD_LAYOUT_VERSION = "layout_version";
+
+    /**
+     * The local offset between the device clock and the server one.
+     */
+    private static final String INFO_SERVER_TIME_OFFSET = ".info/serverTimeOffset";
+
+    static final String FIELD_TITLE       = "title";
+    static final String FIELD_DESCRIPTION = "description";
+    static final String FIELD_UPDATED_AT  = "updatedAt";
+    static final String FIELD_DIGEST      = "digest";
+
+    /**
+     * The prefix of the segment keys, followed by the zero padded index
+     * so the keys are sorted like the segments.
+     */
+    private static final String SEGMENT_KEY_PREFIX = "s";
+
+    /**
+     * The current remote layout version.
+     * <ul>
+     *     <li>1: measurements/{type} are arrays of measurements.</li>
+     *     <li>2: measurements/{type}/{key} are single measurements, the key is
+     *     the globally unique id of the measure.</li>
+     * </ul>
+     */
+    private static final int LAYOUT_VERSION = 2;
+
+    /**
+     * The measure types that can be saved into the remote database.
+     */
+    public static final List<Type> REMOTE_TYPES = Collections.unmodifiableList(
+            Arrays.asList(Type.RULER, Type.MAGNETOMETER, Type.BAROMETER));
+
+    /**
+     * The max time that a blocking method waits for a remote operation.
+     * After that, the operation is considered not connected: firebase keeps
+     * the pending writes and it will apply them when the connection is back.
+     */
+    private static final long BLOCKING_TIMEOUT_SECONDS = 30L;
+
+    /*
+     * The names of the remote operations into the metrics.
+     */
+    private static final String OPERATION_ADD          = "add_measure";
+    private static final String OPERATION_REMOVE       = "remove_measure";
+    private static final String OPERATION_HAS          = "has_measure";
+    private static final String OPERATION_UPDATE       = "update_measure";
+    private static final String OPERATION_MIGRATE      = "migrate_layout";
+    private static final String OPERATION_GET_TYPE     = "get_type";
+    private static final String OPERATION_GET_ALL      = "get_all";
+    private static final String OPERATION_GET_UPDATED  = "get_updated_since";
+    private static final String OPERATION_GET_PAGE     = "get_page";
+    private static final String OPERATION_PUT_SEGMENTS = "put_segments";
+    private static final String OPERATION_GET_SEGMENTS = "get_segments";
+    private static final String OPERATION_GET_DIGESTS  = "get_digests";
+    private static final String OPERATION_COMMIT_BATCH = "commit_batch";
+
+    /**
+     * The executor where the snapshots are decoded.
+     * Firebase callbacks are executed into the main thread, which must not be
+     * used to decode the measurements.
+     */
+    @NotNull
+    private final ExecutorService callbackExecutor = Executors.newCachedThreadPool();
+
+    /**
+     * The in-memory copy of the measurements of the session user.
+     */
+    @NotNull
+    private final RealtimeMirror mirror = new RealtimeMirror();
+
     /**
-     * This field prevents the code execution from flowing until the
-     * async operations are ended.
+     * The not null connectivity monitor instance.
      */
-    private final AtomicBoolean lock = new AtomicBoolean(true);
+    @NotNull
+    private final ConnectivityMonitor connectivityMonitor;
 
     /**
-     * The not null connectivity manager instance.
+     * The instrumentation of the remote operations.
      */
     @NotNull
-    private final ConnectivityManager connectivityManager;
+    private final SyncMetrics metrics = new SyncMetrics();
 
-    public RealtimeManager(@NotNull HomeActivity homeActivity) {
+    public RealtimeManager(@NotNull Context context) {
 
-        this.connectivityManager = (ConnectivityManager)
-                homeActivity.getSystemService(Context.CONNECTIVITY_SERVICE);
+        ConnectivityManager connectivityManager = (ConnectivityManager)
+                context.getSystemService(Context.CONNECTIVITY_SERVICE);
 
         assert connectivityManager != null;
+        this.connectivityMonitor = new ConnectivityMonitor(connectivityManager);
 
     }
 
@@ -72,578 +165,1262 @@ public class RealtimeManager {
     //
 
     /**
+     * @return The not null connectivity monitor, it must be started to track the connection.
+     */
+    @NotNull
+    public ConnectivityMonitor getConnectivityMonitor() {
+        return connectivityMonitor;
+    }
+
+    /**
+     * @return The not null metrics of the remote operations.
+     */
+    @NotNull
+    public SyncMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The state is cached by the connectivity monitor, so this check is cheap.
+     *
      * @return True if the device is connected to an internet connection.
      */
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     public boolean isNetworkConnected() {
-
-        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
-        return networkInfo != null && networkInfo.isConnected();
-
+        return connectivityMonitor.isConnected();
     }
 
     /**
-     * Add a ruler to the realtime database.
-     *
-     * @param measure The realtime ruler instance.
-     * @throws NotConnectedException invoked if the device is not connected to internet.
+     * Start the session of the logged user: its measurements are mirrored
+     * in memory until the session is stopped or the user changes.
+     * Nothing happens if no user is logged in.
      */
-    @SuppressWarnings("unchecked")
-    public void addMeasure(@NotNull RealtimeMeasure measure) throws NotConnectedException {
+    public void startSession() {
 
         String uuid = getUserUUID();
 
         if (uuid == null) {
-            return;
-        }
 
-        Type currentType = Type.UNKNOWN;
+            mirror.stop();
+            return;
 
-        if (measure instanceof RealtimeRuler) {
-            currentType = Type.RULER;
-        } else if (measure instanceof RealtimeBarometer) {
-            currentType = Type.BAROMETER;
-        } else if (measure instanceof RealtimeMagnetometer) {
-            currentType = Type.MAGNETOMETER;
         }
 
-        if (currentType == Type.UNKNOWN) {
-            return;
-        }
+        Map<DatabaseReference, Class<? extends RealtimeMeasure>> typeReferences = new HashMap<>();
 
-        List<RealtimeMeasure> measurements = (List<RealtimeMeasure>) getSpecificMeasurements(currentType, uuid);
-        measurements.add(measure);
+        for (Type type : REMOTE_TYPES) {
+            typeReferences.put(getTypeChild(uuid, type), getMeasureClass(type));
+        }
 
-        DatabaseReference databaseReference;
+        mirror.start(uuid, getMeasurementsChild(uuid), typeReferences);
 
-        switch (currentType) {
+    }
 
-            case RULER:        databaseReference = getRulersChild(uuid);        break;
-            case MAGNETOMETER: databaseReference = getMagnetometersChild(uuid); break;
-            case BAROMETER:    databaseReference = getBarometersChild(uuid);    break;
-            default: return;
+    /**
+     * Stop the current user session and release its mirrored measurements.
+     */
+    public void stopSession() {
+        mirror.stop();
+    }
 
-        }
+    /**
+     * Stop the session and release the threads of the manager.
+     * The manager cannot be used anymore.
+     */
+    public void close() {
 
-        databaseReference.setValue(measurements);
-        databaseReference.push();
+        mirror.close();
+        callbackExecutor.shutdown();
 
     }
 
     /**
-     * Remove a measure from the realtime database.
+     * Add a measure to the realtime database.
+     * The measure is written into its own child node, so the other
+     * measurements of the user are neither downloaded nor uploaded again.
+     * Its content digest is written into the digests manifest by the same update.
      *
-     * @param measureIdToRemove The measure id to remove.
-     * @throws NotConnectedException invoked if the device is not connected to internet.
+     * @param measure The realtime measure instance.
+     * @return The not null future completed when the write is applied.
      */
-    public void removeMeasure(int measureIdToRemove) throws NotConnectedException {
+    @NotNull
+    public CompletableFuture<Void> addMeasureAsync(@NotNull RealtimeMeasure measure) {
 
         if (!isNetworkConnected()) {
-            throw new NotConnectedException();
+            return notConnected();
         }
 
         String uuid = getUserUUID();
+        String measureKey = measure.getUuid();
+        Type currentType = getMeasureType(measure);
 
-        if (uuid == null) {
-            return;
-        }
-
-        List<? extends RealtimeMeasure> measurements = getAllMeasurements(uuid);
-        Type currentType = Type.UNKNOWN;
-
-        for (RealtimeMeasure current : measurements) {
-
-            if (measureIdToRemove == current.getMeasureId()) {
-
-                if (current instanceof RealtimeRuler) {
-                    currentType = Type.RULER;
-                } else if (current instanceof RealtimeBarometer) {
-                    currentType = Type.BAROMETER;
-                } else if (current instanceof RealtimeMagnetometer) {
-                    currentType = Type.MAGNETOMETER;
-                }
-
-                break;
-
-            }
-
+        if (uuid == null || measureKey == null || currentType == Type.UNKNOWN) {
+            return CompletableFuture.completedFuture(null);
         }
 
-        if (currentType == Type.UNKNOWN) {
-            return;
-        }
-
-        measurements = getSpecificMeasurements(currentType, uuid);
-        RealtimeMeasure toRemoveMeasure = null;
-
-        for (RealtimeMeasure current : measurements) {
-
-            if (measureIdToRemove == current.getMeasureId()) {
-
-                toRemoveMeasure = current;
-                break;
-
-            }
+        measure.setUpdatedAt(ServerValue.TIMESTAMP);
 
-        }
-
-        measurements.remove(toRemoveMeasure);
-        DatabaseReference databaseReference;
-
-        switch (currentType) {
-
-            case RULER:        databaseReference = getRulersChild(uuid);        break;
-            case MAGNETOMETER: databaseReference = getMagnetometersChild(uuid); break;
-            case BAROMETER:    databaseReference = getBarometersChild(uuid);    break;
-            default: return;
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(CHILD_MEASUREMENTS + "/" + getTypeChildName(currentType) + "/" + measureKey, measure);
+        updates.put(CHILD_DIGESTS + "/" + measureKey, MeasureDigest.ensure(measure));
+        metrics.addBytesUp(SyncMetrics.estimateBytes(updates));
 
-        }
-
-        databaseReference.setValue(measurements);
-        databaseReference.push();
+        return track(OPERATION_ADD, toVoidFuture(getUserChild(uuid).updateChildren(updates)));
 
     }
 
     /**
-     * Check if a measure id is contained into the remote database.
+     * Remove a measure from the realtime database.
      *
-     * @param measureId The measure id.
-     * @throws NotConnectedException invoked if the device is not connected to internet.
+     * <p>
+     *     The measure key is removed from every type node, together with its
+     *     segments and its digest, with a single multi-path update, so the
+     *     measure type doesn't need to be fetched before.
+     * </p>
+     *
+     * @param measureKey The not null globally unique id of the measure to remove.
+     * @return The not null future completed when the write is applied.
      */
-    public boolean hasMeasure(int measureId) throws NotConnectedException {
+    @NotNull
+    public CompletableFuture<Void> removeMeasureAsync(@NotNull String measureKey) {
 
         if (!isNetworkConnected()) {
-            throw new NotConnectedException();
+            return notConnected();
         }
 
         String uuid = getUserUUID();
 
         if (uuid == null) {
-            return false;
+            return CompletableFuture.completedFuture(null);
         }
 
-        List<RealtimeMeasure> allMeasurements = getAllMeasurements(uuid);
-
-        for (RealtimeMeasure currentMeasure : allMeasurements) {
-
-            int currentId = currentMeasure.getMeasureId();
-
-            if (measureId == currentId) {
-                return true;
-            }
+        Map<String, Object> updates = new HashMap<>();
 
+        for (Type type : REMOTE_TYPES) {
+            updates.put(CHILD_MEASUREMENTS + "/" + getTypeChildName(type) + "/" + measureKey, null);
         }
 
-        return false;
+        updates.put(CHILD_SEGMENTS + "/" + measureKey, null);
+        updates.put(CHILD_DIGESTS + "/" + measureKey, null);
+        metrics.addBytesUp(SyncMetrics.estimateBytes(updates));
+
+        return track(OPERATION_REMOVE, toVoidFuture(getUserChild(uuid).updateChildren(updates)));
 
     }
 
     /**
-     * Update the measure id of an existing measure.
+     * Check if a measure is contained into the remote database.
+     * The three type nodes are looked up concurrently.
      *
-     * @param remoteMeasureId The remote measure id to edit.
-     * @param updatedMeasureId The replacement measure id.
-     * @throws NotConnectedException invoked if the device is not connected to internet.
+     * @param measureKey The not null globally unique id of the measure.
+     * @return The not null future of the check result.
      */
-    public void updateMeasureId(int remoteMeasureId, int updatedMeasureId) throws NotConnectedException {
+    @NotNull
+    public CompletableFuture<Boolean> hasMeasureAsync(@NotNull String measureKey) {
 
         if (!isNetworkConnected()) {
-            throw new NotConnectedException();
+            return notConnected();
         }
 
         String uuid = getUserUUID();
 
         if (uuid == null) {
-            return;
-        }
-
-        List<? extends RealtimeMeasure> measurements = getAllMeasurements(uuid);
-        Type currentType = Type.UNKNOWN;
-
-        for (RealtimeMeasure current : measurements) {
-
-            if (remoteMeasureId == current.getMeasureId()) {
-
-                if (current instanceof RealtimeRuler) {
-                    currentType = Type.RULER;
-                } else if (current instanceof RealtimeBarometer) {
-                    currentType = Type.BAROMETER;
-                } else if (current instanceof RealtimeMagnetometer) {
-                    currentType = Type.MAGNETOMETER;
-                }
-
-                break;
-
-            }
-
+            return CompletableFuture.completedFuture(false);
         }
 
-        if (currentType == Type.UNKNOWN) {
-            return;
+        if (mirror.isReady(uuid)) {
+            return CompletableFuture.completedFuture(mirror.hasMeasure(measureKey));
         }
 
-        measurements = getSpecificMeasurements(currentType, uuid);
+        return track(OPERATION_HAS, findMeasureAsync(uuid, measureKey).thenApply(measure -> measure != null));
 
-        for (RealtimeMeasure current : measurements) {
+    }
 
-            if (remoteMeasureId == current.getMeasureId()) {
-                current.setMeasureId(updatedMeasureId);
-            }
+    /**
+     * Update a measure title and description.
+     * Only the two fields and the digest are written, the measure payload is left untouched.
+     *
+     * @param type The not null Type of the measure.
+     * @param measureKey The not null globally unique id of the measure.
+     * @param title The not null title.
+     * @param description The not null description.
+     * @param digest The not null content digest with the new title and description.
+     * @return The not null future completed when the write is applied.
+     */
+    @NotNull
+    public CompletableFuture<Void> updateMeasureAsync(@NotNull Type type,
+                                                      @NotNull String measureKey,
+                                                      @NotNull String title,
+                                                      @NotNull String description,
+                                                      @NotNull String digest) {
 
+        if (!isNetworkConnected()) {
+            return notConnected();
         }
 
-        DatabaseReference databaseReference;
+        String uuid = getUserUUID();
 
-        switch (currentType) {
+        if (uuid == null || !REMOTE_TYPES.contains(type)) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-            case RULER:        databaseReference = getRulersChild(uuid);        break;
-            case MAGNETOMETER: databaseReference = getMagnetometersChild(uuid); break;
-            case BAROMETER:    databaseReference = getBarometersChild(uuid);    break;
-            default: return;
+        String measurePath = CHILD_MEASUREMENTS + "/" + getTypeChildName(type) + "/" + measureKey + "/";
 
-        }
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(measurePath + FIELD_TITLE,       title);
+        updates.put(measurePath + FIELD_DESCRIPTION, description);
+        updates.put(measurePath + FIELD_DIGEST,      digest);
+        updates.put(measurePath + FIELD_UPDATED_AT,  ServerValue.TIMESTAMP);
+        updates.put(CHILD_DIGESTS + "/" + measureKey, digest);
+        metrics.addBytesUp(SyncMetrics.estimateBytes(updates));
 
-        databaseReference.setValue(measurements);
-        databaseReference.push();
+        return track(OPERATION_UPDATE, toVoidFuture(getUserChild(uuid).updateChildren(updates)));
 
     }
 
     /**
-     * Update a measure title and description.
+     * Move the measurements of the user from the legacy array layout
+     * (measurements/{type}/{index}) to the keyed layout (measurements/{type}/{key}).
+     * Each legacy measure is keyed by its type and its index, see {@link LegacyLayout}:
+     * the local measurements are matched with them by the sync engine.
      *
-     * @param type The not null Type of the measure.
-     * @param measureId The unique measure id of the remote item.
-     * @param title The not null title.
-     * @param description The not null description.
-     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     * <p>
+     *     The migration is performed once: the layout version is kept into
+     *     the user node and all the moves are applied with a single atomic update.
+     * </p>
+     *
+     * @return The not null future completed when the migration is applied.
      */
-    @SuppressWarnings("unchecked")
-    public void updateMeasure(@NotNull Type type,
-                              int measureId,
-                              @NotNull String title,
-                              @NotNull String description) throws NotConnectedException {
+    @NotNull
+    public CompletableFuture<Void> migrateLegacyLayoutAsync() {
 
         if (!isNetworkConnected()) {
-            throw new NotConnectedException();
+            return notConnected();
         }
 
         String uuid = getUserUUID();
 
         if (uuid == null) {
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        List<RealtimeMeasure> measurements = (List<RealtimeMeasure>) getSpecificMeasurements(type, uuid);
-
-        for (int i = 0; i < measurements.size() ; i++) {
+        DatabaseReference userReference = getUserChild(uuid);
+        CompletableFuture<DataSnapshot> versionFuture = getSnapshotAsync(userReference.child(CHILD_LAYOUT_VERSION));
 
-            RealtimeMeasure current = measurements.get(i);
-            int currentId = current.getMeasureId();
+        return track(OPERATION_MIGRATE, versionFuture.thenCompose(versionSnapshot -> {
 
-            if (measureId == currentId) {
-
-                current.setTitle(title);
-                current.setDescription(description);
-                break;
+            Integer layoutVersion = versionSnapshot.getValue(Integer.class);
 
+            if (layoutVersion != null && layoutVersion >= LAYOUT_VERSION) {
+                return CompletableFuture.completedFuture(null);
             }
 
-        }
+            return getSnapshotAsync(getMeasurementsChild(uuid)).thenCompose(measurementsSnapshot -> {
 
-        DatabaseReference databaseReference;
+                Map<String, Object> updates = new HashMap<>();
 
-        switch (type) {
+                for (Type type : REMOTE_TYPES) {
 
-            case RULER:        databaseReference = getRulersChild(uuid);        break;
-            case MAGNETOMETER: databaseReference = getMagnetometersChild(uuid); break;
-            case BAROMETER:    databaseReference = getBarometersChild(uuid);    break;
-            default: return;
+                    String typeChildName = getTypeChildName(type);
+                    String path = CHILD_MEASUREMENTS + "/" + typeChildName + "/";
+                    Map<String, Object> children = new LinkedHashMap<>();
 
-        }
+                    for (DataSnapshot child : measurementsSnapshot.child(typeChildName).getChildren()) {
 
-        databaseReference.setValue(measurements);
-        databaseReference.push();
+                        if (child.getKey() != null) {
+                            children.put(child.getKey(), child.getValue());
+                        }
 
-    }
+                    }
 
-    /**
-     * @return The maximum measure id into the user remote database.
-     * @throws NotConnectedException Invoked if the device is not connected to internet.
-     */
-    public int getMaxMeasureId() throws NotConnectedException {
+                    // it throws if a key is already used, so the future fails and nothing is written.
+                    updates.putAll(LegacyLayout.getMoves(path, typeChildName, children));
 
-        if (!isNetworkConnected()) {
-            throw new NotConnectedException();
-        }
+                }
 
-        String uuid = getUserUUID();
+                updates.put(CHILD_LAYOUT_VERSION, LAYOUT_VERSION);
+                metrics.addBytesUp(SyncMetrics.estimateBytes(updates));
 
-        if (uuid == null) {
-            return -1;
-        }
+                return toVoidFuture(userReference.updateChildren(updates));
 
-        int max = 0;
+            });
 
-        for (RealtimeMeasure current : getAllMeasurements(uuid)) {
+        }));
 
-            int measureId = current.getMeasureId();
+    }
 
-            if (measureId > max) {
-                max = measureId;
-            }
+    /**
+     * Retrieve a list of ruler measurements from the remote database
+     * associated with the current logged user.
+     *
+     * @return The not null future of the ruler measurements.
+     */
+    @NotNull
+    public CompletableFuture<List<RealtimeRuler>> getRulersAsync() {
+
+        String uuid = getUserUUID();
 
+        if (uuid == null) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
         }
 
-        return 0;
+        return getMeasurementsAsync(getRulersChild(uuid), RealtimeRuler.class);
 
     }
 
     /**
-     * Retrieve a list of ruler measurements from the remote database
+     * Retrieve a list of magnetometer measurements from the remote database
      * associated with the current logged user.
      *
-     * @return A not null list of ruler measurements.
-     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     * @return The not null future of the magnetometer measurements.
      */
     @NotNull
-    public List<RealtimeRuler> getRulers() throws NotConnectedException {
+    public CompletableFuture<List<RealtimeMagnetometer>> getMagnetometersAsync() {
 
         String uuid = getUserUUID();
 
         if (uuid == null) {
-            return new ArrayList<>();
+            return CompletableFuture.completedFuture(new ArrayList<>());
         }
 
-        return getRulers(uuid);
+        return getMeasurementsAsync(getMagnetometersChild(uuid), RealtimeMagnetometer.class);
 
     }
 
     /**
-     * Retrieve a list of magnetometer measurements from the remote database
+     * Retrieve a list of barometer measurements from the remote database
      * associated with the current logged user.
      *
-     * @return A not null list of magnetometer measurements.
-     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     * @return The not null future of the barometer measurements.
      */
     @NotNull
-    public List<RealtimeMagnetometer> getMagnetometers() throws NotConnectedException {
+    public CompletableFuture<List<RealtimeBarometer>> getBarometersAsync() {
 
         String uuid = getUserUUID();
 
         if (uuid == null) {
-            return new ArrayList<>();
+            return CompletableFuture.completedFuture(new ArrayList<>());
         }
 
-        return getMagnetometers(uuid);
+        return getMeasurementsAsync(getBarometersChild(uuid), RealtimeBarometer.class);
 
     }
 
     /**
-     * Retrieve a list of barometer measurements from the remote database
-     * associated with the current logged user.
+     * Retrieve all the measurements from the remote database associated
+     * with the current logged user, with a single request.
      *
-     * @return A not null list of barometer measurements.
-     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     * @return The not null future of all the measurements.
      */
     @NotNull
-    public List<RealtimeBarometer> getBarometers() throws NotConnectedException {
+    public CompletableFuture<List<RealtimeMeasure>> getAllMeasurementsAsync() {
 
         String uuid = getUserUUID();
 
         if (uuid == null) {
-            return new ArrayList<>();
+            return CompletableFuture.completedFuture(new ArrayList<>());
         }
 
-        return getBarometers(uuid);
+        return getAllMeasurementsAsync(uuid);
 
     }
 
     /**
-     * Retrieve a list of ruler measurements from the remote database.
+     * Retrieve the measurements written after a server time. Each type node is
+     * queried by its updatedAt child, so only the changed measurements are downloaded.
+     * The type nodes should be indexed on updatedAt by the database rules.
      *
-     * @param uuid The not null user firebase uuid.
-     * @return A not null list of ruler measurements.
-     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     * @param mark The server time of the latest known write, in milliseconds.
+     * @return The not null future of the changed measurements.
      */
     @NotNull
-    @SuppressWarnings({"squid:S3776", "unchecked"})
-    public List<RealtimeRuler> getRulers(@NotNull String uuid) throws NotConnectedException {
+    public CompletableFuture<List<RealtimeMeasure>> getMeasurementsUpdatedSinceAsync(long mark) {
 
-        return (List<RealtimeRuler>) getMeasurements(getRulersChild(uuid), dataSnapshot -> {
+        if (!isNetworkConnected()) {
+            return notConnected();
+        }
 
-            List<RealtimeRuler> result = new ArrayList<>();
-            List<RealtimeRuler> rulers = dataSnapshot.getValue(RULER_TYPE_INDICATOR);
+        String uuid = getUserUUID();
 
-            if (rulers != null && !rulers.isEmpty()) {
+        if (uuid == null) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
 
-                for (RealtimeRuler current : rulers) {
+        if (mirror.isReady(uuid)) {
 
-                    if (current != null) {
-                        result.add(current);
-                    }
+            List<RealtimeMeasure> results = new ArrayList<>();
 
+            for (RealtimeMeasure current : mirror.getMeasurements()) {
+
+                if (current.getUpdatedAtMillis() > mark) {
+                    results.add(current);
                 }
 
             }
 
-            return result;
+            return CompletableFuture.completedFuture(results);
 
-        });
+        }
 
-    }
+        List<CompletableFuture<List<RealtimeMeasure>>> queries = new ArrayList<>(REMOTE_TYPES.size());
 
-    /**
-     * Retrieve a list of magnetometer measurements from the remote database.
-     *
-     * @param uuid The not null user firebase uuid.
-     * @return A not null list of magnetometer measurements.
-     * @throws NotConnectedException Invoked if the device is not connected to internet.
-     */
-    @NotNull
-    @SuppressWarnings({"squid:S3776", "unchecked"})
-    public List<RealtimeMagnetometer> getMagnetometers(@NotNull String uuid) throws NotConnectedException {
+        for (Type type : REMOTE_TYPES) {
 
-        return (List<RealtimeMagnetometer>) getMeasurements(getMagnetometersChild(uuid), dataSnapshot -> {
+            Query query = getTypeChild(uuid, type).orderByChild(FIELD_UPDATED_AT).startAt(mark + 1);
+            Class<? extends RealtimeMeasure> measureClass = getMeasureClass(type);
 
-            List<RealtimeMagnetometer> result = new ArrayList<>();
-            List<RealtimeMagnetometer> magnetometers = dataSnapshot.getValue(MAGNETOMETER_TYPE_INDICATOR);
+            queries.add(toFuture(query.get(), callbackExecutor).thenApply(dataSnapshot -> {
 
-            if (magnetometers != null && !magnetometers.isEmpty()) {
+                List<RealtimeMeasure> results = new ArrayList<>();
+                decodeMeasurements(dataSnapshot, measureClass, results);
 
-                for (RealtimeMagnetometer current : magnetometers) {
+                return results;
 
-                    if (current != null) {
-                        result.add(current);
-                    }
+            }));
 
-                }
+        }
 
+        CompletableFuture<Void> allQueries = CompletableFuture.allOf(queries.toArray(new CompletableFuture[0]));
+
+        return track(OPERATION_GET_UPDATED, allQueries.thenApply(unused -> {
+
+            List<RealtimeMeasure> results = new ArrayList<>();
+
+            for (CompletableFuture<List<RealtimeMeasure>> query : queries) {
+                results.addAll(query.join());
             }
 
-            return result;
+            return results;
 
-        });
+        }));
 
     }
 
     /**
-     * Retrieve a list of barometer measurements from the remote database.
+     * Retrieve a page of the remote measurements of a type, sorted by key.
+     * Only the measurements of the page are downloaded and decoded, so a
+     * large history can be read in bounded memory.
      *
-     * @param uuid The not null user firebase uuid.
-     * @return A not null list of barometer measurements.
-     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     * @param type The not null Type of the measurements.
+     * @param cursor The key of the last measure of the previous page, null for the first page.
+     * @param pageSize The max number of measurements of the page, greater than 0.
+     * @return The not null future of the page.
      */
     @NotNull
-    @SuppressWarnings({"squid:S3776", "unchecked"})
-    public List<RealtimeBarometer> getBarometers(@NotNull String uuid) throws NotConnectedException {
+    public CompletableFuture<MeasurePage> getMeasurementsPageAsync(@NotNull Type type,
+                                                                   @Nullable String cursor,
+                                                                   int pageSize) {
+
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be greater than 0");
+        }
 
-        return (List<RealtimeBarometer>) getMeasurements(getBarometersChild(uuid), dataSnapshot -> {
+        if (!isNetworkConnected()) {
+            return notConnected();
+        }
 
-            List<RealtimeBarometer> result = new ArrayList<>();
-            List<RealtimeBarometer> barometers = dataSnapshot.getValue(BAROMETER_TYPE_INDICATOR);
+        String uuid = getUserUUID();
 
-            if (barometers != null && !barometers.isEmpty()) {
+        if (uuid == null || !REMOTE_TYPES.contains(type)) {
+            return CompletableFuture.completedFuture(new MeasurePage(Collections.emptyList(), null));
+        }
 
-                for (RealtimeBarometer current : barometers) {
+        Class<? extends RealtimeMeasure> measureClass = getMeasureClass(type);
 
-                    if (current != null) {
-                        result.add(current);
-                    }
+        if (mirror.isReady(uuid)) {
+            return CompletableFuture.completedFuture(mirror.getPage(measureClass, cursor, pageSize));
+        }
+
+        Query query = getTypeChild(uuid, type).orderByKey();
+
+        if (cursor != null) {
+            query = query.startAfter(cursor);
+        }
+
+        CompletableFuture<DataSnapshot> pageFuture = toFuture(query.limitToFirst(pageSize).get(), callbackExecutor);
+
+        return track(OPERATION_GET_PAGE, pageFuture.thenApply(dataSnapshot -> {
+
+            List<RealtimeMeasure> results = new ArrayList<>(pageSize);
+            String lastKey = null;
+
+            for (DataSnapshot child : dataSnapshot.getChildren()) {
 
+                RealtimeMeasure measure = decode(child, measureClass);
+                lastKey = child.getKey();
+
+                if (measure != null) {
+                    results.add(measure);
                 }
 
             }
 
-            return result;
+            // a page shorter than the requested size is the last one.
+            String nextCursor = dataSnapshot.getChildrenCount() < pageSize ? null : lastKey;
+            return new MeasurePage(Collections.unmodifiableList(results), nextCursor);
 
-        });
+        }));
 
     }
 
-    //
-    // PRIVATE METHODS
-    //
-
     /**
-     * Retrieve a list of measurements from the remote database.
+     * Upload the segments of a measure one at a time, each one is acknowledged
+     * before the next. The upload resumes after the last segment that has been
+     * acknowledged by a previous upload, the segments of a measure never change.
      *
-     * @param childReference The not null measurements child reference instance.
-     * @param dataSnapshotConsumer The not null lambda Function to gets the result.
-     * @return A not null list of measurements.
-     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     * @param measureKey The not null globally unique id of the measure.
+     * @param segments The not null segments of the measure, in order.
+     * @return The not null future completed when all the segments are uploaded.
      */
     @NotNull
-    private List<? extends RealtimeMeasure> getMeasurements(
-            @NotNull DatabaseReference childReference,
-            @NotNull Function<DataSnapshot, List<? extends RealtimeMeasure>> dataSnapshotConsumer)
-            throws NotConnectedException {
+    public CompletableFuture<Void> putSegmentsAsync(@NotNull String measureKey, @NotNull List<String> segments) {
 
         if (!isNetworkConnected()) {
-            throw new NotConnectedException();
+            return notConnected();
         }
 
-        List<RealtimeMeasure> results = new ArrayList<>();
-        Task<DataSnapshot> dataSnapshotTask = childReference.get();
+        String uuid = getUserUUID();
 
-        dataSnapshotTask.addOnCanceledListener(this :: unlock);
-        dataSnapshotTask.addOnFailureListener(onFailure -> unlock());
+        if (uuid == null || segments.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-        dataSnapshotTask.addOnSuccessListener(dataSnapshot -> {
+        DatabaseReference segmentsReference = getSegmentsChild(uuid).child(measureKey);
+        Query lastSegmentQuery = segmentsReference.orderByKey().limitToLast(1);
 
-            if (dataSnapshot != null) {
-                results.addAll(dataSnapshotConsumer.apply(dataSnapshot));
-            }
+        CompletableFuture<DataSnapshot> lastSegmentFuture = toFuture(lastSegmentQuery.get(), callbackExecutor);
 
-            unlock();
+        return track(OPERATION_PUT_SEGMENTS, lastSegmentFuture.thenCompose(dataSnapshot -> {
 
-        });
+            int acknowledged = 0;
 
-        lock();
-        return Collections.unmodifiableList(results);
+            for (DataSnapshot child : dataSnapshot.getChildren()) {
+                acknowledged = getSegmentIndex(child.getKey()) + 1;
+            }
 
+            CompletableFuture<Void> upload = CompletableFuture.completedFuture(null);
+
+            for (int i = acknowledged; i < segments.size() ; i++) {
+
+                DatabaseReference segmentReference = segmentsReference.child(getSegmentKey(i));
+                String segment = segments.get(i);
+
+                upload = upload.thenCompose(unused -> {
+
+                    metrics.addBytesUp(segment.length());
+                    return toVoidFuture(segmentReference.setValue(segment));
+
+                });
+
+            }
+
+            return upload;
+
+        }));
+
+    }
+
+    /**
+     * Download the segments of a measure, they are read only when
+     * the samples of the measure are needed.
+     *
+     * @param measureKey The not null globally unique id of the measure.
+     * @return The not null future of the segments, in order.
+     */
+    @NotNull
+    public CompletableFuture<List<String>> getSegmentsAsync(@NotNull String measureKey) {
+
+        if (!isNetworkConnected()) {
+            return notConnected();
+        }
+
+        String uuid = getUserUUID();
+
+        if (uuid == null) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        CompletableFuture<DataSnapshot> segmentsFuture = getSnapshotAsync(getSegmentsChild(uuid).child(measureKey));
+
+        return track(OPERATION_GET_SEGMENTS, segmentsFuture.thenApply(dataSnapshot -> {
+
+            List<String> segments = new ArrayList<>((int) dataSnapshot.getChildrenCount());
+
+            for (DataSnapshot child : dataSnapshot.getChildren()) {
+
+                String segment = child.getValue(String.class);
+
+                if (segment != null) {
+                    segments.add(segment);
+                }
+
+            }
+
+            return segments;
+
+        }));
+
+    }
+
+    /**
+     * Estimate the current time of the server from the clock offset that firebase
+     * keeps locally, so no round trip is made.
+     *
+     * @return The not null future of the server time, in milliseconds.
+     */
+    @NotNull
+    public CompletableFuture<Long> getServerTimeAsync() {
+
+        if (!isNetworkConnected()) {
+            return notConnected();
+        }
+
+        CompletableFuture<Long> serverTimeFuture = new CompletableFuture<>();
+        DatabaseReference offsetReference = FirebaseDatabase.getInstance().getReference(INFO_SERVER_TIME_OFFSET);
+
+        offsetReference.addListenerForSingleValueEvent(new ValueEventListener() {
+
+            @Override
+            public void onDataChange(@NotNull DataSnapshot dataSnapshot) {
+
+                Long offset = dataSnapshot.getValue(Long.class);
+                serverTimeFuture.complete(System.currentTimeMillis() + (offset != null ? offset : 0L));
+
+            }
+
+            @Override
+            public void onCancelled(@NotNull DatabaseError error) {
+                serverTimeFuture.completeExceptionally(error.toException());
+            }
+
+        });
+
+        return serverTimeFuture;
+
+    }
+
+    /**
+     * Retrieve the digests manifest of the user: the content digest of each
+     * remote measure by its key. The manifest is small, so the measurements
+     * can be compared without downloading their payloads.
+     *
+     * @return The not null future of the digests by measure key.
+     */
+    @NotNull
+    public CompletableFuture<Map<String, String>> getDigestsAsync() {
+
+        if (!isNetworkConnected()) {
+            return notConnected();
+        }
+
+        String uuid = getUserUUID();
+
+        if (uuid == null) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+
+        if (mirror.isReady(uuid)) {
+
+            Map<String, String> digests = new HashMap<>();
+
+            for (RealtimeMeasure current : mirror.getMeasurements()) {
+
+                if (current.getUuid() != null && current.getDigest() != null) {
+                    digests.put(current.getUuid(), current.getDigest());
+                }
+
+            }
+
+            return CompletableFuture.completedFuture(digests);
+
+        }
+
+        CompletableFuture<DataSnapshot> digestsFuture = getSnapshotAsync(getUserChild(uuid).child(CHILD_DIGESTS));
+
+        return track(OPERATION_GET_DIGESTS, digestsFuture.thenApply(dataSnapshot -> {
+
+            Map<String, String> digests = new HashMap<>();
+
+            for (DataSnapshot child : dataSnapshot.getChildren()) {
+
+                String digest = child.getValue(String.class);
+
+                if (child.getKey() != null && digest != null) {
+                    digests.put(child.getKey(), digest);
+                }
+
+            }
+
+            return digests;
+
+        }));
+
+    }
+
+    /**
+     * Apply all the writes of a batch with a single multi-path update
+     * of the user node: either all of them are applied or none.
+     * The segments of the removed measurements are removed too and
+     * the digests manifest is updated.
+     *
+     * @param batch The not null batch instance.
+     * @return The not null future completed when the batch is applied.
+     */
+    @NotNull
+    public CompletableFuture<Void> commitBatchAsync(@NotNull RealtimeBatch batch) {
+
+        if (!isNetworkConnected()) {
+            return notConnected();
+        }
+
+        String uuid = getUserUUID();
+
+        if (uuid == null || batch.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Map<String, Object> updates = batch.getUserUpdates();
+
+        metrics.addBytesUp(SyncMetrics.estimateBytes(updates));
+        return track(OPERATION_COMMIT_BATCH, toVoidFuture(getUserChild(uuid).updateChildren(updates)));
+
+    }
+
+    //
+    // BLOCKING METHODS
+    //
+
+    /**
+     * Blocking version of {@link #addMeasureAsync(RealtimeMeasure)}.
+     *
+     * @param measure The realtime measure instance.
+     * @throws NotConnectedException invoked if the device is not connected to internet.
+     */
+    public void addMeasure(@NotNull RealtimeMeasure measure) throws NotConnectedException {
+        join(addMeasureAsync(measure));
     }
 
     /**
+     * Blocking version of {@link #removeMeasureAsync(String)}.
+     *
+     * @param measureKey The not null globally unique id of the measure to remove.
+     * @throws NotConnectedException invoked if the device is not connected to internet.
+     */
+    public void removeMeasure(@NotNull String measureKey) throws NotConnectedException {
+        join(removeMeasureAsync(measureKey));
+    }
+
+    /**
+     * Blocking version of {@link #hasMeasureAsync(String)}.
+     *
+     * @param measureKey The not null globally unique id of the measure.
+     * @return True if the measure is contained into the remote database.
+     * @throws NotConnectedException invoked if the device is not connected to internet.
+     */
+    public boolean hasMeasure(@NotNull String measureKey) throws NotConnectedException {
+        return join(hasMeasureAsync(measureKey));
+    }
+
+    /**
+     * Blocking version of {@link #updateMeasureAsync(Type, String, String, String, String)}.
+     *
+     * @param type The not null Type of the measure.
+     * @param measureKey The not null globally unique id of the measure.
+     * @param title The not null title.
+     * @param description The not null description.
+     * @param digest The not null content digest with the new title and description.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    public void updateMeasure(@NotNull Type type,
+                              @NotNull String measureKey,
+                              @NotNull String title,
+                              @NotNull String description,
+                              @NotNull String digest) throws NotConnectedException {
+        join(updateMeasureAsync(type, measureKey, title, description, digest));
+    }
+
+    /**
+     * Blocking version of {@link #migrateLegacyLayoutAsync()}.
+     *
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    public void migrateLegacyLayout() throws NotConnectedException {
+        join(migrateLegacyLayoutAsync());
+    }
+
+    /**
+     * Blocking version of {@link #getMeasurementsUpdatedSinceAsync(long)}.
+     *
+     * @param mark The server time of the latest known write, in milliseconds.
+     * @return A not null list of the changed measurements.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    @NotNull
+    public List<RealtimeMeasure> getMeasurementsUpdatedSince(long mark) throws NotConnectedException {
+
+        return join(getMeasurementsUpdatedSinceAsync(mark));
+    }
+
+    /**
+     * Blocking version of {@link #getMeasurementsPageAsync(Type, String, int)}.
+     *
+     * @param type The not null Type of the measurements.
+     * @param cursor The key of the last measure of the previous page, null for the first page.
+     * @param pageSize The max number of measurements of the page, greater than 0.
+     * @return The not null page.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    @NotNull
+    public MeasurePage getMeasurementsPage(@NotNull Type type,
+                                           @Nullable String cursor,
+                                           int pageSize) throws NotConnectedException {
+
+        return join(getMeasurementsPageAsync(type, cursor, pageSize));
+    }
+
+    /**
+     * Blocking version of {@link #putSegmentsAsync(String, List)}.
+     *
+     * @param measureKey The not null globally unique id of the measure.
+     * @param segments The not null segments of the measure, in order.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    public void putSegments(@NotNull String measureKey, @NotNull List<String> segments) throws NotConnectedException {
+
+        // the measure must not be written before all its segments, so a failure is thrown.
+        join(putSegmentsAsync(measureKey, segments));
+
+    }
+
+    /**
+     * Blocking version of {@link #getSegmentsAsync(String)}.
+     *
+     * @param measureKey The not null globally unique id of the measure.
+     * @return The not null list of the segments, in order.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    @NotNull
+    public List<String> getSegments(@NotNull String measureKey) throws NotConnectedException {
+
+        return join(getSegmentsAsync(measureKey));
+    }
+
+    /**
+     * Blocking version of {@link #getServerTimeAsync()}.
+     *
+     * @return The server time, in milliseconds.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    public long getServerTime() throws NotConnectedException {
+
+        return join(getServerTimeAsync());
+    }
+
+    /**
+     * Blocking version of {@link #getDigestsAsync()}.
+     *
+     * @return The not null map of the digests by measure key.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    @NotNull
+    public Map<String, String> getDigests() throws NotConnectedException {
+
+        return join(getDigestsAsync());
+    }
+
+    /**
+     * Blocking version of {@link #commitBatchAsync(RealtimeBatch)}.
+     *
+     * @param batch The not null batch instance.
+     * @return True if the batch has been applied.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    public boolean commitBatch(@NotNull RealtimeBatch batch) throws NotConnectedException {
+
+        join(commitBatchAsync(batch));
+        return true;
+
+    }
+
+    /**
+     * Retrieve all the measurements from the remote database
+     * associated with the current logged user.
+     *
+     * @return A not null list of measurements.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    @NotNull
+    public List<RealtimeMeasure> getAllMeasurements() throws NotConnectedException {
+        return join(getAllMeasurementsAsync());
+    }
+
+    /**
+     * Retrieve a list of ruler measurements from the remote database
+     * associated with the current logged user.
+     *
+     * @return A not null list of ruler measurements.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    @NotNull
+    public List<RealtimeRuler> getRulers() throws NotConnectedException {
+        return join(getRulersAsync());
+    }
+
+    /**
+     * Retrieve a list of magnetometer measurements from the remote database
+     * associated with the current logged user.
+     *
+     * @return A not null list of magnetometer measurements.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    @NotNull
+    public List<RealtimeMagnetometer> getMagnetometers() throws NotConnectedException {
+        return join(getMagnetometersAsync());
+    }
+
+    /**
+     * Retrieve a list of barometer measurements from the remote database
+     * associated with the current logged user.
+     *
+     * @return A not null list of barometer measurements.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    @NotNull
+    public List<RealtimeBarometer> getBarometers() throws NotConnectedException {
+        return join(getBarometersAsync());
+    }
+
+    /**
+     * Retrieve a list of ruler measurements from the remote database.
+     *
      * @param uuid The not null user firebase uuid.
-     * @return A not null list of all measurements associate with the uuid.
+     * @return A not null list of ruler measurements.
      * @throws NotConnectedException Invoked if the device is not connected to internet.
      */
     @NotNull
-    private List<RealtimeMeasure> getAllMeasurements(@NotNull String uuid) throws NotConnectedException {
+    public List<RealtimeRuler> getRulers(@NotNull String uuid) throws NotConnectedException {
+        return join(getMeasurementsAsync(getRulersChild(uuid), RealtimeRuler.class));
+    }
+
+    /**
+     * Retrieve a list of magnetometer measurements from the remote database.
+     *
+     * @param uuid The not null user firebase uuid.
+     * @return A not null list of magnetometer measurements.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    @NotNull
+    public List<RealtimeMagnetometer> getMagnetometers(@NotNull String uuid) throws NotConnectedException {
+        return join(getMeasurementsAsync(getMagnetometersChild(uuid), RealtimeMagnetometer.class));
+    }
+
+    /**
+     * Retrieve a list of barometer measurements from the remote database.
+     *
+     * @param uuid The not null user firebase uuid.
+     * @return A not null list of barometer measurements.
+     * @throws NotConnectedException Invoked if the device is not connected to internet.
+     */
+    @NotNull
+    public List<RealtimeBarometer> getBarometers(@NotNull String uuid) throws NotConnectedException {
+        return join(getMeasurementsAsync(getBarometersChild(uuid), RealtimeBarometer.class));
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    /**
+     * Retrieve a list of measurements from the remote database.
+     *
+     * @param childReference The not null measurements child reference instance.
+     * @param measureClass The not null class of the measurements.
+     * @param <T> The measure type.
+     * @return The not null future of the measurements.
+     */
+    @NotNull
+    private <T extends RealtimeMeasure> CompletableFuture<List<T>> getMeasurementsAsync(
+            @NotNull DatabaseReference childReference, @NotNull Class<T> measureClass) {
+
+        if (!isNetworkConnected()) {
+            return notConnected();
+        }
+
+        String uuid = getUserUUID();
 
-        List<RealtimeMeasure> result = new ArrayList<>();
+        if (uuid != null && mirror.isReady(uuid) && isMeasurementsChild(uuid, childReference)) {
+            return CompletableFuture.completedFuture(mirror.getMeasurements(measureClass));
+        }
 
-        result.addAll(getRulers(uuid));
-        result.addAll(getMagnetometers(uuid));
-        result.addAll(getBarometers(uuid));
+        return track(OPERATION_GET_TYPE, getSnapshotAsync(childReference).thenApply(dataSnapshot -> {
 
-        return result;
+            List<T> results = new ArrayList<>();
+            decodeMeasurements(dataSnapshot, measureClass, results);
+
+            return Collections.unmodifiableList(results);
+
+        }));
+
+    }
+
+    /**
+     * Retrieve all the measurements of a user with a single request:
+     * the whole measurements node is read once and split by type client-side.
+     *
+     * @param uuid The not null user firebase uuid.
+     * @return The not null future of all measurements associate with the uuid.
+     */
+    @NotNull
+    private CompletableFuture<List<RealtimeMeasure>> getAllMeasurementsAsync(@NotNull String uuid) {
+
+        if (!isNetworkConnected()) {
+            return notConnected();
+        }
+
+        if (mirror.isReady(uuid)) {
+            return CompletableFuture.completedFuture(mirror.getMeasurements());
+        }
+
+        return track(OPERATION_GET_ALL, getSnapshotAsync(getMeasurementsChild(uuid)).thenApply(dataSnapshot -> {
+
+            List<RealtimeMeasure> results = new ArrayList<>();
+
+            for (Type type : REMOTE_TYPES) {
+
+                DataSnapshot typeSnapshot = dataSnapshot.child(getTypeChildName(type));
+                decodeMeasurements(typeSnapshot, getMeasureClass(type), results);
+
+            }
+
+            return Collections.unmodifiableList(results);
+
+        }));
 
     }
 
     /**
-     * @param type The not null measure type.
      * @param uuid The not null user firebase uuid.
      * @return A not null list of all measurements associate with the uuid.
      * @throws NotConnectedException Invoked if the device is not connected to internet.
      */
     @NotNull
-    private List<? extends RealtimeMeasure> getSpecificMeasurements(@NotNull Type type,
-                                                          @NotNull String uuid) throws NotConnectedException {
+    private List<RealtimeMeasure> getAllMeasurements(@NotNull String uuid) throws NotConnectedException {
+        return join(getAllMeasurementsAsync(uuid));
+    }
+
+    /**
+     * Decode the measurements of a type node.
+     *
+     * <p>
+     *     Each child of the type node is a single measure, both in the keyed
+     *     layout and in the legacy array layout (where the keys are the indexes).
+     * </p>
+     *
+     * @param typeSnapshot The not null type node snapshot.
+     * @param measureClass The not null class of the measurements.
+     * @param results The not null list where the measurements will be added.
+     * @param <T> The measure type.
+     */
+    private static <T extends RealtimeMeasure> void decodeMeasurements(@NotNull DataSnapshot typeSnapshot,
+                                                                       @NotNull Class<T> measureClass,
+                                                                       @NotNull List<? super T> results) {
 
-        List<RealtimeMeasure> result = new ArrayList<>();
+        for (DataSnapshot child : typeSnapshot.getChildren()) {
+
+            T current = decode(child, measureClass);
+
+            if (current != null) {
+                results.add(current);
+            }
+
+        }
+
+    }
+
+    /**
+     * Decode a single measure node, its key is the globally unique id of the measure.
+     *
+     * @param measureSnapshot The not null measure node snapshot.
+     * @param measureClass The not null class of the measure.
+     * @param <T> The measure type.
+     * @return The decoded measure, null if it cannot be decoded and it must be ignored.
+     */
+    @Nullable
+    static <T extends RealtimeMeasure> T decode(@NotNull DataSnapshot measureSnapshot,
+                                                @NotNull Class<T> measureClass) {
+
+        T measure = RealtimeDecoder.decode(measureSnapshot.getValue(), measureClass);
+
+        if (measure == null) {
+            return null;
+        }
+
+        measure.setUuid(measureSnapshot.getKey());
+        return unpack(measure) ? measure : null;
+
+    }
+
+    /**
+     * Unpack the encoded fields of a decoded measure.
+     *
+     * @param measure The not null realtime measure.
+     * @return False if the measure cannot be unpacked and it must be ignored.
+     */
+    static boolean unpack(@NotNull RealtimeMeasure measure) {
+
+        if (!(measure instanceof RealtimeMagnetometer)) {
+            return true;
+        }
+
+        try {
+
+            MagnetometerCodec.decode((RealtimeMagnetometer) measure);
+            return true;
+
+        } catch (IllegalArgumentException iaEx) {
+
+            Log.w(LOG_TAG, "Ignored measure " + measure.getUuid() + ": " + iaEx.getMessage());
+            return false;
+
+        }
+
+    }
+
+    /**
+     * Find a remote measure by looking up its key into each type node.
+     * The type nodes are requested concurrently.
+     *
+     * @param uuid The not null user firebase uuid.
+     * @param measureKey The not null globally unique id of the measure.
+     * @return The not null future of the measure, completed with null if it doesn't exist.
+     */
+    @NotNull
+    private CompletableFuture<RealtimeMeasure> findMeasureAsync(@NotNull String uuid, @NotNull String measureKey) {
+
+        List<CompletableFuture<DataSnapshot>> lookups = new ArrayList<>(REMOTE_TYPES.size());
+
+        for (Type type : REMOTE_TYPES) {
+            lookups.add(getSnapshotAsync(getTypeChild(uuid, type).child(measureKey)));
+        }
+
+        return CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+
+            for (int i = 0; i < lookups.size() ; i++) {
+
+                DataSnapshot dataSnapshot = lookups.get(i).join();
+
+                if (dataSnapshot.exists()) {
+                    return decode(dataSnapshot, getMeasureClass(REMOTE_TYPES.get(i)));
+                }
+
+            }
+
+            return null;
+
+        });
+
+    }
+
+    /**
+     * @param index The index of the segment.
+     * @return The not null child key of the segment.
+     */
+    @NotNull
+    private static String getSegmentKey(int index) {
+        return String.format(Locale.ROOT, "%s%05d", SEGMENT_KEY_PREFIX, index);
+    }
+
+    /**
+     * @param segmentKey The child key of a segment.
+     * @return The index of the segment, -1 if it is not a segment key.
+     */
+    private static int getSegmentIndex(@Nullable String segmentKey) {
+
+        if (segmentKey == null || !segmentKey.startsWith(SEGMENT_KEY_PREFIX)) {
+            return -1;
+        }
+
+        try {
+            return Integer.parseInt(segmentKey.substring(SEGMENT_KEY_PREFIX.length()));
+        } catch (NumberFormatException nfEx) {
+            return -1;
+        }
+
+    }
+
+    /**
+     * @param measure The not null realtime measure.
+     * @return The not null type of the measure instance.
+     */
+    @NotNull
+    static Type getMeasureType(@NotNull RealtimeMeasure measure) {
+
+        if (measure instanceof RealtimeRuler) {
+            return Type.RULER;
+        } else if (measure instanceof RealtimeBarometer) {
+            return Type.BAROMETER;
+        } else if (measure instanceof RealtimeMagnetometer) {
+            return Type.MAGNETOMETER;
+        }
+
+        return Type.UNKNOWN;
+
+    }
+
+    /**
+     * @param type The not null remote measure type.
+     * @return The not null realtime bean class of the type.
+     */
+    @NotNull
+    private static Class<? extends RealtimeMeasure> getMeasureClass(@NotNull Type type) {
+
+        switch (type) {
+            case RULER:        return RealtimeRuler.class;
+            case MAGNETOMETER: return RealtimeMagnetometer.class;
+            case BAROMETER:    return RealtimeBarometer.class;
+            default: throw new IllegalArgumentException("Unsupported remote type " + type);
+        }
+
+    }
+
+    /**
+     * @param type The not null remote measure type.
+     * @return The not null child name of the type node.
+     */
+    @NotNull
+    static String getTypeChildName(@NotNull Type type) {
 
         switch (type) {
-            case RULER:        result.addAll(getRulers(uuid));        break;
-            case MAGNETOMETER: result.addAll(getMagnetometers(uuid)); break;
-            case BAROMETER:    result.addAll(getBarometers(uuid));    break;
-            default: break;
+            case RULER:        return CHILD_RULERS;
+            case MAGNETOMETER: return CHILD_MAGNETOMETERS;
+            case BAROMETER:    return CHILD_BAROMETERS;
+            default: throw new IllegalArgumentException("Unsupported remote type " + type);
         }
 
-        return result;
+    }
+
+    /**
+     * @param uuid The not null user firebase uuid.
+     * @param reference The not null database reference.
+     * @return True if the reference is a type node of the user.
+     */
+    private boolean isMeasurementsChild(@NotNull String uuid, @NotNull DatabaseReference reference) {
+
+        DatabaseReference parent = reference.getParent();
+        return parent != null && parent.equals(getMeasurementsChild(uuid));
 
     }
 
+    /**
+     * @param uuid The not null user firebase uuid.
+     * @param type The not null remote measure type.
+     * @return a not null instance of the type child.
+     */
+    @NotNull
+    private DatabaseReference getTypeChild(@NotNull String uuid, @NotNull Type type) {
+        return getMeasurementsChild(uuid).child(getTypeChildName(type));
+    }
+
     /**
      * @param uuid The not null user firebase uuid.
      * @return a not null instance of the rulers child.
@@ -688,6 +1465,14 @@ public class RealtimeManager {
 
     }
 
+    @NotNull
+    private DatabaseReference getSegmentsChild(@NotNull String uuid) {
+
+        DatabaseReference databaseReference = getUserChild(uuid);
+        return databaseReference.child(CHILD_SEGMENTS);
+
+    }
+
     @NotNull
     private DatabaseReference getUserChild(@NotNull String uuid) {
 
@@ -714,7 +1499,7 @@ public class RealtimeManager {
      * @return The user UUID. Null if it is not logged.
      */
     @Nullable
-    private String getUserUUID() {
+    public String getUserUUID() {
 
         FirebaseAuth firebaseAuth = FirebaseAuth.getInstance();
         FirebaseUser firebaseUser = firebaseAuth.getCurrentUser();
@@ -728,52 +1513,133 @@ public class RealtimeManager {
     }
 
     /**
-     * Lock the current thread to grant the correct performing of async requests.
-     * While these requests are not completed, this thread remains locked.
+     * @param reference The not null database reference.
+     * @return The not null future of the reference snapshot.
      */
-    private void lock() {
+    @NotNull
+    private CompletableFuture<DataSnapshot> getSnapshotAsync(@NotNull DatabaseReference reference) {
+        return toFuture(reference.get(), callbackExecutor);
+    }
 
-        // synchronize to the current lock field to
-        // grant the lock.
-        synchronized (lock) {
+    /**
+     * Record the latency and the result of a remote operation. The size of
+     * the result is added to the downloaded bytes.
+     *
+     * @param operation The not null name of the operation.
+     * @param future The not null future of the operation, just started.
+     * @param <T> The result type.
+     * @return The not null future completed after the operation has been recorded.
+     */
+    @NotNull
+    private <T> CompletableFuture<T> track(@NotNull String operation, @NotNull CompletableFuture<T> future) {
 
-            // while the loop during the field value is true.
-            while (lock.get()) {
+        long startNanos = System.nanoTime();
 
-                try {
+        return future.whenComplete((result, throwable) -> {
 
-                    lock.wait(50L);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            metrics.recordOperation(operation, millis, throwable == null);
 
-                } catch (InterruptedException iEx) {
+            if (result != null) {
+                metrics.addBytesDown(SyncMetrics.estimateBytes(result));
+            }
 
-                    lock.set(true);
+        });
 
-                    Log.e("REALTIME-DB", "Thread locking interrupted", iEx);
-                    Thread.currentThread().interrupt();
-                    break;
+    }
 
-                }
+    /**
+     * @param task The not null write task.
+     * @return The not null future completed when the write is applied.
+     */
+    @NotNull
+    private CompletableFuture<Void> toVoidFuture(@NotNull Task<Void> task) {
+        return toFuture(task, callbackExecutor);
+    }
+
+    /**
+     * Adapt a google play services task to a completable future.
+     *
+     * @param task The not null task instance.
+     * @param executor The not null executor of the task listeners.
+     * @param <T> The result type.
+     * @return The not null future of the task result.
+     */
+    @NotNull
+    private static <T> CompletableFuture<T> toFuture(@NotNull Task<T> task, @NotNull Executor executor) {
+
+        CompletableFuture<T> future = new CompletableFuture<>();
 
+        task.addOnCompleteListener(executor, completedTask -> {
+
+            if (completedTask.isCanceled()) {
+                future.cancel(false);
+            } else if (completedTask.isSuccessful()) {
+                future.complete(completedTask.getResult());
+            } else {
+                future.completeExceptionally(completedTask.getException());
             }
 
-            lock.set(true);
+        });
 
-        }
+        return future;
 
     }
 
     /**
-     * Unlock the current thread to grant the correct performing of async requests.
+     * @param <T> The future type.
+     * @return A not null future failed with a {@link NotConnectedException}.
      */
-    private void unlock() {
+    @NotNull
+    private static <T> CompletableFuture<T> notConnected() {
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new NotConnectedException());
+
+        return future;
+
+    }
+
+    /**
+     * Wait for a future from a background thread.
+     * A failed operation is never replaced by a default result: the caller
+     * must not take a failed write as applied or a failed read as empty.
+     *
+     * @param future The not null future instance.
+     * @param <T> The result type.
+     * @return The future result.
+     * @throws NotConnectedException Invoked if the device is not connected to internet,
+     *                               the operation is not completed in time or it fails.
+     */
+    private static <T> T join(@NotNull CompletableFuture<T> future) throws NotConnectedException {
+
+        try {
+
+            return future.get(BLOCKING_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        } catch (ExecutionException executionEx) {
+
+            if (executionEx.getCause() instanceof NotConnectedException) {
+                throw (NotConnectedException) executionEx.getCause();
+            }
+
+            Log.e(LOG_TAG, "Remote operation failed", executionEx.getCause());
+            throw new NotConnectedException("Remote operation failed", executionEx.getCause());
+
+        } catch (TimeoutException timeoutEx) {
+
+            Log.d(LOG_TAG, "Remote operation timed out");
+            throw new NotConnectedException();
 
-        synchronized (lock) {
+        } catch (InterruptedException iEx) {
 
-            lock.set(false);
-            lock.notifyAll();
+            Thread.currentThread().interrupt();
+            throw new NotConnectedException("Thread waiting interrupted", iEx);
 
+        } catch (CancellationException cancellationEx) {
+            throw new NotConnectedException("Remote operation cancelled", cancellationEx);
         }
 
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,342 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import android.util.Log;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+
+/**
+ * A session-scoped, in-memory copy of the measurements node of a user.
+ *
+ * <p>
+ *     The mirror downloads the measurements once and then it is kept updated by
+ *     child listeners, so only the changed measurements cross the network.
+ *     The firebase callbacks are executed into the main thread, so the snapshots
+ *     are decoded into a single background thread that keeps the events order.
+ * </p>
+ */
+public class RealtimeMirror {
+
+    private static final String LOG_TAG = "REALTIME-MIRROR";
+
+    /**
+     * The measurements of the user sorted by their globally unique id.
+     */
+    @NotNull
+    private final ConcurrentSkipListMap<String, RealtimeMeasure> measurements = new ConcurrentSkipListMap<>();
+
+    /**
+     * The attached child listeners with their references.
+     */
+    @NotNull
+    private final Map<DatabaseReference, ChildEventListener> listeners = new HashMap<>();
+
+    /**
+     * The single thread executor where the snapshots are decoded.
+     */
+    @NotNull
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * The user uuid of the current session, null if the mirror is stopped.
+     */
+    @Nullable
+    private volatile String uuid;
+
+    /**
+     * True when the initial content of the measurements node has been received.
+     */
+    private volatile boolean ready;
+
+    /**
+     * Start to mirror the type nodes of a user.
+     * If the mirror is already started for the same user, nothing happens.
+     *
+     * @param uuid The not null user firebase uuid.
+     * @param measurementsReference The not null measurements node of the user.
+     * @param typeReferences The not null map of type node references and their bean classes.
+     */
+    public synchronized void start(@NotNull String uuid,
+                                   @NotNull DatabaseReference measurementsReference,
+                                   @NotNull Map<DatabaseReference, Class<? extends RealtimeMeasure>> typeReferences) {
+
+        if (uuid.equals(this.uuid)) {
+            return;
+        }
+
+        stop();
+        this.uuid = uuid;
+
+        for (Map.Entry<DatabaseReference, Class<? extends RealtimeMeasure>> entry : typeReferences.entrySet()) {
+
+            DatabaseReference reference = entry.getKey();
+            ChildEventListener listener = new MirrorChildListener(uuid, entry.getValue());
+
+            reference.addChildEventListener(listener);
+            listeners.put(reference, listener);
+
+        }
+
+        // value events are triggered after the child events of the same data.
+        measurementsReference.addListenerForSingleValueEvent(new ValueEventListener() {
+
+            @Override
+            public void onDataChange(@NotNull DataSnapshot snapshot) {
+
+                // this listener is not detached, the mirror may have been closed meanwhile.
+                if (!decodeExecutor.isShutdown()) {
+                    decodeExecutor.execute(() -> ready = uuid.equals(RealtimeMirror.this.uuid));
+                }
+
+            }
+
+            @Override
+            public void onCancelled(@NotNull DatabaseError error) {
+
+                Log.d(LOG_TAG, "Initial load cancelled: " + error.getMessage());
+                invalidate(uuid);
+
+            }
+
+        });
+
+    }
+
+    /**
+     * Detach the listeners and clear the mirrored measurements.
+     */
+    public synchronized void stop() {
+
+        for (Map.Entry<DatabaseReference, ChildEventListener> entry : listeners.entrySet()) {
+            entry.getKey().removeEventListener(entry.getValue());
+        }
+
+        listeners.clear();
+
+        uuid  = null;
+        ready = false;
+
+        // the pending decodings of a closed mirror belong to a stale session and are ignored.
+        if (decodeExecutor.isShutdown()) {
+            measurements.clear();
+        } else {
+            decodeExecutor.execute(measurements :: clear);
+        }
+
+    }
+
+    /**
+     * Stop the mirror and release its thread, the mirror cannot be started again.
+     */
+    public synchronized void close() {
+
+        stop();
+        decodeExecutor.shutdown();
+
+    }
+
+    /**
+     * @param uuid The not null user firebase uuid.
+     * @return True if the mirror contains the whole measurements node of the user.
+     */
+    public boolean isReady(@NotNull String uuid) {
+        return ready && uuid.equals(this.uuid);
+    }
+
+    /**
+     * @param measureKey The not null globally unique id of the measure.
+     * @return True if the measure is contained into the mirror.
+     */
+    public boolean hasMeasure(@NotNull String measureKey) {
+        return measurements.containsKey(measureKey);
+    }
+
+    /**
+     * @param measureKey The not null globally unique id of the measure.
+     * @return The mirrored measure, null if it doesn't exist.
+     */
+    @Nullable
+    public RealtimeMeasure getMeasure(@NotNull String measureKey) {
+        return measurements.get(measureKey);
+    }
+
+    /**
+     * @return A not null and unmodifiable list of all the mirrored measurements.
+     */
+    @NotNull
+    public List<RealtimeMeasure> getMeasurements() {
+        return Collections.unmodifiableList(new ArrayList<>(measurements.values()));
+    }
+
+    /**
+     * @param measureClass The not null class of the measurements.
+     * @param <T> The measure type.
+     * @return A not null and unmodifiable list of the mirrored measurements of a type.
+     */
+    @NotNull
+    public <T extends RealtimeMeasure> List<T> getMeasurements(@NotNull Class<T> measureClass) {
+
+        List<T> results = new ArrayList<>();
+
+        for (RealtimeMeasure current : measurements.values()) {
+
+            if (measureClass.isInstance(current)) {
+                results.add(measureClass.cast(current));
+            }
+
+        }
+
+        return Collections.unmodifiableList(results);
+
+    }
+
+    /**
+     * @param measureClass The not null class of the measurements.
+     * @param cursor The key of the last measure of the previous page, null for the first page.
+     * @param pageSize The max number of measurements of the page.
+     * @return The not null page of the mirrored measurements of a type, sorted by key.
+     */
+    @NotNull
+    public MeasurePage getPage(@NotNull Class<? extends RealtimeMeasure> measureClass,
+                               @Nullable String cursor,
+                               int pageSize) {
+
+        Map<String, RealtimeMeasure> candidates = cursor == null
+                ? measurements
+                : measurements.tailMap(cursor, false);
+
+        List<RealtimeMeasure> results = new ArrayList<>(pageSize);
+        String lastKey = null;
+
+        for (Map.Entry<String, RealtimeMeasure> entry : candidates.entrySet()) {
+
+            if (!measureClass.isInstance(entry.getValue())) {
+                continue;
+            }
+
+            if (results.size() == pageSize) {
+                return new MeasurePage(Collections.unmodifiableList(results), lastKey);
+            }
+
+            results.add(entry.getValue());
+            lastKey = entry.getKey();
+
+        }
+
+        return new MeasurePage(Collections.unmodifiableList(results), null);
+
+    }
+
+    /**
+     * The mirror of a cancelled listener is no longer updated,
+     * so the measurements are read from the remote database again.
+     *
+     * @param sessionUUID The not null user uuid of the cancelled listener.
+     */
+    private void invalidate(@NotNull String sessionUUID) {
+
+        if (sessionUUID.equals(uuid)) {
+            ready = false;
+        }
+
+    }
+
+    /**
+     * The child listener of a type node.
+     * The events of a stale session are ignored.
+     */
+    private class MirrorChildListener implements ChildEventListener {
+
+        @NotNull
+        private final String sessionUUID;
+
+        @NotNull
+        private final Class<? extends RealtimeMeasure> measureClass;
+
+        private MirrorChildListener(@NotNull String sessionUUID,
+                                    @NotNull Class<? extends RealtimeMeasure> measureClass) {
+
+            this.sessionUUID  = sessionUUID;
+            this.measureClass = measureClass;
+
+        }
+
+        @Override
+        public void onChildAdded(@NotNull DataSnapshot snapshot, @Nullable String previousChildName) {
+            decodeExecutor.execute(() -> put(snapshot));
+        }
+
+        @Override
+        public void onChildChanged(@NotNull DataSnapshot snapshot, @Nullable String previousChildName) {
+            decodeExecutor.execute(() -> put(snapshot));
+        }
+
+        @Override
+        public void onChildRemoved(@NotNull DataSnapshot snapshot) {
+
+            decodeExecutor.execute(() -> {
+
+                String measureKey = snapshot.getKey();
+
+                if (measureKey != null && sessionUUID.equals(uuid)) {
+                    measurements.remove(measureKey);
+                }
+
+            });
+
+        }
+
+        @Override
+        public void onChildMoved(@NotNull DataSnapshot snapshot, @Nullable String previousChildName) {
+            // the order of the children is not mirrored.
+        }
+
+        @Override
+        public void onCancelled(@NotNull DatabaseError error) {
+
+            Log.d(LOG_TAG, "Listener cancelled: " + error.getMessage());
+            invalidate(sessionUUID);
+
+        }
+
+        private void put(@NotNull DataSnapshot snapshot) {
+
+            RealtimeMeasure measure = decode(snapshot);
+
+            if (measure != null) {
+                measurements.put(measure.getUuid(), measure);
+            }
+
+        }
+
+        @Nullable
+        private RealtimeMeasure decode(@NotNull DataSnapshot snapshot) {
+
+            if (!sessionUUID.equals(uuid)) {
+                return null;
+            }
+
+            return RealtimeManager.decode(snapshot, measureClass);
+
+        }
+
+    }
+
+}
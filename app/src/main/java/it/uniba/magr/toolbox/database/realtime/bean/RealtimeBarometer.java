@@ -15,7 +15,7 @@ public class RealtimeBarometer extends RealtimeMeasure {
     @SuppressWarnings("unused") // used with reflection by firebase.
     public RealtimeBarometer() {
 
-        super(0, "", "", new Date());
+        super(null, "", "", new Date());
         this.pressure = 0;
 
     }
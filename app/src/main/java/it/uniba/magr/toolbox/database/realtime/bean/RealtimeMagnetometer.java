@@ -1,6 +1,9 @@
 package it.uniba.magr.toolbox.database.realtime.bean;
 
+import com.google.firebase.database.Exclude;
+
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -33,10 +36,42 @@ public class RealtimeMagnetometer extends RealtimeMeasure {
      */
     protected List<Float> values;
 
+    /**
+     * The encoding of the samples, see the MagnetometerCodec class.
+     * 0 means that the samples are kept into the seconds and values lists.
+     */
+    protected int encoding;
+
+    /**
+     * The packed samples, null if the samples are kept into the lists.
+     */
+    @Nullable
+    protected String samples;
+
+    /**
+     * The number of segment nodes that contain the samples,
+     * 0 if the samples are kept into the measure.
+     */
+    protected int segmentCount;
+
+    /**
+     * The unpacked seconds of the samples, null if they have not been unpacked yet.
+     * They are not written into the database, that keeps the encoded fields.
+     */
+    @Nullable
+    private transient int[] sampleSeconds;
+
+    /**
+     * The unpacked values of the samples, null if they have not been unpacked yet.
+     * They are not written into the database, that keeps the encoded fields.
+     */
+    @Nullable
+    private transient float[] sampleValues;
+
     @SuppressWarnings("unused") // used with reflection by firebase.
     public RealtimeMagnetometer() {
 
-        super(0, "", "", new Date());
+        super(null, "", "", new Date());
 
         this.seconds = new ArrayList<>();
         this.values  = new ArrayList<>();
@@ -61,4 +96,61 @@ public class RealtimeMagnetometer extends RealtimeMeasure {
         this.values = values;
     }
 
+    public int getEncoding() {
+        return this.encoding;
+    }
+
+    public void setEncoding(int encoding) {
+        this.encoding = encoding;
+    }
+
+    @Nullable
+    public String getSamples() {
+        return this.samples;
+    }
+
+    public void setSamples(@Nullable String samples) {
+        this.samples = samples;
+    }
+
+    public int getSegmentCount() {
+        return this.segmentCount;
+    }
+
+    public void setSegmentCount(int segmentCount) {
+        this.segmentCount = segmentCount;
+    }
+
+    @Nullable
+    @Exclude
+    public int[] getSampleSeconds() {
+        return this.sampleSeconds;
+    }
+
+    @Nullable
+    @Exclude
+    public float[] getSampleValues() {
+        return this.sampleValues;
+    }
+
+    /**
+     * @return True if the samples have been unpacked into the arrays.
+     */
+    @Exclude
+    public boolean isUnpacked() {
+        return this.sampleSeconds != null && this.sampleValues != null;
+    }
+
+    /**
+     * @param sampleSeconds The not null unpacked seconds.
+     * @param sampleValues The not null unpacked values, with the same length of the seconds.
+     */
+    @Exclude
+    public void setUnpackedSamples(@NotNull int[] sampleSeconds, @NotNull float[] sampleValues) {
+
+        this.sampleSeconds = sampleSeconds;
+        this.sampleValues  = sampleValues;
+
+    }
+
 }
\ No newline at end of file
@@ -2,7 +2,10 @@ package it.uniba.magr.toolbox.database.realtime.bean;
 
 import androidx.annotation.NonNull;
 
+import com.google.firebase.database.Exclude;
+
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Date;
 
@@ -12,10 +15,11 @@ import lombok.ToString;
 public class RealtimeMeasure {
 
     /**
-     * The sqlite measure id.
-     * This is useful to grant the correct deleting.
+     * The globally unique id of the measure, shared by all the devices.
+     * It is the key of the measure node, so it is not written as a field.
      */
-    private int measureId;
+    @Nullable
+    private String uuid;
 
     /**
      * The title.
@@ -35,10 +39,24 @@ public class RealtimeMeasure {
     @NonNull
     protected Date startDate;
 
-    protected RealtimeMeasure(int measureId, @NotNull String title,
+    /**
+     * The server time of the latest write, in milliseconds.
+     * It is a server timestamp placeholder when the measure is written.
+     */
+    @Nullable
+    protected Object updatedAt;
+
+    /**
+     * The md5 digest of the content, null if it has not been computed.
+     * It is copied into the digests manifest of the user.
+     */
+    @Nullable
+    protected String digest;
+
+    protected RealtimeMeasure(@Nullable String uuid, @NotNull String title,
                               @NotNull String description, @NotNull Date startDate) {
 
-        this.measureId   = measureId;
+        this.uuid        = uuid;
         this.title       = title;
         this.description = description;
         this.startDate   = startDate;
@@ -49,8 +67,10 @@ public class RealtimeMeasure {
     // GETTERS
     //
 
-    public int getMeasureId() {
-        return this.measureId;
+    @Nullable
+    @Exclude
+    public String getUuid() {
+        return this.uuid;
     }
 
     @NotNull
@@ -68,12 +88,31 @@ public class RealtimeMeasure {
         return this.startDate;
     }
 
+    @Nullable
+    public Object getUpdatedAt() {
+        return this.updatedAt;
+    }
+
+    @Nullable
+    public String getDigest() {
+        return this.digest;
+    }
+
+    /**
+     * @return The server time of the latest write, 0 if it is unknown.
+     */
+    @Exclude
+    public long getUpdatedAtMillis() {
+        return this.updatedAt instanceof Number ? ((Number) this.updatedAt).longValue() : 0L;
+    }
+
     //
     // SETTERS
     //
 
-    public void setMeasureId(int measureId) {
-        this.measureId = measureId;
+    @Exclude
+    public void setUuid(@Nullable String uuid) {
+        this.uuid = uuid;
     }
 
     public void setTitle(@NonNull String title) {
@@ -88,4 +127,12 @@ public class RealtimeMeasure {
         this.startDate = startDate;
     }
 
+    public void setUpdatedAt(@Nullable Object updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public void setDigest(@Nullable String digest) {
+        this.digest = digest;
+    }
+
 }
\ No newline at end of file
@@ -15,7 +15,7 @@ public class RealtimeRuler extends RealtimeMeasure {
     @SuppressWarnings("unused") // used with reflection by firebase.
     public RealtimeRuler() {
 
-        super(0, "", "", new Date());
+        super(null, "", "", new Date());
         this.length = 0;
 
     }
@@ -4,6 +4,7 @@ import androidx.room.TypeConverter;
 
 import java.util.Date;
 
+import it.uniba.magr.toolbox.database.sqlite.bean.OutboxOperation;
 import it.uniba.magr.toolbox.database.sqlite.bean.Type;
 
 /**
@@ -39,6 +40,16 @@ public final class Conversions {
         return type.ordinal();
     }
 
+    @TypeConverter
+    public static OutboxOperation intToOperation(int operationOrdinal) {
+        return OutboxOperation.values()[operationOrdinal];
+    }
+
+    @TypeConverter
+    public static int operationToInt(OutboxOperation operation) {
+        return operation.ordinal();
+    }
+
     private Conversions() {
         throw new IllegalStateException("This is a static class");
     }
@@ -0,0 +1,233 @@
+package it.uniba.magr.toolbox.database.sqlite;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import it.uniba.magr.toolbox.database.sqlite.bean.MagnetometerChunk;
+import it.uniba.magr.toolbox.database.sqlite.bean.MagnetometerSamples;
+import it.uniba.magr.toolbox.util.VarintUtil;
+
+/**
+ * The local storage of the magnetometer samples into compressed chunks.
+ *
+ * <p>
+ *     A recording is split into chunks of {@link #CHUNK_SIZE} samples.
+ *     Each chunk is packed and then deflated:
+ *     <ul>
+ *         <li>zigzag varint: for each sample, the difference from the previous second
+ *         (the first one is the difference from the start time of the chunk);</li>
+ *         <li>varint: for each sample, the float bits xor the bits of the previous
+ *         value (the first one is xor 0).</li>
+ *     </ul>
+ *     The close values share the sign, the exponent and the high mantissa bits,
+ *     so their xor is a small number. Unlike the remote encoding, the values
+ *     are not quantized: the chunks keep the exact samples.
+ * </p>
+ */
+public final class MagnetometerChunkCodec {
+
+    /**
+     * The max number of samples of a chunk.
+     */
+    public static final int CHUNK_SIZE = 4096;
+
+    private MagnetometerChunkCodec() {
+        throw new IllegalStateException("This is a static class");
+    }
+
+    /**
+     * @param measureId The measure id of the recording.
+     * @param seconds The not null seconds of the samples.
+     * @param values The not null values, with the same length of the seconds.
+     * @return The not null list of the chunks, in order.
+     */
+    @NotNull
+    public static List<MagnetometerChunk> pack(int measureId, @NotNull int[] seconds, @NotNull float[] values) {
+
+        if (seconds.length != values.length) {
+            throw new IllegalArgumentException("The seconds and the values have different lengths");
+        }
+
+        List<MagnetometerChunk> chunks = new ArrayList<>(seconds.length / CHUNK_SIZE + 1);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        try {
+
+            for (int from = 0 ; from < seconds.length ; from += CHUNK_SIZE) {
+
+                int to = Math.min(from + CHUNK_SIZE, seconds.length);
+                MagnetometerChunk chunk = new MagnetometerChunk();
+
+                chunk.setMeasureId(measureId);
+                chunk.setChunkIndex(from / CHUNK_SIZE);
+                chunk.setStartTime(seconds[from]);
+                chunk.setSampleCount(to - from);
+                chunk.setSamples(deflate(deflater, packRange(seconds, values, from, to)));
+
+                chunks.add(chunk);
+
+            }
+
+        } finally {
+            deflater.end();
+        }
+
+        return chunks;
+
+    }
+
+    /**
+     * @param chunks The not null chunks of a recording, in order.
+     * @return The not null unpacked samples.
+     * @throws IllegalStateException Invoked if a chunk is corrupted.
+     */
+    @NotNull
+    public static MagnetometerSamples unpack(@NotNull List<MagnetometerChunk> chunks) {
+
+        int count = 0;
+
+        for (MagnetometerChunk chunk : chunks) {
+            count += chunk.getSampleCount();
+        }
+
+        int[]   seconds = new int[count];
+        float[] values  = new float[count];
+        int position = 0;
+
+        Inflater inflater = new Inflater();
+
+        try {
+
+            for (MagnetometerChunk chunk : chunks) {
+
+                inflater.reset();
+
+                byte[] input = inflate(inflater, chunk.getSamples());
+
+                try {
+                    unpackRange(input, chunk, seconds, values, position);
+                } catch (IllegalArgumentException illegalArgumentEx) {
+                    throw new IllegalStateException("Malformed magnetometer chunk", illegalArgumentEx);
+                }
+
+                position += chunk.getSampleCount();
+
+            }
+
+        } finally {
+            inflater.end();
+        }
+
+        return new MagnetometerSamples(seconds, values);
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    @NotNull
+    private static byte[] packRange(@NotNull int[] seconds, @NotNull float[] values, int from, int to) {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream((to - from) * 3);
+
+        int previousSecond = seconds[from];
+        int previousBits = 0;
+
+        for (int i = from ; i < to ; i++) {
+
+            int bits = Float.floatToIntBits(values[i]);
+
+            VarintUtil.writeVarint(output, VarintUtil.zigzag(seconds[i] - previousSecond));
+            VarintUtil.writeVarint(output, (bits ^ previousBits) & 0xFFFFFFFFL);
+
+            previousSecond = seconds[i];
+            previousBits = bits;
+
+        }
+
+        return output.toByteArray();
+
+    }
+
+    private static void unpackRange(@NotNull byte[] input,
+                                    @NotNull MagnetometerChunk chunk,
+                                    @NotNull int[] seconds,
+                                    @NotNull float[] values,
+                                    int offset) {
+
+        int[] position = new int[1];
+
+        int previousSecond = chunk.getStartTime();
+        int previousBits = 0;
+
+        for (int i = 0 ; i < chunk.getSampleCount() ; i++) {
+
+            int second = previousSecond + (int) VarintUtil.unzigzag(VarintUtil.readVarint(input, position));
+            int bits   = previousBits ^ (int) VarintUtil.readVarint(input, position);
+
+            seconds[offset + i] = second;
+            values[offset + i]  = Float.intBitsToFloat(bits);
+
+            previousSecond = second;
+            previousBits = bits;
+
+        }
+
+    }
+
+    @NotNull
+    private static byte[] deflate(@NotNull Deflater deflater, @NotNull byte[] input) {
+
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2 + 16);
+        byte[] buffer = new byte[4096];
+
+        while (!deflater.finished()) {
+            output.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        return output.toByteArray();
+
+    }
+
+    @NotNull
+    private static byte[] inflate(@NotNull Inflater inflater, @NotNull byte[] input) {
+
+        inflater.setInput(input);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 3);
+        byte[] buffer = new byte[4096];
+
+        try {
+
+            while (!inflater.finished()) {
+
+                int length = inflater.inflate(buffer);
+
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated magnetometer chunk");
+                }
+
+                output.write(buffer, 0, length);
+
+            }
+
+        } catch (DataFormatException dfEx) {
+            throw new IllegalStateException("Malformed magnetometer chunk", dfEx);
+        }
+
+        return output.toByteArray();
+
+    }
+
+}
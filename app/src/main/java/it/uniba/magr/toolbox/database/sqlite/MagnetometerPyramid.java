@@ -0,0 +1,122 @@
+package it.uniba.magr.toolbox.database.sqlite;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.uniba.magr.toolbox.database.sqlite.bean.MagnetometerSummary;
+
+/**
+ * The multi-resolution summaries of the magnetometer recordings.
+ *
+ * <p>
+ *     Each level splits a recording into time buckets of a fixed length and keeps
+ *     the min, the max and the mean of the samples of each bucket. A chart needs
+ *     about one bucket per pixel, so a long recording is drawn from a coarse level
+ *     with a bounded number of rows, whatever its length.
+ * </p>
+ */
+public final class MagnetometerPyramid {
+
+    /**
+     * The finest level, it has a bucket for each second with at least a sample.
+     */
+    public static final int FINEST_LEVEL = 1;
+
+    /**
+     * The bucket lengths of the levels in seconds, from the finest to the coarsest.
+     */
+    private static final int[] LEVELS = {FINEST_LEVEL, 10, 60};
+
+    private MagnetometerPyramid() {
+        throw new IllegalStateException("This is a static class");
+    }
+
+    /**
+     * Build all the levels of a recording.
+     *
+     * @param measureId The measure id of the recording.
+     * @param seconds The not null seconds of the samples, in ascending order.
+     * @param values The not null values, with the same length of the seconds.
+     * @return The not null list of the summaries of all the levels.
+     */
+    @NotNull
+    public static List<MagnetometerSummary> build(int measureId, @NotNull int[] seconds, @NotNull float[] values) {
+
+        if (seconds.length != values.length) {
+            throw new IllegalArgumentException("The seconds and the values have different lengths");
+        }
+
+        List<MagnetometerSummary> summaries = new ArrayList<>();
+
+        for (int level : LEVELS) {
+
+            MagnetometerSummary current = null;
+            double sum = 0;
+
+            for (int i = 0 ; i < seconds.length ; i++) {
+
+                int bucketStart = Math.floorDiv(seconds[i], level) * level;
+                float value = values[i];
+
+                if (current == null || current.getBucketStart() != bucketStart) {
+
+                    if (current != null) {
+                        current.setMean((float) (sum / current.getSampleCount()));
+                    }
+
+                    current = new MagnetometerSummary();
+
+                    current.setMeasureId(measureId);
+                    current.setLevel(level);
+                    current.setBucketStart(bucketStart);
+                    current.setMin(value);
+                    current.setMax(value);
+
+                    summaries.add(current);
+                    sum = 0;
+
+                }
+
+                current.setMin(Math.min(current.getMin(), value));
+                current.setMax(Math.max(current.getMax(), value));
+                current.setSampleCount(current.getSampleCount() + 1);
+
+                sum += value;
+
+            }
+
+            if (current != null) {
+                current.setMean((float) (sum / current.getSampleCount()));
+            }
+
+        }
+
+        return summaries;
+
+    }
+
+    /**
+     * Choose the coarsest level that still has a bucket for each pixel.
+     * If the range is too short for all the levels, the finest one is chosen.
+     *
+     * @param rangeSeconds The length of the drawn time range in seconds.
+     * @param pixelWidth The width of the chart in pixels.
+     * @return The bucket length of the chosen level in seconds.
+     */
+    public static int selectLevel(long rangeSeconds, int pixelWidth) {
+
+        for (int i = LEVELS.length - 1 ; i > 0 ; i--) {
+
+            if (rangeSeconds / LEVELS[i] >= pixelWidth) {
+                return LEVELS[i];
+            }
+
+        }
+
+        return FINEST_LEVEL;
+
+    }
+
+}
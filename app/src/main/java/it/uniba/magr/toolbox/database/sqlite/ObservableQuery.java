@@ -0,0 +1,155 @@
+package it.uniba.magr.toolbox.database.sqlite;
+
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A query that is executed again when its tables are changed.
+ *
+ * <p>
+ *     The room's invalidation tracker notifies the changes of the tables after the
+ *     end of each write transaction. While the query is stopped the changes are only
+ *     remembered, so starting it again costs nothing if its tables have not changed.
+ *     The query and the listener are executed into the given executor.
+ * </p>
+ *
+ * @param <T> The type of the query result.
+ */
+public class ObservableQuery<T> {
+
+    @NotNull
+    private final InvalidationTracker invalidationTracker;
+
+    @NotNull
+    private final Executor executor;
+
+    @NotNull
+    private final Supplier<T> query;
+
+    @NotNull
+    private final Consumer<T> listener;
+
+    @NotNull
+    private final InvalidationTracker.Observer observer;
+
+    /**
+     * True if the tables have been changed after the latest execution.
+     */
+    @NotNull
+    private final AtomicBoolean invalidated = new AtomicBoolean(true);
+
+    /**
+     * True if an execution is waiting into the executor.
+     */
+    @NotNull
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * True if the changes must be read as soon as they are notified.
+     */
+    private volatile boolean started;
+
+    /**
+     * @param database The not null room's database.
+     * @param executor The not null executor of the query and of the listener.
+     * @param query The not null query.
+     * @param listener The not null listener of the query results.
+     * @param tables The not null names of the observed tables.
+     */
+    public ObservableQuery(@NotNull RoomDatabase database,
+                           @NotNull Executor executor,
+                           @NotNull Supplier<T> query,
+                           @NotNull Consumer<T> listener,
+                           @NotNull String... tables) {
+
+        this.invalidationTracker = database.getInvalidationTracker();
+        this.executor = executor;
+        this.query = query;
+        this.listener = listener;
+
+        this.observer = new InvalidationTracker.Observer(tables) {
+
+            @Override
+            public void onInvalidated(@NotNull Set<String> changedTables) {
+                invalidate();
+            }
+
+        };
+
+        invalidationTracker.addObserver(observer);
+
+    }
+
+    /**
+     * Execute the query if its tables have been changed while it was stopped,
+     * then execute it again on each change.
+     */
+    public void start() {
+
+        started = true;
+        refreshIfInvalidated();
+
+    }
+
+    /**
+     * Stop executing the query, the changes are only remembered.
+     */
+    public void stop() {
+        started = false;
+    }
+
+    /**
+     * Execute the query again, even if its tables have not been changed.
+     */
+    public void invalidate() {
+
+        invalidated.set(true);
+
+        if (started) {
+            refreshIfInvalidated();
+        }
+
+    }
+
+    /**
+     * Stop observing the tables, the query cannot be started again.
+     */
+    public void close() {
+
+        stop();
+        invalidationTracker.removeObserver(observer);
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    private void refreshIfInvalidated() {
+
+        // a burst of changes is merged into the waiting execution.
+        if (invalidated.get() && scheduled.compareAndSet(false, true)) {
+            executor.execute(this :: refresh);
+        }
+
+    }
+
+    private void refresh() {
+
+        // the changes notified from now on are read again by another execution.
+        invalidated.set(false);
+        scheduled.set(false);
+
+        listener.accept(query.get());
+
+    }
+
+}
@@ -1,26 +1,270 @@
 package it.uniba.magr.toolbox.database.sqlite;
 
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.Arrays;
 
-import it.uniba.magr.toolbox.database.sqlite.bean.Magnetometer;
+import it.uniba.magr.toolbox.database.sqlite.bean.MagnetometerChunk;
+import it.uniba.magr.toolbox.database.sqlite.bean.MagnetometerSummary;
 import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
+import it.uniba.magr.toolbox.database.sqlite.bean.Outbox;
 import it.uniba.magr.toolbox.database.sqlite.bean.Ruler;
 import it.uniba.magr.toolbox.database.sqlite.bean.Barometer;
 import it.uniba.magr.toolbox.database.sqlite.dao.BarometersDao;
 import it.uniba.magr.toolbox.database.sqlite.dao.MagnetometersDao;
 import it.uniba.magr.toolbox.database.sqlite.dao.MeasurementsDao;
+import it.uniba.magr.toolbox.database.sqlite.dao.OutboxDao;
 import it.uniba.magr.toolbox.database.sqlite.dao.RulersDao;
 
 /**
  * The main database class to handle and perform DB instructions.
  */
-@Database(entities = {Measure.class, Ruler.class, Barometer.class, Magnetometer.class},
-        version = 1, exportSchema = false)
+@Database(entities = {Measure.class, Ruler.class, Barometer.class, MagnetometerChunk.class,
+        MagnetometerSummary.class, Outbox.class}, version = 8, exportSchema = false)
 @TypeConverters({Conversions.class})
 public abstract class SqliteManager extends RoomDatabase {
 
+    /**
+     * Version 2: adds the Outbox table and queues an update (or a delete)
+     * for each measure that was not synchronized with the old flags.
+     */
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+
+            database.execSQL("CREATE TABLE IF NOT EXISTS `Outbox` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`measure_id` INTEGER NOT NULL, "
+                    + "`operation` INTEGER NOT NULL, "
+                    + "`created_at` INTEGER NOT NULL)");
+
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_Outbox_measure_id` ON `Outbox` (`measure_id`)");
+
+            // 1: UPDATE, 2: DELETE (OutboxOperation ordinals).
+            database.execSQL("INSERT INTO `Outbox` (`measure_id`, `operation`, `created_at`) "
+                    + "SELECT `id`, CASE WHEN `deleted` THEN 2 ELSE 1 END, CAST(strftime('%s', 'now') AS INTEGER) * 1000 "
+                    + "FROM `Measurements` WHERE NOT `firebase_sync` ORDER BY `id`");
+
+        }
+
+    };
+
+    /**
+     * The prefix of the unique ids of the measurements that had already been
+     * synchronized when the unique ids were added. Their remote key is not known
+     * locally: the sync engine looks them up into the remote database and gives
+     * them their remote key before pushing anything.
+     */
+    public static final String UNMAPPED_UUID_PREFIX = "unmapped_";
+
+    /**
+     * The sqlite expression of a random (version 4) unique id.
+     */
+    private static final String RANDOM_UUID_EXPRESSION = "lower(hex(randomblob(4))) || '-' "
+            + "|| lower(hex(randomblob(2))) || '-4' || substr(lower(hex(randomblob(2))), 2) || '-' "
+            + "|| substr('89ab', 1 + (abs(random()) % 4), 1) || substr(lower(hex(randomblob(2))), 2) || '-' "
+            + "|| lower(hex(randomblob(6)))";
+
+    /**
+     * Version 3: adds the globally unique id of the measurements.
+     * The measurements that have never been uploaded get a random unique id.
+     * The synchronized ones have been uploaded into the legacy array layout,
+     * so their remote key is unknown: they get a random id with the
+     * {@link #UNMAPPED_UUID_PREFIX} until the sync engine finds them remotely.
+     */
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+
+            database.execSQL("ALTER TABLE `Measurements` ADD COLUMN `uuid` TEXT NOT NULL DEFAULT ''");
+            database.execSQL("UPDATE `Measurements` SET `uuid` = "
+                    + "CASE WHEN `firebase_sync` THEN '" + UNMAPPED_UUID_PREFIX + "' ELSE '' END "
+                    + "|| " + RANDOM_UUID_EXPRESSION);
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_Measurements_uuid` ON `Measurements` (`uuid`)");
+
+        }
+
+    };
+
+    /**
+     * Version 4: adds the content digest of the measurements.
+     * The existing measurements have an empty digest, it is computed by the next push.
+     */
+    public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `Measurements` ADD COLUMN `digest` TEXT NOT NULL DEFAULT ''");
+        }
+
+    };
+
+    /**
+     * Version 5: replaces the Magnetometers table (a row per sample) with the
+     * MagnetometerChunks table (a compressed block of samples per row).
+     * The samples are packed one recording at a time, so the migration
+     * runs in bounded memory.
+     */
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+
+            database.execSQL("CREATE TABLE IF NOT EXISTS `MagnetometerChunks` ("
+                    + "`measure_id` INTEGER NOT NULL, "
+                    + "`chunk_index` INTEGER NOT NULL, "
+                    + "`start_time` INTEGER NOT NULL, "
+                    + "`sample_count` INTEGER NOT NULL, "
+                    + "`samples` BLOB NOT NULL, "
+                    + "PRIMARY KEY(`measure_id`, `chunk_index`), "
+                    + "FOREIGN KEY(`measure_id`) REFERENCES `Measurements`(`id`) "
+                    + "ON UPDATE CASCADE ON DELETE CASCADE)");
+
+            try (Cursor cursor = database.query("SELECT `measure_id`, `time`, `value` "
+                    + "FROM `Magnetometers` ORDER BY `measure_id`, `count`")) {
+
+                int measureId = -1;
+                int size = 0;
+
+                int[]   seconds = new int[MagnetometerChunkCodec.CHUNK_SIZE];
+                float[] values  = new float[MagnetometerChunkCodec.CHUNK_SIZE];
+
+                while (cursor.moveToNext()) {
+
+                    int currentId = cursor.getInt(0);
+
+                    if (currentId != measureId) {
+
+                        insertChunks(database, measureId, seconds, values, size);
+
+                        measureId = currentId;
+                        size = 0;
+
+                    }
+
+                    if (size == seconds.length) {
+
+                        seconds = Arrays.copyOf(seconds, size * 2);
+                        values  = Arrays.copyOf(values,  size * 2);
+
+                    }
+
+                    seconds[size] = cursor.getInt(1);
+                    values[size]  = (float) cursor.getDouble(2);
+
+                    size++;
+
+                }
+
+                insertChunks(database, measureId, seconds, values, size);
+
+            }
+
+            database.execSQL("DROP TABLE `Magnetometers`");
+
+        }
+
+        private void insertChunks(@NonNull SupportSQLiteDatabase database, int measureId,
+                                  @NonNull int[] seconds, @NonNull float[] values, int size) {
+
+            if (size == 0) {
+                return;
+            }
+
+            for (MagnetometerChunk chunk : MagnetometerChunkCodec.pack(measureId,
+                    Arrays.copyOf(seconds, size), Arrays.copyOf(values, size))) {
+
+                ContentValues contentValues = new ContentValues();
+
+                contentValues.put("measure_id",   chunk.getMeasureId());
+                contentValues.put("chunk_index",  chunk.getChunkIndex());
+                contentValues.put("start_time",   chunk.getStartTime());
+                contentValues.put("sample_count", chunk.getSampleCount());
+                contentValues.put("samples",      chunk.getSamples());
+
+                database.insert("MagnetometerChunks", SQLiteDatabase.CONFLICT_REPLACE, contentValues);
+
+            }
+
+        }
+
+    };
+
+    /**
+     * Version 6: adds the MagnetometerSummaries table. The summaries of the
+     * existing recordings are built the first time they are read.
+     */
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+
+            database.execSQL("CREATE TABLE IF NOT EXISTS `MagnetometerSummaries` ("
+                    + "`measure_id` INTEGER NOT NULL, "
+                    + "`level` INTEGER NOT NULL, "
+                    + "`bucket_start` INTEGER NOT NULL, "
+                    + "`min` REAL NOT NULL, "
+                    + "`max` REAL NOT NULL, "
+                    + "`mean` REAL NOT NULL, "
+                    + "`sample_count` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`measure_id`, `level`, `bucket_start`), "
+                    + "FOREIGN KEY(`measure_id`) REFERENCES `Measurements`(`id`) "
+                    + "ON UPDATE CASCADE ON DELETE CASCADE)");
+
+        }
+
+    };
+
+    /**
+     * Version 7: adds the indexes of the frequent Measurements queries,
+     * so the main list, the title search and the sync don't scan the table.
+     */
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_Measurements_card_order` "
+                    + "ON `Measurements` (`card_order`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_Measurements_title` "
+                    + "ON `Measurements` (`title`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_Measurements_user_token_deleted_card_order` "
+                    + "ON `Measurements` (`user_token`, `deleted`, `card_order`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_Measurements_firebase_sync` "
+                    + "ON `Measurements` (`firebase_sync`)");
+
+            // the query planner needs the statistics to choose between the indexes.
+            database.execSQL("ANALYZE `Measurements`");
+
+        }
+
+    };
+
+    /**
+     * Version 8: adds the payload digest of the measurements.
+     * The existing measurements have an empty payload digest, it is computed
+     * by the next push or by the next edit.
+     */
+    public static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `Measurements` ADD COLUMN `payload_digest` TEXT NOT NULL DEFAULT ''");
+        }
+
+    };
+
     /**
      * @return The instance of the MeasurementDao class.
      */
@@ -41,4 +285,9 @@ public abstract class SqliteManager extends RoomDatabase {
      */
     public abstract MagnetometersDao magnetometersDao();
 
+    /**
+     * @return The instance of the OutboxDao class.
+     */
+    public abstract OutboxDao outboxDao();
+
 }
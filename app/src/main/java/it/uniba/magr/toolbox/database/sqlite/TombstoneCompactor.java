@@ -0,0 +1,217 @@
+package it.uniba.magr.toolbox.database.sqlite;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import it.uniba.magr.toolbox.database.sqlite.dao.MeasurementsDao;
+
+/**
+ * The periodic compaction of the local database.
+ *
+ * <p>
+ *     A removed measure is kept as a tombstone (deleted flag) until its removal
+ *     reaches the remote database. The tombstones without pending operations are
+ *     confirmed: they are purged in small batches, each one with its own transaction,
+ *     and their rulers, barometers and magnetometer chunks rows are removed by cascade.
+ *     When the free pages of the database file exceed a threshold, the file is shrunk
+ *     with an incremental vacuum. The first shrink runs a full vacuum, that switches
+ *     the database to the incremental auto vacuum mode.
+ * </p>
+ */
+public class TombstoneCompactor {
+
+    private static final String LOG_TAG = "TOMBSTONE-COMPACTOR";
+
+    /**
+     * The delay of the first compaction, so it doesn't slow down the start.
+     */
+    private static final long INITIAL_DELAY_MILLIS = 30_000L;
+
+    /**
+     * The delay between two compactions.
+     */
+    private static final long PERIOD_MILLIS = 6 * 60 * 60_000L;
+
+    /**
+     * The max time waited for the running compaction when the compactor is stopped.
+     */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2_000L;
+
+    /**
+     * The max number of tombstones purged by a single transaction.
+     */
+    private static final int PURGE_BATCH_SIZE = 50;
+
+    /**
+     * The number of free pages that triggers the vacuum.
+     */
+    private static final long FREE_PAGES_THRESHOLD = 256;
+
+    /**
+     * The incremental value of the auto_vacuum pragma.
+     */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    @NotNull
+    private final SqliteManager sqliteManager;
+
+    /**
+     * The single thread where the compactions are executed.
+     */
+    @NotNull
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    public TombstoneCompactor(@NotNull SqliteManager sqliteManager) {
+        this.sqliteManager = sqliteManager;
+    }
+
+    //
+    // PUBLIC METHODS
+    //
+
+    /**
+     * Schedule the periodic compaction.
+     */
+    public synchronized void start() {
+
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        executor.scheduleWithFixedDelay(this :: runCompaction,
+                INITIAL_DELAY_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * Stop the compactor and wait for the running compaction.
+     *
+     * @return True if the running compaction has been completed in time.
+     */
+    public boolean shutdown() {
+
+        synchronized (this) {
+            executor.shutdownNow();
+        }
+
+        try {
+
+            if (executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+
+            Log.w(LOG_TAG, "The running compaction has not been completed in time");
+
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+        }
+
+        return false;
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    private void runCompaction() {
+
+        try {
+
+            int purged = purgeTombstones();
+
+            if (purged > 0) {
+                Log.d(LOG_TAG, "Purged " + purged + " tombstones");
+            }
+
+            vacuumIfNeeded();
+
+        } catch (RuntimeException runtimeEx) {
+            Log.e(LOG_TAG, "Compaction failed", runtimeEx);
+        }
+
+    }
+
+    /**
+     * Remove the confirmed tombstones, one batch at a time.
+     *
+     * @return The number of purged measurements.
+     */
+    private int purgeTombstones() {
+
+        MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
+        int purged = 0;
+
+        while (!Thread.currentThread().isInterrupted()) {
+
+            int removed = sqliteManager.runInTransaction(() -> {
+
+                List<Integer> measureIds = measurementsDao.getPurgeableTombstones(PURGE_BATCH_SIZE);
+                return measureIds.isEmpty() ? 0 : measurementsDao.removeMeasurements(measureIds);
+
+            });
+
+            if (removed == 0) {
+                break;
+            }
+
+            purged += removed;
+
+        }
+
+        return purged;
+
+    }
+
+    /**
+     * Shrink the database file if it has too many free pages.
+     */
+    private void vacuumIfNeeded() {
+
+        SupportSQLiteDatabase database = sqliteManager.getOpenHelper().getWritableDatabase();
+        long freePages = queryLong(database, "PRAGMA freelist_count");
+
+        if (freePages < FREE_PAGES_THRESHOLD) {
+            return;
+        }
+
+        if (queryLong(database, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+
+            // the pragma frees a page for each returned row.
+            try (Cursor cursor = database.query("PRAGMA incremental_vacuum")) {
+
+                while (cursor.moveToNext()) {
+                    // consume all the rows.
+                }
+
+            }
+
+        } else {
+
+            database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            database.execSQL("VACUUM");
+
+        }
+
+        Log.d(LOG_TAG, "Vacuum completed, " + freePages + " free pages released");
+
+    }
+
+    private static long queryLong(@NotNull SupportSQLiteDatabase database, @NotNull String query) {
+
+        try (Cursor cursor = database.query(query)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+
+    }
+
+}
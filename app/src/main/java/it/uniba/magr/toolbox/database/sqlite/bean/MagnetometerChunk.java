@@ -0,0 +1,119 @@
+package it.uniba.magr.toolbox.database.sqlite.bean;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+
+import org.jetbrains.annotations.NotNull;
+
+import lombok.ToString;
+
+/**
+ * A single entry (row's table) of the MagnetometerChunks table.
+ * Each row is a compressed block of consecutive samples of a magnetometer recording,
+ * see the {@link it.uniba.magr.toolbox.database.sqlite.MagnetometerChunkCodec} class.
+ * In this database version will be:
+ * - measure_id:   INTEGER NOT NULL (PRIMARY KEY, FOREIGN KEY)
+ * - chunk_index:  INTEGER NOT NULL (PRIMARY KEY)
+ * - start_time:   INTEGER NOT NULL
+ * - sample_count: INTEGER NOT NULL
+ * - samples:      BLOB NOT NULL
+ */
+@ToString(exclude = "samples")
+@Entity(
+        tableName = "MagnetometerChunks",
+        primaryKeys = {"measure_id", "chunk_index"},
+        foreignKeys = {
+                @ForeignKey(
+                        entity        = Measure.class,
+                        parentColumns = {"id"},            // Measurements.id
+                        childColumns  = {"measure_id"},    // MagnetometerChunks.measure_id
+                        onDelete      = ForeignKey.CASCADE,
+                        onUpdate      = ForeignKey.CASCADE
+                )
+        }
+)
+public class MagnetometerChunk {
+
+    /**
+     * The measure_id foreign and primary key of this table.
+     */
+    @ColumnInfo(name = "measure_id")
+    private int measureId;
+
+    /**
+     * The position of the chunk into the recording, starting from 0.
+     */
+    @ColumnInfo(name = "chunk_index")
+    private int chunkIndex;
+
+    /**
+     * The second of the first sample of the chunk.
+     */
+    @ColumnInfo(name = "start_time")
+    private int startTime;
+
+    /**
+     * The number of samples of the chunk.
+     */
+    @ColumnInfo(name = "sample_count")
+    private int sampleCount;
+
+    /**
+     * The compressed samples.
+     */
+    @NonNull
+    @ColumnInfo(name = "samples")
+    private byte[] samples = new byte[0];
+
+    //
+    // GETTERS
+    //
+
+    public int getMeasureId() {
+        return this.measureId;
+    }
+
+    public int getChunkIndex() {
+        return this.chunkIndex;
+    }
+
+    public int getStartTime() {
+        return this.startTime;
+    }
+
+    public int getSampleCount() {
+        return this.sampleCount;
+    }
+
+    @NotNull
+    public byte[] getSamples() {
+        return this.samples;
+    }
+
+    //
+    // SETTERS
+    //
+
+    public void setMeasureId(int measureId) {
+        this.measureId = measureId;
+    }
+
+    public void setChunkIndex(int chunkIndex) {
+        this.chunkIndex = chunkIndex;
+    }
+
+    public void setStartTime(int startTime) {
+        this.startTime = startTime;
+    }
+
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    public void setSamples(@NonNull byte[] samples) {
+        this.samples = samples;
+    }
+
+}
@@ -0,0 +1,55 @@
+package it.uniba.magr.toolbox.database.sqlite.bean;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The samples of a magnetometer recording, unpacked into primitive arrays.
+ * It is not a table: the samples are stored as {@link MagnetometerChunk} rows.
+ */
+public class MagnetometerSamples {
+
+    /**
+     * The second of each sample.
+     */
+    @NotNull
+    private final int[] seconds;
+
+    /**
+     * The microtesla value of each sample.
+     */
+    @NotNull
+    private final float[] values;
+
+    /**
+     * @param seconds The not null seconds of the samples.
+     * @param values The not null values, with the same length of the seconds.
+     */
+    public MagnetometerSamples(@NotNull int[] seconds, @NotNull float[] values) {
+
+        if (seconds.length != values.length) {
+            throw new IllegalArgumentException("The seconds and the values have different lengths");
+        }
+
+        this.seconds = seconds;
+        this.values  = values;
+
+    }
+
+    @NotNull
+    public int[] getSeconds() {
+        return this.seconds;
+    }
+
+    @NotNull
+    public float[] getValues() {
+        return this.values;
+    }
+
+    /**
+     * @return The number of samples.
+     */
+    public int size() {
+        return this.seconds.length;
+    }
+
+}
@@ -0,0 +1,144 @@
+package it.uniba.magr.toolbox.database.sqlite.bean;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+
+import lombok.ToString;
+
+/**
+ * A single entry (row's table) of the MagnetometerSummaries table.
+ * Each row summarizes the samples of a magnetometer recording that fall into
+ * a time bucket, see the {@link it.uniba.magr.toolbox.database.sqlite.MagnetometerPyramid} class.
+ * In this database version will be:
+ * - measure_id:   INTEGER NOT NULL (PRIMARY KEY, FOREIGN KEY)
+ * - level:        INTEGER NOT NULL (PRIMARY KEY)
+ * - bucket_start: INTEGER NOT NULL (PRIMARY KEY)
+ * - min:          REAL NOT NULL
+ * - max:          REAL NOT NULL
+ * - mean:         REAL NOT NULL
+ * - sample_count: INTEGER NOT NULL
+ */
+@ToString
+@Entity(
+        tableName = "MagnetometerSummaries",
+        primaryKeys = {"measure_id", "level", "bucket_start"},
+        foreignKeys = {
+                @ForeignKey(
+                        entity        = Measure.class,
+                        parentColumns = {"id"},            // Measurements.id
+                        childColumns  = {"measure_id"},    // MagnetometerSummaries.measure_id
+                        onDelete      = ForeignKey.CASCADE,
+                        onUpdate      = ForeignKey.CASCADE
+                )
+        }
+)
+public class MagnetometerSummary {
+
+    /**
+     * The measure_id foreign and primary key of this table.
+     */
+    @ColumnInfo(name = "measure_id")
+    private int measureId;
+
+    /**
+     * The length of the buckets of this level in seconds.
+     */
+    @ColumnInfo(name = "level")
+    private int level;
+
+    /**
+     * The first second of the bucket, a multiple of the level.
+     */
+    @ColumnInfo(name = "bucket_start")
+    private int bucketStart;
+
+    /**
+     * The min tesla value of the bucket.
+     */
+    @ColumnInfo(name = "min")
+    private float min;
+
+    /**
+     * The max tesla value of the bucket.
+     */
+    @ColumnInfo(name = "max")
+    private float max;
+
+    /**
+     * The mean tesla value of the bucket.
+     */
+    @ColumnInfo(name = "mean")
+    private float mean;
+
+    /**
+     * The number of samples of the bucket.
+     */
+    @ColumnInfo(name = "sample_count")
+    private int sampleCount;
+
+    //
+    // GETTERS
+    //
+
+    public int getMeasureId() {
+        return this.measureId;
+    }
+
+    public int getLevel() {
+        return this.level;
+    }
+
+    public int getBucketStart() {
+        return this.bucketStart;
+    }
+
+    public float getMin() {
+        return this.min;
+    }
+
+    public float getMax() {
+        return this.max;
+    }
+
+    public float getMean() {
+        return this.mean;
+    }
+
+    public int getSampleCount() {
+        return this.sampleCount;
+    }
+
+    //
+    // SETTERS
+    //
+
+    public void setMeasureId(int measureId) {
+        this.measureId = measureId;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public void setBucketStart(int bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public void setMin(float min) {
+        this.min = min;
+    }
+
+    public void setMax(float max) {
+        this.max = max;
+    }
+
+    public void setMean(float mean) {
+        this.mean = mean;
+    }
+
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+}
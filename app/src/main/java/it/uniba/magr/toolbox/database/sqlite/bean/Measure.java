@@ -3,6 +3,7 @@ package it.uniba.magr.toolbox.database.sqlite.bean;
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import androidx.room.TypeConverters;
 
@@ -17,10 +18,13 @@ import lombok.ToString;
  * A single entry (row's table) of the Measurements table.
  * In this database version will be:
  * - ID:          PRIMARY KEY AUTO_INCREMENT
- * - user_token:  TEXT NOT NULL
- * - title:       TEXT NOT NULL
+ * - uuid:        TEXT NOT NULL UNIQUE
+ * - user_token:  TEXT NOT NULL (indexed with deleted and card_order)
+ * - title:       TEXT NOT NULL (indexed)
  * - description: TEXT NOT NULL
  * - date:        LONG NOT NULL
+ * - digest:      TEXT NOT NULL
+ * - payload_digest: TEXT NOT NULL
  *
  * <p>
  *     The date is long due to room's database cannot manage objects references.
@@ -29,7 +33,16 @@ import lombok.ToString;
  * </p>
  */
 @ToString
-@Entity(tableName = "Measurements")
+@Entity(
+        tableName = "Measurements",
+        indices = {
+                @Index(value = "uuid", unique = true),
+                @Index(value = "card_order"),                            // main list order
+                @Index(value = "title"),                                 // search by title
+                @Index(value = {"user_token", "deleted", "card_order"}), // visible list of a user
+                @Index(value = "firebase_sync")                          // sync scans
+        }
+)
 @TypeConverters({Conversions.class})
 public class Measure {
 
@@ -40,6 +53,15 @@ public class Measure {
     @PrimaryKey(autoGenerate = true)
     private int id;
 
+    /**
+     * The globally unique id of the measure, shared by all the devices.
+     * It is the key of the remote measure, so the local id never leaves this device.
+     * It is assigned when a new measure is created, not when a row is read.
+     */
+    @NonNull
+    @ColumnInfo(name = "uuid", defaultValue = "")
+    private String uuid;
+
     /**
      * The firebase user's token.
      *
@@ -101,6 +123,23 @@ public class Measure {
     @ColumnInfo(name = "deleted", defaultValue = "false")
     private boolean deleted;
 
+    /**
+     * The md5 digest of the content (title, description and payload), see the
+     * MeasureDigest class. Empty if it must be computed again.
+     */
+    @NonNull
+    @ColumnInfo(name = "digest", defaultValue = "")
+    private String digest = "";
+
+    /**
+     * The md5 digest of the tool values only, see the MeasureDigest class.
+     * The content digest of an edited measure is computed from it, without
+     * reading the payload again. Empty if it must be computed again.
+     */
+    @NonNull
+    @ColumnInfo(name = "payload_digest", defaultValue = "")
+    private String payloadDigest = "";
+
     //
     // GETTERS
     //
@@ -109,6 +148,11 @@ public class Measure {
         return this.id;
     }
 
+    @NotNull
+    public String getUuid() {
+        return this.uuid;
+    }
+
     @NotNull
     public String getUserToken() {
         return this.userToken;
@@ -146,6 +190,16 @@ public class Measure {
         return this.deleted;
     }
 
+    @NotNull
+    public String getDigest() {
+        return this.digest;
+    }
+
+    @NotNull
+    public String getPayloadDigest() {
+        return this.payloadDigest;
+    }
+
     //
     // SETTERS
     //
@@ -154,6 +208,10 @@ public class Measure {
         this.id = id;
     }
 
+    public void setUuid(@NonNull String uuid) {
+        this.uuid = uuid;
+    }
+
     public void setUserToken(@NonNull String userToken) {
         this.userToken = userToken;
     }
@@ -186,4 +244,12 @@ public class Measure {
         this.deleted = deleted;
     }
 
+    public void setDigest(@NonNull String digest) {
+        this.digest = digest;
+    }
+
+    public void setPayloadDigest(@NonNull String payloadDigest) {
+        this.payloadDigest = payloadDigest;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package it.uniba.magr.toolbox.database.sqlite.bean;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+import androidx.room.TypeConverters;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Date;
+
+import it.uniba.magr.toolbox.database.sqlite.Conversions;
+import lombok.ToString;
+
+/**
+ * A single entry (row's table) of the Outbox table.
+ * Each row is a remote operation that has not been applied yet.
+ * In this database version will be:
+ * - ID:          PRIMARY KEY AUTO_INCREMENT
+ * - measure_id:  INTEGER NOT NULL (indexed)
+ * - operation:   INTEGER NOT NULL
+ * - created_at:  LONG NOT NULL
+ *
+ * <p>
+ *     The measure_id is not a foreign key: a delete operation must
+ *     survive the removal of its measure.
+ * </p>
+ */
+@ToString
+@Entity(
+        tableName = "Outbox",
+        indices = {@Index(value = {"measure_id"})}
+)
+@TypeConverters({Conversions.class})
+public class Outbox {
+
+    /**
+     * The auto incremented ID, that is also the queue order.
+     */
+    @PrimaryKey(autoGenerate = true)
+    private int id;
+
+    /**
+     * The id of the measure of the operation.
+     */
+    @ColumnInfo(name = "measure_id")
+    private int measureId;
+
+    /**
+     * The queued operation.
+     */
+    @NonNull
+    @ColumnInfo(name = "operation")
+    private OutboxOperation operation = OutboxOperation.UPDATE;
+
+    /**
+     * The date when the operation has been queued.
+     */
+    @NonNull
+    @ColumnInfo(name = "created_at")
+    private Date createdAt = new Date(System.currentTimeMillis());
+
+    //
+    // GETTERS
+    //
+
+    public int getId() {
+        return this.id;
+    }
+
+    public int getMeasureId() {
+        return this.measureId;
+    }
+
+    @NotNull
+    public OutboxOperation getOperation() {
+        return this.operation;
+    }
+
+    @NotNull
+    public Date getCreatedAt() {
+        return this.createdAt;
+    }
+
+    //
+    // SETTERS
+    //
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public void setMeasureId(int measureId) {
+        this.measureId = measureId;
+    }
+
+    public void setOperation(@NonNull OutboxOperation operation) {
+        this.operation = operation;
+    }
+
+    public void setCreatedAt(@NonNull Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+}
@@ -0,0 +1,12 @@
+package it.uniba.magr.toolbox.database.sqlite.bean;
+
+import lombok.ToString;
+
+/**
+ * The remote operations that can be queued into the Outbox table.
+ * The ordinal is stored into the database, so new values must be appended.
+ */
+@ToString
+public enum OutboxOperation {
+    CREATE, UPDATE, DELETE, REORDER
+}
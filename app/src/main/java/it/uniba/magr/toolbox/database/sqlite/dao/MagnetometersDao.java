@@ -4,34 +4,175 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 
+import java.util.Collections;
 import java.util.List;
 
-import it.uniba.magr.toolbox.database.sqlite.bean.Magnetometer;
+import it.uniba.magr.toolbox.database.sqlite.MagnetometerChunkCodec;
+import it.uniba.magr.toolbox.database.sqlite.MagnetometerPyramid;
+import it.uniba.magr.toolbox.database.sqlite.bean.MagnetometerChunk;
+import it.uniba.magr.toolbox.database.sqlite.bean.MagnetometerSamples;
+import it.uniba.magr.toolbox.database.sqlite.bean.MagnetometerSummary;
 
 /**
  * The Data access object (Dao) of magnetometer measurements.
+ * The samples are stored into compressed chunks, so a recording
+ * is read with a few blob reads instead of a row per sample.
+ * The summaries of the recording are stored alongside the samples,
+ * so a chart reads about one row per pixel.
  */
 @Dao
 public interface MagnetometersDao {
 
     /**
      * @param measureId The foreign key of the measure.
-     * @return The magnetometer info.
+     * @return The chunks of the recording, in order.
      */
-    @Query("SELECT * FROM Magnetometers WHERE measure_id=:measureId")
-    List<Magnetometer> getMagnetometers(int measureId);
+    @Query("SELECT * FROM MagnetometerChunks WHERE measure_id=:measureId ORDER BY chunk_index")
+    List<MagnetometerChunk> getChunks(int measureId);
 
     /**
-     * @param magnetometer a not null magnetometer instance.
+     * @param chunks a not null array of chunk instances.
      */
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insertMagnetometer(Magnetometer magnetometer);
+    void insertChunks(MagnetometerChunk... chunks);
 
     /**
-     * @param magnetometers a not null array of magnetometer instances.
+     * @param measureId The foreign key of the measure.
+     */
+    @Query("DELETE FROM MagnetometerChunks WHERE measure_id=:measureId")
+    void removeChunks(int measureId);
+
+    /**
+     * @param measureId The foreign key of the measure.
+     * @param level The bucket length of the level in seconds.
+     * @param fromSecond The first second of the range.
+     * @param toSecond The last second of the range.
+     * @return The summaries of the level whose buckets overlap the range, in time order.
+     */
+    @Query("SELECT * FROM MagnetometerSummaries WHERE measure_id=:measureId AND level=:level "
+            + "AND bucket_start > :fromSecond - :level AND bucket_start <= :toSecond ORDER BY bucket_start")
+    List<MagnetometerSummary> getLevelSummaries(int measureId, int level, int fromSecond, int toSecond);
+
+    /**
+     * @param measureId The foreign key of the measure.
+     * @return The first bucket of the finest level, null if the recording has no summaries.
+     */
+    @Query("SELECT MIN(bucket_start) FROM MagnetometerSummaries WHERE measure_id=:measureId AND level="
+            + MagnetometerPyramid.FINEST_LEVEL)
+    Integer getFirstSecond(int measureId);
+
+    /**
+     * @param measureId The foreign key of the measure.
+     * @return The last bucket of the finest level, null if the recording has no summaries.
+     */
+    @Query("SELECT MAX(bucket_start) FROM MagnetometerSummaries WHERE measure_id=:measureId AND level="
+            + MagnetometerPyramid.FINEST_LEVEL)
+    Integer getLastSecond(int measureId);
+
+    /**
+     * @param summaries a not null array of summary instances.
      */
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insertMagnetometers(Magnetometer... magnetometers);
+    void insertSummaries(MagnetometerSummary... summaries);
+
+    /**
+     * @param measureId The foreign key of the measure.
+     */
+    @Query("DELETE FROM MagnetometerSummaries WHERE measure_id=:measureId")
+    void removeSummaries(int measureId);
+
+    /**
+     * Read the summaries of the coarsest level that still has
+     * a bucket for each pixel of the chart.
+     *
+     * @param measureId The foreign key of the measure.
+     * @param fromSecond The first second of the drawn range.
+     * @param toSecond The last second of the drawn range.
+     * @param pixelWidth The width of the chart in pixels.
+     * @return The not null summaries of the range, in time order.
+     */
+    @Transaction
+    default List<MagnetometerSummary> getSummaries(int measureId, int fromSecond, int toSecond, int pixelWidth) {
+
+        buildSummariesIfMissing(measureId);
+
+        int level = MagnetometerPyramid.selectLevel((long) toSecond - fromSecond + 1, pixelWidth);
+        return getLevelSummaries(measureId, level, fromSecond, toSecond);
+
+    }
+
+    /**
+     * Read the summaries of the whole recording, see {@link #getSummaries(int, int, int, int)}.
+     *
+     * @param measureId The foreign key of the measure.
+     * @param pixelWidth The width of the chart in pixels.
+     * @return The not null summaries of the recording, in time order.
+     */
+    @Transaction
+    default List<MagnetometerSummary> getSummaries(int measureId, int pixelWidth) {
+
+        buildSummariesIfMissing(measureId);
+
+        Integer firstSecond = getFirstSecond(measureId);
+        Integer lastSecond  = getLastSecond(measureId);
+
+        if (firstSecond == null || lastSecond == null) {
+            return Collections.emptyList();
+        }
+
+        return getSummaries(measureId, firstSecond, lastSecond, pixelWidth);
+
+    }
+
+    /**
+     * The recordings saved before the summaries are summarized when they are read.
+     *
+     * @param measureId The foreign key of the measure.
+     */
+    @Transaction
+    default void buildSummariesIfMissing(int measureId) {
+
+        if (getFirstSecond(measureId) != null) {
+            return;
+        }
+
+        MagnetometerSamples samples = getSamples(measureId);
+        List<MagnetometerSummary> summaries = MagnetometerPyramid.build(measureId,
+                samples.getSeconds(), samples.getValues());
+
+        insertSummaries(summaries.toArray(new MagnetometerSummary[0]));
+
+    }
+
+    /**
+     * @param measureId The foreign key of the measure.
+     * @return The not null unpacked samples of the recording.
+     */
+    default MagnetometerSamples getSamples(int measureId) {
+        return MagnetometerChunkCodec.unpack(getChunks(measureId));
+    }
+
+    /**
+     * Replace the samples of a recording and their summaries.
+     *
+     * @param measureId The foreign key of the measure.
+     * @param seconds The not null seconds of the samples.
+     * @param values The not null values, with the same length of the seconds.
+     */
+    @Transaction
+    default void insertSamples(int measureId, int[] seconds, float[] values) {
+
+        List<MagnetometerChunk> chunks = MagnetometerChunkCodec.pack(measureId, seconds, values);
+        List<MagnetometerSummary> summaries = MagnetometerPyramid.build(measureId, seconds, values);
+
+        removeChunks(measureId);
+        removeSummaries(measureId);
+
+        insertChunks(chunks.toArray(new MagnetometerChunk[0]));
+        insertSummaries(summaries.toArray(new MagnetometerSummary[0]));
+
+    }
 
-}
\ No newline at end of file
+}
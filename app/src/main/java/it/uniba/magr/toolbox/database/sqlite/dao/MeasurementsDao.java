@@ -10,6 +10,7 @@ import androidx.room.Update;
 
 import java.util.List;
 
+import it.uniba.magr.toolbox.database.sqlite.SqliteManager;
 import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
 import it.uniba.magr.toolbox.database.sqlite.bean.embedded.MeasureAndBarometer;
 import it.uniba.magr.toolbox.database.sqlite.bean.embedded.MeasureAndRuler;
@@ -26,6 +27,58 @@ public interface MeasurementsDao {
     @Query("SELECT * FROM Measurements ORDER BY card_order")
     List<Measure> getAll();
 
+    /**
+     * @return Gets all measurements that have not been removed, the tombstones are excluded.
+     */
+    @Query("SELECT * FROM Measurements WHERE NOT deleted ORDER BY card_order")
+    List<Measure> getVisible();
+
+    /**
+     * The card orders are not unique, so the id breaks the ties.
+     *
+     * @param limit The max number of measurements.
+     * @return The first page of the measurements that have not been removed.
+     */
+    @Query("SELECT * FROM Measurements WHERE NOT deleted ORDER BY card_order, id LIMIT :limit")
+    List<Measure> getVisibleFirstPage(int limit);
+
+    /**
+     * Gets the page that starts after a measure of the previous one (keyset pagination),
+     * so its cost doesn't depend on how many pages have been read before.
+     * The first condition lets the card order index seek to the start of the page.
+     *
+     * @param afterOrder The card order of the last measure of the previous page.
+     * @param afterId The id of the last measure of the previous page.
+     * @param limit The max number of measurements.
+     * @return The next page of the measurements that have not been removed.
+     */
+    @Query("SELECT * FROM Measurements WHERE NOT deleted "
+            + "AND card_order >= :afterOrder AND (card_order > :afterOrder OR id > :afterId) "
+            + "ORDER BY card_order, id LIMIT :limit")
+    List<Measure> getVisiblePage(int afterOrder, int afterId, int limit);
+
+    /**
+     * @param uuids The not null list of the globally unique ids, at most 999.
+     * @return The ids of the list that belong to a local measure, tombstones included.
+     */
+    @Query("SELECT uuid FROM Measurements WHERE uuid IN (:uuids)")
+    List<String> getExistingUuids(List<String> uuids);
+
+    /**
+     * @param uuids The not null list of the globally unique ids, at most 999.
+     * @return The measurements of the list, tombstones included.
+     */
+    @Query("SELECT * FROM Measurements WHERE uuid IN (:uuids)")
+    List<Measure> getMeasurementsByUuids(List<String> uuids);
+
+    /**
+     * The glob is case sensitive, so it is a range search of the unique ids index.
+     *
+     * @return The measurements whose remote key is not known yet, tombstones included.
+     */
+    @Query("SELECT * FROM Measurements WHERE uuid GLOB '" + SqliteManager.UNMAPPED_UUID_PREFIX + "*'")
+    List<Measure> getUnmappedMeasurements();
+
     /**
      * Gets a measure from its id.
      *
@@ -60,9 +113,10 @@ public interface MeasurementsDao {
 
     /**
      * @param measure a not null measure instance.
+     * @return The row id of the inserted measure, that is its id.
      */
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insertMeasure(Measure measure);
+    long insertMeasure(Measure measure);
 
     /**
      * @param measurements a not null array of measurements instances.
@@ -94,6 +148,26 @@ public interface MeasurementsDao {
     @Delete
     void removeMeasurements(Measure... measurements);
 
+    /**
+     * A tombstone is confirmed when it has no pending operations:
+     * its removal has already reached the remote database or it never did.
+     *
+     * @param limit The max number of ids.
+     * @return The ids of the confirmed tombstones.
+     */
+    @Query("SELECT id FROM Measurements WHERE deleted "
+            + "AND id NOT IN (SELECT measure_id FROM Outbox) LIMIT :limit")
+    List<Integer> getPurgeableTombstones(int limit);
+
+    /**
+     * The child rows are removed by cascade.
+     *
+     * @param ids The not null list of the measure ids.
+     * @return The number of removed measurements.
+     */
+    @Query("DELETE FROM Measurements WHERE id IN (:ids)")
+    int removeMeasurements(List<Integer> ids);
+
     /**
      * @return The latest measure ID added into the table.
      */
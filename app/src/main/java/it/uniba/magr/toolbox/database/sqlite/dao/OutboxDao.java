@@ -0,0 +1,103 @@
+package it.uniba.magr.toolbox.database.sqlite.dao;
+
+import androidx.room.Dao;
+import androidx.room.Delete;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.List;
+
+import it.uniba.magr.toolbox.database.sqlite.bean.Outbox;
+import it.uniba.magr.toolbox.database.sqlite.bean.OutboxOperation;
+
+/**
+ * The Data access object (Dao) of the pending remote operations.
+ */
+@Dao
+public interface OutboxDao {
+
+    /**
+     * @return All the pending operations in queue order.
+     */
+    @Query("SELECT * FROM Outbox ORDER BY id")
+    List<Outbox> getPendingOperations();
+
+    /**
+     * @param measureId The measure id.
+     * @return The pending operations of a measure in queue order.
+     */
+    @Query("SELECT * FROM Outbox WHERE measure_id=:measureId ORDER BY id")
+    List<Outbox> getOperations(int measureId);
+
+    /**
+     * @return The number of pending operations.
+     */
+    @Query("SELECT COUNT(*) FROM Outbox")
+    int getPendingCount();
+
+    /**
+     * @param outbox a not null outbox instance.
+     */
+    @Insert
+    void insertOperation(Outbox outbox);
+
+    /**
+     * @param operations A not null array of outbox instances.
+     */
+    @Delete
+    void removeOperations(Outbox... operations);
+
+    /**
+     * @param measureId The measure id of the operations to remove.
+     */
+    @Query("DELETE FROM Outbox WHERE measure_id=:measureId")
+    void removeMeasureOperations(int measureId);
+
+    /**
+     * Queue an operation merging it with the pending operations of the same measure.
+     * The operations are applied with the current state of the measure, so:
+     * <ul>
+     *     <li>an update or a reorder after a create or an update is already queued;</li>
+     *     <li>a delete replaces all the other operations.</li>
+     * </ul>
+     * A delete after a create is queued too: the create may be being pushed,
+     * so the measure may have already reached the remote database.
+     *
+     * @param measureId The measure id.
+     * @param operation The not null operation to queue.
+     */
+    @Transaction
+    default void enqueue(int measureId, OutboxOperation operation) {
+
+        List<Outbox> pendingOperations = getOperations(measureId);
+
+        for (Outbox pending : pendingOperations) {
+
+            OutboxOperation pendingOperation = pending.getOperation();
+
+            if (pendingOperation == operation) {
+                return;
+            }
+
+            if (operation != OutboxOperation.DELETE
+                    && (pendingOperation == OutboxOperation.CREATE || pendingOperation == OutboxOperation.UPDATE)) {
+                return;
+            }
+
+        }
+
+        if (operation == OutboxOperation.DELETE) {
+            removeMeasureOperations(measureId);
+        }
+
+        Outbox outbox = new Outbox();
+
+        outbox.setMeasureId(measureId);
+        outbox.setOperation(operation);
+
+        insertOperation(outbox);
+
+    }
+
+}
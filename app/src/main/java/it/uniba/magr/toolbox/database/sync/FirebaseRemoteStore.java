@@ -0,0 +1,93 @@
+package it.uniba.magr.toolbox.database.sync;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+import it.uniba.magr.toolbox.database.realtime.MeasurePage;
+import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
+import it.uniba.magr.toolbox.database.realtime.RealtimeBatch;
+import it.uniba.magr.toolbox.database.realtime.RealtimeManager;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+import it.uniba.magr.toolbox.database.sqlite.bean.Type;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The remote store of the firebase realtime database,
+ * bound to the measurements of the logged user.
+ */
+@RequiredArgsConstructor
+public class FirebaseRemoteStore implements RemoteStore {
+
+    /**
+     * The not null realtime manager instance.
+     */
+    @NotNull
+    private final RealtimeManager realtimeManager;
+
+    @Override
+    public boolean isAvailable() {
+        return realtimeManager.isNetworkConnected();
+    }
+
+    @Nullable
+    @Override
+    public String getUserId() {
+        return realtimeManager.getUserUUID();
+    }
+
+    @Override
+    public void prepare() throws NotConnectedException {
+        realtimeManager.migrateLegacyLayout();
+    }
+
+    @NotNull
+    @Override
+    public List<RealtimeMeasure> getAllMeasurements() throws NotConnectedException {
+        return realtimeManager.getAllMeasurements();
+    }
+
+    @Override
+    public long getServerTime() throws NotConnectedException {
+        return realtimeManager.getServerTime();
+    }
+
+    @NotNull
+    @Override
+    public Map<String, String> getDigests() throws NotConnectedException {
+        return realtimeManager.getDigests();
+    }
+
+    @NotNull
+    @Override
+    public MeasurePage getMeasurementsPage(@NotNull Type type,
+                                           @Nullable String cursor,
+                                           int pageSize) throws NotConnectedException {
+        return realtimeManager.getMeasurementsPage(type, cursor, pageSize);
+    }
+
+    @NotNull
+    @Override
+    public List<RealtimeMeasure> getMeasurementsUpdatedSince(long mark) throws NotConnectedException {
+        return realtimeManager.getMeasurementsUpdatedSince(mark);
+    }
+
+    @Override
+    public void putSegments(@NotNull String measureKey, @NotNull List<String> segments) throws NotConnectedException {
+        realtimeManager.putSegments(measureKey, segments);
+    }
+
+    @NotNull
+    @Override
+    public List<String> getSegments(@NotNull String measureKey) throws NotConnectedException {
+        return realtimeManager.getSegments(measureKey);
+    }
+
+    @Override
+    public boolean commitBatch(@NotNull RealtimeBatch batch) throws NotConnectedException {
+        return realtimeManager.commitBatch(batch);
+    }
+
+}
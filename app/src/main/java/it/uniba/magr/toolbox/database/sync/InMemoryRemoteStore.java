@@ -0,0 +1,540 @@
+package it.uniba.magr.toolbox.database.sync;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import it.uniba.magr.toolbox.database.metrics.SyncMetrics;
+import it.uniba.magr.toolbox.database.realtime.LocalRealtimeDatabase;
+import it.uniba.magr.toolbox.database.realtime.MagnetometerCodec;
+import it.uniba.magr.toolbox.database.realtime.MeasurePage;
+import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
+import it.uniba.magr.toolbox.database.realtime.RealtimeBatch;
+import it.uniba.magr.toolbox.database.realtime.RealtimeDecoder;
+import it.uniba.magr.toolbox.database.realtime.RealtimeManager;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeBarometer;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMagnetometer;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeRuler;
+import it.uniba.magr.toolbox.database.sqlite.bean.Type;
+
+/**
+ * A local stand-in of the remote database, backed by a {@link LocalRealtimeDatabase}
+ * with the same layout of the realtime database: the measurements, the segments
+ * and the digests manifest are written by the same multi-path updates and they
+ * are read with the same decoder. If a file is provided, the tree is loaded
+ * from it and it is saved into it after every write, so the content survives a restart.
+ *
+ * <p>
+ *     This store doesn't depend on android: it can be used to run the
+ *     synchronization on a plain JVM. The availability can be switched off
+ *     to simulate a missing connection.
+ * </p>
+ *
+ * <p>
+ *     Each call is a simulated round trip with a fixed latency. The round trips,
+ *     their latencies and the exchanged bytes are recorded with the same metrics
+ *     of the realtime database, so the cost of a synchronization can be measured
+ *     deterministically while the history grows.
+ * </p>
+ */
+public class InMemoryRemoteStore implements RemoteStore {
+
+    private static final String USER_ID = "local";
+
+    private static final String CHILD_USERS         = "users";
+    private static final String CHILD_MEASUREMENTS  = "measurements";
+    private static final String CHILD_RULERS        = "rulers";
+    private static final String CHILD_MAGNETOMETERS = "magnetometers";
+    private static final String CHILD_BAROMETERS    = "barometers";
+    private static final String CHILD_SEGMENTS      = "segments";
+    private static final String CHILD_DIGESTS       = "digests";
+
+    private static final String FIELD_UPDATED_AT = "updatedAt";
+
+    /**
+     * The segment keys are sorted like their indexes, see the realtime manager.
+     */
+    private static final String SEGMENT_KEY_FORMAT = "s%05d";
+
+    /*
+     * The names of the simulated round trips into the metrics.
+     */
+    private static final String OPERATION_PREPARE      = "prepare";
+    private static final String OPERATION_GET_ALL      = "get_all";
+    private static final String OPERATION_GET_DIGESTS  = "get_digests";
+    private static final String OPERATION_GET_PAGE     = "get_page";
+    private static final String OPERATION_GET_UPDATED  = "get_updated_since";
+    private static final String OPERATION_PUT_SEGMENTS = "put_segments";
+    private static final String OPERATION_GET_SEGMENTS = "get_segments";
+    private static final String OPERATION_COMMIT_BATCH = "commit_batch";
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The in-process stand-in of the firebase database.
+     */
+    @NotNull
+    private final LocalRealtimeDatabase database = new LocalRealtimeDatabase();
+
+    /**
+     * The node of the only user of the store.
+     */
+    @NotNull
+    private final LocalRealtimeDatabase.Reference userReference =
+            database.getReference(CHILD_USERS).child(USER_ID);
+
+    /**
+     * The backing file, null if the store is memory only.
+     */
+    @Nullable
+    private final File file;
+
+    /**
+     * False to simulate a missing connection.
+     */
+    private volatile boolean available = true;
+
+    /**
+     * The simulated latency of a round trip in milliseconds.
+     */
+    private volatile long latencyMillis;
+
+    /**
+     * The round trips, the latencies and the bytes exchanged with the store.
+     */
+    @NotNull
+    private final SyncMetrics metrics = new SyncMetrics();
+
+    /**
+     * Create a memory only store.
+     */
+    public InMemoryRemoteStore() {
+        this.file = null;
+    }
+
+    /**
+     * Create a store backed by a file.
+     *
+     * @param file The not null file, it is created on the first write if it doesn't exist.
+     * @throws IOException Invoked if the existing file cannot be read.
+     */
+    public InMemoryRemoteStore(@NotNull File file) throws IOException {
+
+        this.file = file;
+
+        if (file.exists()) {
+            load(file);
+        }
+
+    }
+
+    /**
+     * @param available False to simulate a missing connection.
+     */
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    /**
+     * The round trips are executed one at a time, like on a single connection.
+     *
+     * @param latencyMillis The simulated latency of a round trip in milliseconds.
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @return The not null metrics of the round trips to this store.
+     */
+    @NotNull
+    public SyncMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The database can be read, written and listened directly,
+     * like another client would do. These accesses are not recorded.
+     *
+     * @return The not null stand-in of the firebase database.
+     */
+    @NotNull
+    public LocalRealtimeDatabase getDatabase() {
+        return database;
+    }
+
+    /**
+     * Write a measure like another device of the user would do, with its
+     * server time and its content digest. The write is not recorded.
+     *
+     * @param measure The not null measure with its globally unique id.
+     */
+    public synchronized void putMeasure(@NotNull RealtimeMeasure measure) {
+
+        userReference.updateChildren(new RealtimeBatch().addMeasure(measure).getUserUpdates());
+        save();
+
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @NotNull
+    @Override
+    public String getUserId() {
+        return USER_ID;
+    }
+
+    @Override
+    public synchronized void prepare() throws NotConnectedException {
+        beginRoundTrip(OPERATION_PREPARE);
+    }
+
+    @NotNull
+    @Override
+    public synchronized List<RealtimeMeasure> getAllMeasurements() throws NotConnectedException {
+
+        beginRoundTrip(OPERATION_GET_ALL);
+        List<RealtimeMeasure> results = new ArrayList<>();
+
+        for (Type type : RealtimeManager.REMOTE_TYPES) {
+
+            Object typeNode = getTypeReference(type).get();
+
+            if (typeNode instanceof Map) {
+                results.addAll(decodeAll(type, (Map<?, ?>) typeNode));
+            }
+
+        }
+
+        return download(results);
+
+    }
+
+    @Override
+    public synchronized long getServerTime() throws NotConnectedException {
+
+        if (!available) {
+            throw new NotConnectedException();
+        }
+
+        // like firebase, the server time is estimated without a round trip.
+        return database.getServerTime();
+
+    }
+
+    @NotNull
+    @Override
+    public synchronized Map<String, String> getDigests() throws NotConnectedException {
+
+        beginRoundTrip(OPERATION_GET_DIGESTS);
+
+        Object digestsNode = userReference.child(CHILD_DIGESTS).get();
+        Map<String, String> digests = new HashMap<>();
+
+        if (digestsNode instanceof Map) {
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) digestsNode).entrySet()) {
+
+                if (entry.getValue() instanceof String) {
+                    digests.put(entry.getKey().toString(), (String) entry.getValue());
+                }
+
+            }
+
+        }
+
+        return download(digests);
+
+    }
+
+    @NotNull
+    @Override
+    public synchronized MeasurePage getMeasurementsPage(@NotNull Type type,
+                                                        @Nullable String cursor,
+                                                        int pageSize) throws NotConnectedException {
+
+        beginRoundTrip(OPERATION_GET_PAGE);
+
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be greater than 0");
+        }
+
+        Map<String, Object> children = getTypeReference(type).getChildrenAfter(cursor, pageSize);
+        List<RealtimeMeasure> results = decodeAll(type, children);
+
+        String lastKey = null;
+
+        // like the realtime manager: a full page may be followed by another one.
+        if (children.size() == pageSize) {
+
+            for (String key : children.keySet()) {
+                lastKey = key;
+            }
+
+        }
+
+        return download(new MeasurePage(Collections.unmodifiableList(results), lastKey));
+
+    }
+
+    @NotNull
+    @Override
+    public synchronized List<RealtimeMeasure> getMeasurementsUpdatedSince(long mark) throws NotConnectedException {
+
+        beginRoundTrip(OPERATION_GET_UPDATED);
+        List<RealtimeMeasure> results = new ArrayList<>();
+
+        for (Type type : RealtimeManager.REMOTE_TYPES) {
+
+            Map<String, Object> children = getTypeReference(type).getChildrenStartingAt(FIELD_UPDATED_AT, mark + 1);
+            results.addAll(decodeAll(type, children));
+
+        }
+
+        return download(results);
+
+    }
+
+    @Override
+    public synchronized void putSegments(@NotNull String measureKey,
+                                         @NotNull List<String> segments) throws NotConnectedException {
+
+        beginRoundTrip(OPERATION_PUT_SEGMENTS);
+
+        LocalRealtimeDatabase.Reference segmentsReference = userReference.child(CHILD_SEGMENTS).child(measureKey);
+        int storedSegments = readSegments(segmentsReference).size();
+
+        // resume after the segments stored by a previous upload.
+        for (int i = storedSegments ; i < segments.size() ; i++) {
+
+            segmentsReference.child(getSegmentKey(i)).setValue(segments.get(i));
+            metrics.addBytesUp(segments.get(i).length());
+
+        }
+
+        save();
+
+    }
+
+    @NotNull
+    @Override
+    public synchronized List<String> getSegments(@NotNull String measureKey) throws NotConnectedException {
+
+        beginRoundTrip(OPERATION_GET_SEGMENTS);
+        return download(readSegments(userReference.child(CHILD_SEGMENTS).child(measureKey)));
+
+    }
+
+    @Override
+    public synchronized boolean commitBatch(@NotNull RealtimeBatch batch) throws NotConnectedException {
+
+        beginRoundTrip(OPERATION_COMMIT_BATCH);
+
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        Map<String, Object> updates = batch.getUserUpdates();
+
+        metrics.addBytesUp(SyncMetrics.estimateBytes(updates));
+        userReference.updateChildren(updates);
+        save();
+
+        return true;
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    /**
+     * Simulate a round trip to the remote database: the configured latency
+     * is waited and recorded, so the metrics are the same on every run.
+     *
+     * @param operation The not null name of the operation.
+     * @throws NotConnectedException Invoked if the store is not available.
+     */
+    private void beginRoundTrip(@NotNull String operation) throws NotConnectedException {
+
+        if (!available) {
+
+            metrics.recordOperation(operation, 0, false);
+            throw new NotConnectedException();
+
+        }
+
+        long latency = latencyMillis;
+
+        if (latency > 0) {
+
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException interruptedEx) {
+
+                Thread.currentThread().interrupt();
+                throw new NotConnectedException();
+
+            }
+
+        }
+
+        metrics.recordOperation(operation, latency, true);
+
+    }
+
+    /**
+     * @param result The not null result of a read.
+     * @param <T> The result type.
+     * @return The same result, after its size has been added to the downloaded bytes.
+     */
+    @NotNull
+    private <T> T download(@NotNull T result) {
+
+        metrics.addBytesDown(SyncMetrics.estimateBytes(result));
+        return result;
+
+    }
+
+    /**
+     * Decode the raw measurements like the realtime manager does:
+     * the measurements that cannot be decoded are ignored.
+     *
+     * @param type The not null Type of the measurements.
+     * @param children The not null raw measurements by key.
+     * @return The not null list of the decoded measurements, in key order.
+     */
+    @NotNull
+    private static List<RealtimeMeasure> decodeAll(@NotNull Type type, @NotNull Map<?, ?> children) {
+
+        List<RealtimeMeasure> measurements = new ArrayList<>(children.size());
+
+        for (Map.Entry<?, ?> entry : children.entrySet()) {
+
+            RealtimeMeasure measure = RealtimeDecoder.decode(entry.getValue(), getMeasureClass(type));
+
+            if (measure == null) {
+                continue;
+            }
+
+            measure.setUuid(entry.getKey().toString());
+
+            if (measure instanceof RealtimeMagnetometer) {
+
+                try {
+                    MagnetometerCodec.decode((RealtimeMagnetometer) measure);
+                } catch (IllegalArgumentException illegalArgumentEx) {
+                    continue;
+                }
+
+            }
+
+            measurements.add(measure);
+
+        }
+
+        return measurements;
+
+    }
+
+    /**
+     * @param segmentsReference The not null reference of the segments of a measure.
+     * @return The not null segments, in order.
+     */
+    @NotNull
+    private static List<String> readSegments(@NotNull LocalRealtimeDatabase.Reference segmentsReference) {
+
+        Object segmentsNode = segmentsReference.get();
+        List<String> segments = new ArrayList<>();
+
+        if (!(segmentsNode instanceof Map)) {
+            return segments;
+        }
+
+        Map<?, ?> segmentsByKey = (Map<?, ?>) segmentsNode;
+
+        // the stored segments are contiguous, an interrupted upload stops at a segment.
+        for (int i = 0 ; segmentsByKey.get(getSegmentKey(i)) instanceof String ; i++) {
+            segments.add((String) segmentsByKey.get(getSegmentKey(i)));
+        }
+
+        return segments;
+
+    }
+
+    @NotNull
+    private LocalRealtimeDatabase.Reference getTypeReference(@NotNull Type type) {
+        return userReference.child(CHILD_MEASUREMENTS).child(getTypeChildName(type));
+    }
+
+    @NotNull
+    private static String getSegmentKey(int index) {
+        return String.format(Locale.ROOT, SEGMENT_KEY_FORMAT, index);
+    }
+
+    @NotNull
+    private static String getTypeChildName(@NotNull Type type) {
+
+        switch (type) {
+            case RULER:        return CHILD_RULERS;
+            case MAGNETOMETER: return CHILD_MAGNETOMETERS;
+            case BAROMETER:    return CHILD_BAROMETERS;
+            default: throw new IllegalArgumentException("The type " + type + " is not a remote one");
+        }
+
+    }
+
+    @NotNull
+    private static Class<? extends RealtimeMeasure> getMeasureClass(@NotNull Type type) {
+
+        switch (type) {
+            case RULER:        return RealtimeRuler.class;
+            case MAGNETOMETER: return RealtimeMagnetometer.class;
+            case BAROMETER:    return RealtimeBarometer.class;
+            default: throw new IllegalArgumentException("The type " + type + " is not a remote one");
+        }
+
+    }
+
+    private void load(@NotNull File file) throws IOException {
+
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            database.getReference().setValue(JsonParser.parseReader(reader));
+        }
+
+    }
+
+    private void save() {
+
+        if (file == null) {
+            return;
+        }
+
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            GSON.toJson(database.getReference().get(), writer);
+        } catch (IOException ioEx) {
+            throw new IllegalStateException("Cannot save the store file", ioEx);
+        }
+
+    }
+
+}
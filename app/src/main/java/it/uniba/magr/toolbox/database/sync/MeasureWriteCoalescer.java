@@ -0,0 +1,518 @@
+package it.uniba.magr.toolbox.database.sync;
+
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import it.uniba.magr.toolbox.database.realtime.MeasureDigest;
+import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
+import it.uniba.magr.toolbox.database.realtime.RealtimeBatch;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+import it.uniba.magr.toolbox.database.sqlite.SqliteManager;
+import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
+import it.uniba.magr.toolbox.database.sqlite.bean.Outbox;
+import it.uniba.magr.toolbox.database.sqlite.bean.OutboxOperation;
+import it.uniba.magr.toolbox.database.sqlite.dao.MeasurementsDao;
+import it.uniba.magr.toolbox.database.sqlite.dao.OutboxDao;
+import lombok.ToString;
+
+/**
+ * The write layer of the interactive edits of the measurements.
+ *
+ * <p>
+ *     The reorders and the metadata edits are kept in memory for a short window,
+ *     the changes of the same measure are merged and the latest value wins.
+ *     When the window expires, all the changes are saved with a single sqlite
+ *     transaction, that also queues the edits into the outbox. Then the edits
+ *     are pushed with a single remote batch and dequeued. The reorders are local only.
+ *     If the remote database cannot be reached, the queued edits are pushed by the sync engine.
+ * </p>
+ */
+public class MeasureWriteCoalescer {
+
+    private static final String LOG_TAG = "WRITE-COALESCER";
+
+    /**
+     * The time waited after the latest change before flushing.
+     */
+    private static final long WINDOW_MILLIS = 500L;
+
+    /**
+     * The max time waited for the last flush when the coalescer is stopped.
+     */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2_000L;
+
+    @NotNull
+    private final SqliteManager sqliteManager;
+
+    @NotNull
+    private final RemoteStore remoteStore;
+
+    /**
+     * The single thread where the flushes are executed.
+     */
+    @NotNull
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * The pending changes by measure id, in arrival order.
+     */
+    @NotNull
+    private Map<Integer, PendingWrite> pendingWrites = new LinkedHashMap<>();
+
+    /**
+     * The future completed by the next flush.
+     */
+    @NotNull
+    private CompletableFuture<Void> nextFlush = new CompletableFuture<>();
+
+    /**
+     * The scheduled flush, null if there isn't one.
+     */
+    @Nullable
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * True if the remote database must not be reached, the edits are queued into the outbox.
+     */
+    private volatile boolean localOnly;
+
+    public MeasureWriteCoalescer(@NotNull SqliteManager sqliteManager, @NotNull RemoteStore remoteStore) {
+
+        this.sqliteManager = sqliteManager;
+        this.remoteStore = remoteStore;
+
+    }
+
+    //
+    // PUBLIC METHODS
+    //
+
+    /**
+     * Change the card order of a measure.
+     *
+     * @param measureId The measure id.
+     * @param cardOrder The new card order.
+     * @return The not null future completed when the change is saved locally.
+     */
+    @NotNull
+    public synchronized CompletableFuture<Void> reorder(int measureId, int cardOrder) {
+
+        PendingWrite pendingWrite = getPendingWrite(measureId);
+        pendingWrite.cardOrder = cardOrder;
+
+        return scheduleFlush();
+
+    }
+
+    /**
+     * Change the title and the description of a measure.
+     *
+     * @param measureId The measure id.
+     * @param title The not null title.
+     * @param description The not null description.
+     * @return The not null future completed when the change is saved locally.
+     */
+    @NotNull
+    public synchronized CompletableFuture<Void> edit(int measureId,
+                                                     @NotNull String title,
+                                                     @NotNull String description) {
+
+        PendingWrite pendingWrite = getPendingWrite(measureId);
+
+        pendingWrite.title = title;
+        pendingWrite.description = description;
+
+        return scheduleFlush();
+
+    }
+
+    /**
+     * Stop the coalescer. The pending changes are saved locally
+     * and the edits are queued into the outbox.
+     *
+     * @return True if the last flush has been completed in time.
+     */
+    public boolean shutdown() {
+
+        localOnly = true;
+
+        synchronized (this) {
+
+            if (executor.isShutdown()) {
+                return executor.isTerminated();
+            }
+
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+            }
+
+            executor.execute(this :: flush);
+            executor.shutdown();
+
+        }
+
+        try {
+
+            if (executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+
+            Log.w(LOG_TAG, "The pending writes have not been flushed in time");
+
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+        }
+
+        return false;
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    @NotNull
+    private PendingWrite getPendingWrite(int measureId) {
+        return pendingWrites.computeIfAbsent(measureId, PendingWrite :: new);
+    }
+
+    /**
+     * Postpone the pending flush, so a burst of changes is merged into a single flush.
+     *
+     * @return The not null future completed by the next flush.
+     */
+    @NotNull
+    private CompletableFuture<Void> scheduleFlush() {
+
+        if (executor.isShutdown()) {
+
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("The write coalescer is stopped"));
+
+            return future;
+
+        }
+
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+        }
+
+        scheduledFlush = executor.schedule(this :: flush, WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        return nextFlush;
+
+    }
+
+    /**
+     * Save the pending changes locally, then push the queued edits.
+     * The future of the flush is completed when the changes are saved locally.
+     */
+    private void flush() {
+
+        List<PendingWrite> writes;
+        CompletableFuture<Void> flushFuture;
+
+        synchronized (this) {
+
+            writes = new ArrayList<>(pendingWrites.values());
+            flushFuture = nextFlush;
+
+            pendingWrites = new LinkedHashMap<>();
+            nextFlush = new CompletableFuture<>();
+            scheduledFlush = null;
+
+        }
+
+        if (writes.isEmpty()) {
+
+            flushFuture.complete(null);
+            return;
+
+        }
+
+        List<QueuedEdit> queuedEdits;
+
+        try {
+
+            queuedEdits = writeLocal(writes);
+            flushFuture.complete(null);
+
+        } catch (RuntimeException runtimeEx) {
+
+            Log.e(LOG_TAG, "Cannot save the pending writes", runtimeEx);
+            flushFuture.completeExceptionally(runtimeEx);
+
+            return;
+
+        }
+
+        if (localOnly || queuedEdits.isEmpty()) {
+            return;
+        }
+
+        try {
+
+            List<QueuedEdit> pushedEdits = writeRemote(queuedEdits);
+
+            if (!pushedEdits.isEmpty()) {
+                sqliteManager.runInTransaction(() -> applyPushedEdits(pushedEdits));
+            }
+
+        } catch (RuntimeException runtimeEx) {
+            // the edits are still queued into the outbox, the sync engine pushes them.
+            Log.w(LOG_TAG, "Cannot push the queued edits", runtimeEx);
+        }
+
+    }
+
+    /**
+     * Apply the changes to the local measurements with a single transaction.
+     * The edits are queued into the outbox and their content digest is cleared,
+     * so they are never kept only in memory while they are pushed.
+     *
+     * @param writes The not null list of the pending changes.
+     * @return The not null list of the queued edits that the flush can push.
+     *         The measurements with other pending operations or without a known
+     *         remote key are pushed by the sync engine.
+     */
+    @NotNull
+    private List<QueuedEdit> writeLocal(@NotNull List<PendingWrite> writes) {
+
+        MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
+        OutboxDao outboxDao = sqliteManager.outboxDao();
+
+        List<QueuedEdit> queuedEdits = new ArrayList<>();
+
+        sqliteManager.runInTransaction(() -> {
+
+            List<Measure> measurements = new ArrayList<>(writes.size());
+
+            for (PendingWrite write : writes) {
+
+                Measure measure = measurementsDao.getMeasure(write.measureId);
+
+                if (measure == null) {
+                    continue;
+                }
+
+                if (write.cardOrder != null) {
+                    measure.setCardOrder(write.cardOrder);
+                }
+
+                if (write.isEdit()) {
+
+                    assert write.title != null && write.description != null;
+
+                    measure.setTitle(write.title);
+                    measure.setDescription(write.description);
+                    measure.setFirebaseSync(false);
+                    measure.setDigest("");
+
+                    boolean otherOperations = !outboxDao.getOperations(write.measureId).isEmpty();
+                    outboxDao.enqueue(write.measureId, OutboxOperation.UPDATE);
+
+                    // the remote key of an unmapped measure is not known yet, the sync engine finds it.
+                    if (!otherOperations && !measure.getUuid().startsWith(SqliteManager.UNMAPPED_UUID_PREFIX)) {
+
+                        Outbox operation = outboxDao.getOperations(write.measureId).get(0);
+                        queuedEdits.add(new QueuedEdit(measure, operation));
+
+                    }
+
+                }
+
+                measurements.add(measure);
+
+            }
+
+            measurementsDao.updateMeasurements(measurements.toArray(new Measure[0]));
+
+        });
+
+        return queuedEdits;
+
+    }
+
+    /**
+     * Send the queued edits with their new content digests.
+     *
+     * <p>
+     *     The digests are computed from the stored payload digests, so an edit
+     *     doesn't read the payload. A missing payload digest is computed once
+     *     and kept by {@link #applyPushedEdits(List)}.
+     * </p>
+     *
+     * @param queuedEdits The not null list of the queued edits.
+     * @return The not null list of the edits saved remotely, empty if they have not been saved.
+     */
+    @NotNull
+    private List<QueuedEdit> writeRemote(@NotNull List<QueuedEdit> queuedEdits) {
+
+        List<QueuedEdit> pushedEdits = new ArrayList<>(queuedEdits.size());
+        RealtimeBatch batch = new RealtimeBatch();
+
+        for (QueuedEdit edit : queuedEdits) {
+
+            Measure measure = edit.measure;
+            String payloadDigest = measure.getPayloadDigest();
+
+            if (payloadDigest.isEmpty()) {
+
+                RealtimeMeasure realtimeMeasure = SyncEngine.toRealtimeMeasure(sqliteManager, measure);
+
+                if (realtimeMeasure == null) {
+                    continue;
+                }
+
+                payloadDigest = MeasureDigest.ofPayload(realtimeMeasure);
+
+            }
+
+            edit.payloadDigest = payloadDigest;
+            edit.digest = MeasureDigest.of(measure.getType(), measure.getTitle(),
+                    measure.getDescription(), payloadDigest);
+
+            batch.updateMeasure(measure.getType(), measure.getUuid(),
+                    measure.getTitle(), measure.getDescription(), edit.digest);
+            pushedEdits.add(edit);
+
+        }
+
+        if (batch.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        try {
+            return remoteStore.commitBatch(batch) ? pushedEdits : Collections.emptyList();
+        } catch (NotConnectedException notConnectedEx) {
+            return Collections.emptyList();
+        }
+
+    }
+
+    /**
+     * Dequeue the pushed edits and keep their digests. It must be executed into a transaction.
+     *
+     * <p>
+     *     The outbox may have been changed while the batch was sent:
+     *     an operation that is no longer queued has been pushed by the sync engine
+     *     or replaced by a delete, and its measure is left as it is.
+     *     A measure edited meanwhile keeps an update queued.
+     * </p>
+     *
+     * @param pushedEdits The not null list of the edits saved remotely.
+     */
+    private void applyPushedEdits(@NotNull List<QueuedEdit> pushedEdits) {
+
+        MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
+        OutboxDao outboxDao = sqliteManager.outboxDao();
+
+        for (QueuedEdit edit : pushedEdits) {
+
+            int measureId = edit.measure.getId();
+            boolean queued = false;
+
+            for (Outbox outbox : outboxDao.getOperations(measureId)) {
+                queued |= outbox.getId() == edit.operation.getId();
+            }
+
+            Measure measure = measurementsDao.getMeasure(measureId);
+
+            if (!queued || measure == null || measure.isDeleted()) {
+                continue;
+            }
+
+            assert edit.payloadDigest != null && edit.digest != null;
+
+            outboxDao.removeOperations(edit.operation);
+            measure.setPayloadDigest(edit.payloadDigest);
+
+            if (edit.measure.getTitle().equals(measure.getTitle())
+                    && edit.measure.getDescription().equals(measure.getDescription())) {
+
+                measure.setDigest(edit.digest);
+                measure.setFirebaseSync(true);
+
+            } else {
+                outboxDao.enqueue(measureId, OutboxOperation.UPDATE);
+            }
+
+            measurementsDao.updateMeasure(measure);
+
+        }
+
+    }
+
+    /**
+     * The merged changes of a measure, the null fields are not changed.
+     */
+    @ToString
+    private static class PendingWrite {
+
+        private final int measureId;
+
+        @Nullable
+        private Integer cardOrder;
+
+        @Nullable
+        private String title;
+
+        @Nullable
+        private String description;
+
+        private PendingWrite(int measureId) {
+            this.measureId = measureId;
+        }
+
+        private boolean isEdit() {
+            return title != null;
+        }
+
+    }
+
+    /**
+     * An edit saved locally and queued into the outbox, with the digests of its push.
+     */
+    @ToString
+    private static class QueuedEdit {
+
+        /**
+         * The measure as it has been saved by the flush.
+         */
+        @NotNull
+        private final Measure measure;
+
+        /**
+         * The queued update of the measure.
+         */
+        @NotNull
+        private final Outbox operation;
+
+        @Nullable
+        private String payloadDigest;
+
+        @Nullable
+        private String digest;
+
+        private QueuedEdit(@NotNull Measure measure, @NotNull Outbox operation) {
+
+            this.measure = measure;
+            this.operation = operation;
+
+        }
+
+    }
+
+}
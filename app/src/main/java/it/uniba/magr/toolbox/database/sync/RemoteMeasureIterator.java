@@ -0,0 +1,123 @@
+package it.uniba.magr.toolbox.database.sync;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import it.uniba.magr.toolbox.database.realtime.MeasurePage;
+import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+import it.uniba.magr.toolbox.database.sqlite.bean.Type;
+
+/**
+ * A streaming iterator of the remote measurements.
+ *
+ * <p>
+ *     The measurements are requested one page at a time, type after type,
+ *     so only a page is kept in memory. The methods are blocking and they
+ *     fail if the remote store cannot be reached while a page is requested.
+ * </p>
+ */
+public class RemoteMeasureIterator {
+
+    @NotNull
+    private final RemoteStore remoteStore;
+
+    @NotNull
+    private final Iterator<Type> types;
+
+    private final int pageSize;
+
+    /**
+     * The type of the current page, null before the first page.
+     */
+    @Nullable
+    private Type currentType;
+
+    /**
+     * The cursor of the next page of the current type.
+     */
+    @Nullable
+    private String cursor;
+
+    /**
+     * The measurements of the current page that have not been returned yet.
+     */
+    @NotNull
+    private Iterator<RealtimeMeasure> page = Collections.emptyIterator();
+
+    /**
+     * True if the current page is the last one of its type.
+     */
+    private boolean lastPage = true;
+
+    /**
+     * @param remoteStore The not null remote store.
+     * @param types The not null list of the types to iterate, in order.
+     * @param pageSize The max number of measurements of a page, greater than 0.
+     */
+    public RemoteMeasureIterator(@NotNull RemoteStore remoteStore, @NotNull List<Type> types, int pageSize) {
+
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be greater than 0");
+        }
+
+        this.remoteStore = remoteStore;
+        this.types = types.iterator();
+        this.pageSize = pageSize;
+
+    }
+
+    /**
+     * @return True if there is another measure, the next page is requested if needed.
+     * @throws NotConnectedException Invoked if the remote store cannot be reached.
+     */
+    public boolean hasNext() throws NotConnectedException {
+
+        while (!page.hasNext()) {
+
+            if (lastPage) {
+
+                if (!types.hasNext()) {
+                    return false;
+                }
+
+                currentType = types.next();
+                cursor = null;
+
+            }
+
+            assert currentType != null;
+            MeasurePage measurePage = remoteStore.getMeasurementsPage(currentType, cursor, pageSize);
+
+            page = measurePage.getMeasurements().iterator();
+            cursor = measurePage.getNextCursor();
+            lastPage = measurePage.isLast();
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * @return The not null next measure.
+     * @throws NotConnectedException Invoked if the remote store cannot be reached.
+     * @throws NoSuchElementException Invoked if there are no more measurements.
+     */
+    @NotNull
+    public RealtimeMeasure next() throws NotConnectedException {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return page.next();
+
+    }
+
+}
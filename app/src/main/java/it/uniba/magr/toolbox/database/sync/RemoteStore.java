@@ -0,0 +1,106 @@
+package it.uniba.magr.toolbox.database.sync;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+import it.uniba.magr.toolbox.database.realtime.MeasurePage;
+import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
+import it.uniba.magr.toolbox.database.realtime.RealtimeBatch;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+import it.uniba.magr.toolbox.database.sqlite.bean.Type;
+
+/**
+ * The remote side of the synchronization.
+ * The methods are blocking and they are called from the sync thread.
+ */
+public interface RemoteStore {
+
+    /**
+     * @return True if the store can be reached now.
+     */
+    boolean isAvailable();
+
+    /**
+     * @return The id of the remote user, null if there isn't one.
+     */
+    @Nullable
+    String getUserId();
+
+    /**
+     * Prepare the remote data before a synchronization, like a layout migration.
+     *
+     * @throws NotConnectedException Invoked if the store cannot be reached.
+     */
+    void prepare() throws NotConnectedException;
+
+    /**
+     * @return A not null list of all the remote measurements.
+     * @throws NotConnectedException Invoked if the store cannot be reached.
+     */
+    @NotNull
+    List<RealtimeMeasure> getAllMeasurements() throws NotConnectedException;
+
+    /**
+     * @return The current time of the store, in milliseconds. It is comparable
+     *         with the server times of the written measurements.
+     * @throws NotConnectedException Invoked if the store cannot be reached.
+     */
+    long getServerTime() throws NotConnectedException;
+
+    /**
+     * @return The not null map of the content digests of the remote measurements by key.
+     *         The measurements written before the digests are missing.
+     * @throws NotConnectedException Invoked if the store cannot be reached.
+     */
+    @NotNull
+    Map<String, String> getDigests() throws NotConnectedException;
+
+    /**
+     * @param type The not null Type of the measurements.
+     * @param cursor The key of the last measure of the previous page, null for the first page.
+     * @param pageSize The max number of measurements of the page, greater than 0.
+     * @return The not null page of the measurements of the type, sorted by key.
+     * @throws NotConnectedException Invoked if the store cannot be reached.
+     */
+    @NotNull
+    MeasurePage getMeasurementsPage(@NotNull Type type,
+                                    @Nullable String cursor,
+                                    int pageSize) throws NotConnectedException;
+
+    /**
+     * @param mark The server time of the latest known write, in milliseconds.
+     * @return A not null list of the measurements written after the mark.
+     * @throws NotConnectedException Invoked if the store cannot be reached.
+     */
+    @NotNull
+    List<RealtimeMeasure> getMeasurementsUpdatedSince(long mark) throws NotConnectedException;
+
+    /**
+     * Upload the segments of a measure, before the measure itself.
+     * An interrupted upload resumes after the last stored segment.
+     *
+     * @param measureKey The not null globally unique id of the measure.
+     * @param segments The not null segments of the measure, in order.
+     * @throws NotConnectedException Invoked if the store cannot be reached.
+     */
+    void putSegments(@NotNull String measureKey, @NotNull List<String> segments) throws NotConnectedException;
+
+    /**
+     * @param measureKey The not null globally unique id of the measure.
+     * @return The not null segments of the measure, in order.
+     * @throws NotConnectedException Invoked if the store cannot be reached.
+     */
+    @NotNull
+    List<String> getSegments(@NotNull String measureKey) throws NotConnectedException;
+
+    /**
+     * @param batch The not null batch to apply atomically.
+     * @return True if the batch has been applied.
+     * @throws NotConnectedException Invoked if the store cannot be reached.
+     */
+    boolean commitBatch(@NotNull RealtimeBatch batch) throws NotConnectedException;
+
+}
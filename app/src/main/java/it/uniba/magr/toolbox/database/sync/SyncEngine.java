@@ -0,0 +1,1200 @@
+package it.uniba.magr.toolbox.database.sync;
+
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import it.uniba.magr.toolbox.database.metrics.SyncMetrics;
+import it.uniba.magr.toolbox.database.realtime.LegacyLayout;
+import it.uniba.magr.toolbox.database.realtime.MagnetometerCodec;
+import it.uniba.magr.toolbox.database.realtime.MeasureDigest;
+import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
+import it.uniba.magr.toolbox.database.realtime.RealtimeBatch;
+import it.uniba.magr.toolbox.database.realtime.RealtimeManager;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeBarometer;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMagnetometer;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeRuler;
+import it.uniba.magr.toolbox.database.sqlite.SqliteManager;
+import it.uniba.magr.toolbox.database.sqlite.bean.Barometer;
+import it.uniba.magr.toolbox.database.sqlite.bean.MagnetometerSamples;
+import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
+import it.uniba.magr.toolbox.database.sqlite.bean.Outbox;
+import it.uniba.magr.toolbox.database.sqlite.bean.OutboxOperation;
+import it.uniba.magr.toolbox.database.sqlite.bean.Ruler;
+import it.uniba.magr.toolbox.database.sqlite.bean.Type;
+import it.uniba.magr.toolbox.database.sqlite.dao.BarometersDao;
+import it.uniba.magr.toolbox.database.sqlite.dao.MagnetometersDao;
+import it.uniba.magr.toolbox.database.sqlite.dao.MeasurementsDao;
+import it.uniba.magr.toolbox.database.sqlite.dao.OutboxDao;
+import it.uniba.magr.toolbox.database.sqlite.dao.RulersDao;
+
+/**
+ * The local and remote databases reconciliation.
+ *
+ * <p>
+ *     A synchronization gives their remote key to the measurements synchronized
+ *     before the unique ids, pushes the pending operations of the outbox and then
+ *     imports the remote measurements that are missing locally. It is executed
+ *     into a single background thread, so two synchronizations never overlap.
+ *     If the remote store cannot be reached, the synchronization is retried
+ *     with an exponential backoff.
+ * </p>
+ */
+public class SyncEngine {
+
+    private static final String LOG_TAG = "SYNC-ENGINE";
+
+    /**
+     * The delay of the first retry.
+     */
+    private static final long BACKOFF_BASE_MILLIS = 2_000L;
+
+    /**
+     * The max delay between two retries.
+     */
+    private static final long BACKOFF_MAX_MILLIS = 5 * 60_000L;
+
+    /**
+     * The number of remote measurements requested and imported at a time by the first pull,
+     * and looked up locally at a time by every pull.
+     */
+    private static final int PULL_PAGE_SIZE = 100;
+
+    /**
+     * The max time waited for the running synchronization when the engine is stopped.
+     */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2_000L;
+
+    /**
+     * The name of the synchronizations into the metrics.
+     */
+    private static final String OPERATION_SYNC = "sync";
+
+    @NotNull
+    private final SqliteManager sqliteManager;
+
+    @NotNull
+    private final RemoteStore remoteStore;
+
+    @NotNull
+    private final SyncState syncState;
+
+    @NotNull
+    private final SyncMetrics metrics;
+
+    /**
+     * The single thread where the synchronizations are executed.
+     */
+    @NotNull
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * The listeners notified at the end of each synchronization.
+     */
+    @NotNull
+    private final List<SyncListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The scheduled synchronization, null if there isn't one.
+     */
+    @Nullable
+    private ScheduledFuture<?> scheduledSync;
+
+    /**
+     * The number of consecutive failed synchronizations.
+     */
+    private int failedAttempts;
+
+    /**
+     * True while a synchronization is running, until its next one is scheduled.
+     */
+    private boolean running;
+
+    /**
+     * True if a synchronization has been requested while another one was running,
+     * the changes made meanwhile may not have been sent.
+     */
+    private boolean rerunRequested;
+
+    public SyncEngine(@NotNull SqliteManager sqliteManager,
+                      @NotNull RemoteStore remoteStore,
+                      @NotNull SyncState syncState,
+                      @NotNull SyncMetrics metrics) {
+
+        this.sqliteManager = sqliteManager;
+        this.remoteStore = remoteStore;
+        this.syncState = syncState;
+        this.metrics = metrics;
+
+    }
+
+    //
+    // PUBLIC METHODS
+    //
+
+    /**
+     * Request a synchronization as soon as possible.
+     * A retry waiting for its backoff is anticipated.
+     */
+    public void requestSync() {
+        requestSync(0L);
+    }
+
+    /**
+     * Request a synchronization after a delay. A pending synchronization is
+     * postponed, so a burst of requests is merged into a single synchronization.
+     * If a synchronization is running, another one is executed as soon as it ends.
+     *
+     * @param delayMillis The delay in milliseconds.
+     */
+    public synchronized void requestSync(long delayMillis) {
+
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        // the running synchronization is still not done when it schedules the next one.
+        if (running) {
+
+            rerunRequested = true;
+            return;
+
+        }
+
+        if (scheduledSync != null && !scheduledSync.isDone()) {
+            scheduledSync.cancel(false);
+        }
+
+        failedAttempts = 0;
+        scheduledSync = executor.schedule(this :: runSync, delayMillis, TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * @param listener The not null listener to add.
+     */
+    public void addListener(@NotNull SyncListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener The not null listener to remove.
+     */
+    public void removeListener(@NotNull SyncListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stop the engine and wait for the running synchronization,
+     * the scheduled ones and the retries are cancelled.
+     *
+     * @return True if the running synchronization has been completed in time.
+     */
+    public boolean shutdown() {
+
+        synchronized (this) {
+
+            // a delayed task would still be executed after the shutdown.
+            if (scheduledSync != null) {
+                scheduledSync.cancel(false);
+            }
+
+            rerunRequested = false;
+            executor.shutdown();
+
+        }
+
+        // the lock is released, the running synchronization needs it to end.
+        try {
+
+            if (executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+
+            Log.w(LOG_TAG, "The running sync has not been completed in time");
+
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+        }
+
+        return false;
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    /**
+     * Execute a synchronization and schedule its retry if it fails.
+     */
+    private void runSync() {
+
+        // the requests received before the start are satisfied by this synchronization.
+        synchronized (this) {
+
+            running = true;
+            rerunRequested = false;
+
+        }
+
+        long startNanos = System.nanoTime();
+        boolean localChanged;
+
+        try {
+
+            if (!remoteStore.isAvailable()) {
+                throw new NotConnectedException();
+            }
+
+            remoteStore.prepare();
+
+            mapLegacyMeasurements();
+            pushPendingOperations();
+            localChanged = pullRemoteMeasurements();
+
+        } catch (NotConnectedException notConnectedEx) {
+
+            Log.d(LOG_TAG, "Sync failed: " + notConnectedEx.getMessage());
+            recordSync(startNanos, false);
+            scheduleRetry();
+
+            return;
+
+        } catch (RuntimeException runtimeEx) {
+
+            Log.e(LOG_TAG, "Sync failed", runtimeEx);
+            recordSync(startNanos, false);
+            scheduleRetry();
+
+            return;
+
+        }
+
+        recordSync(startNanos, true);
+
+        synchronized (this) {
+            failedAttempts = 0;
+        }
+
+        for (SyncListener listener : listeners) {
+            listener.onSyncCompleted(localChanged);
+        }
+
+        scheduleRerun();
+
+    }
+
+    /**
+     * Schedule another synchronization if it has been requested while the current one was running.
+     *
+     * @return True if it has been scheduled.
+     */
+    private synchronized boolean scheduleRerun() {
+
+        running = false;
+
+        if (!rerunRequested || executor.isShutdown()) {
+            return false;
+        }
+
+        rerunRequested = false;
+        scheduledSync = executor.schedule(this :: runSync, 0L, TimeUnit.MILLISECONDS);
+
+        return true;
+
+    }
+
+    /**
+     * Schedule the next attempt with an exponential backoff.
+     * A synchronization requested meanwhile is not delayed by the backoff.
+     */
+    private synchronized void scheduleRetry() {
+
+        if (executor.isShutdown() || scheduleRerun()) {
+            return;
+        }
+
+        int exponent = Math.min(failedAttempts, 16);
+        long delay = Math.min(BACKOFF_BASE_MILLIS << exponent, BACKOFF_MAX_MILLIS);
+
+        failedAttempts++;
+        scheduledSync = executor.schedule(this :: runSync, delay, TimeUnit.MILLISECONDS);
+
+        metrics.recordRetry();
+
+    }
+
+    /**
+     * Record the latency and the result of a synchronization, with the
+     * number of operations still pending into the outbox.
+     *
+     * @param startNanos The start time of the synchronization.
+     * @param successful True if the synchronization has been completed.
+     */
+    private void recordSync(long startNanos, boolean successful) {
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        metrics.recordOperation(OPERATION_SYNC, millis, successful);
+
+        try {
+            metrics.setQueueDepth(sqliteManager.outboxDao().getPendingCount());
+        } catch (RuntimeException runtimeEx) {
+            Log.e(LOG_TAG, "Cannot read the outbox size", runtimeEx);
+        }
+
+    }
+
+    /**
+     * Give their remote key to the measurements that had already been synchronized
+     * when the unique ids were added, see {@link SqliteManager#UNMAPPED_UUID_PREFIX}.
+     *
+     * <p>
+     *     The remote measurements moved from the legacy layout are listed and each
+     *     of them is matched with a local measure of the same type, start date and
+     *     title. The remote keys that already belong to a local measure are skipped.
+     *     A local measure without a remote match is not found remotely: it gets a
+     *     random unique id and an update is queued, so the push uploads it.
+     * </p>
+     *
+     * @throws NotConnectedException Invoked if the remote store cannot be reached.
+     */
+    private void mapLegacyMeasurements() throws NotConnectedException {
+
+        MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
+        OutboxDao outboxDao = sqliteManager.outboxDao();
+
+        List<Measure> unmappedMeasurements = measurementsDao.getUnmappedMeasurements();
+
+        if (unmappedMeasurements.isEmpty() || remoteStore.getUserId() == null) {
+            return;
+        }
+
+        Map<String, List<Measure>> candidates = new HashMap<>();
+
+        for (Measure measure : unmappedMeasurements) {
+
+            String matchKey = getMatchKey(measure.getType(), measure.getStartDate(), measure.getTitle());
+            candidates.computeIfAbsent(matchKey, key -> new ArrayList<>()).add(measure);
+
+        }
+
+        List<RealtimeMeasure> legacyMeasurements = new ArrayList<>();
+        RemoteMeasureIterator iterator = new RemoteMeasureIterator(remoteStore,
+                RealtimeManager.REMOTE_TYPES, PULL_PAGE_SIZE);
+
+        while (iterator.hasNext()) {
+
+            RealtimeMeasure remoteMeasure = iterator.next();
+
+            if (remoteMeasure.getUuid() != null && LegacyLayout.isLegacyKey(remoteMeasure.getUuid())) {
+                legacyMeasurements.add(remoteMeasure);
+            }
+
+        }
+
+        Map<Integer, String> remoteKeys = new HashMap<>();
+
+        for (int i = 0 ; i < legacyMeasurements.size() ; i += PULL_PAGE_SIZE) {
+
+            List<RealtimeMeasure> page = legacyMeasurements.subList(i,
+                    Math.min(i + PULL_PAGE_SIZE, legacyMeasurements.size()));
+
+            List<String> pageKeys = new ArrayList<>(page.size());
+
+            for (RealtimeMeasure remoteMeasure : page) {
+                pageKeys.add(remoteMeasure.getUuid());
+            }
+
+            Set<String> mappedKeys = new HashSet<>(measurementsDao.getExistingUuids(pageKeys));
+
+            for (RealtimeMeasure remoteMeasure : page) {
+
+                if (mappedKeys.contains(remoteMeasure.getUuid())) {
+                    continue;
+                }
+
+                List<Measure> matches = candidates.get(getMatchKey(getType(remoteMeasure),
+                        remoteMeasure.getStartDate(), remoteMeasure.getTitle()));
+
+                if (matches != null && !matches.isEmpty()) {
+                    remoteKeys.put(matches.remove(0).getId(), remoteMeasure.getUuid());
+                }
+
+            }
+
+        }
+
+        sqliteManager.runInTransaction(() -> {
+
+            for (Measure unmappedMeasure : unmappedMeasurements) {
+
+                // read again, the measure may have been edited meanwhile.
+                Measure measure = measurementsDao.getMeasure(unmappedMeasure.getId());
+
+                if (measure == null || !measure.getUuid().equals(unmappedMeasure.getUuid())) {
+                    continue;
+                }
+
+                String remoteKey = remoteKeys.get(measure.getId());
+
+                if (remoteKey != null) {
+                    measure.setUuid(remoteKey);
+                } else {
+
+                    measure.setUuid(UUID.randomUUID().toString());
+                    measure.setFirebaseSync(false);
+
+                    if (!measure.isDeleted()) {
+                        outboxDao.enqueue(measure.getId(), OutboxOperation.UPDATE);
+                    }
+
+                }
+
+                measurementsDao.updateMeasure(measure);
+
+            }
+
+        });
+
+    }
+
+    /**
+     * Send the pending operations of the outbox with a single batch, then
+     * update the local flags and the outbox with a single sqlite transaction.
+     *
+     * <p>
+     *     The content digests of the local measurements are compared with the
+     *     digests manifest of the remote store: a measure with the same digest
+     *     is not uploaded again, a measure that exists with another digest only
+     *     has its title and description updated.
+     * </p>
+     *
+     * @throws NotConnectedException Invoked if the remote store cannot be reached.
+     */
+    private void pushPendingOperations() throws NotConnectedException {
+
+        MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
+        OutboxDao outboxDao = sqliteManager.outboxDao();
+
+        List<Outbox> pendingOperations = outboxDao.getPendingOperations();
+
+        if (pendingOperations.isEmpty()) {
+            return;
+        }
+
+        RealtimeBatch batch = new RealtimeBatch();
+        Map<String, String> remoteDigests = remoteStore.getDigests();
+        Map<Integer, Measure> pushedMeasurements = new HashMap<>();
+
+        for (Outbox outbox : pendingOperations) {
+
+            Measure measure = measurementsDao.getMeasure(outbox.getMeasureId());
+
+            if (measure == null) {
+                continue;
+            }
+
+            String measureKey = measure.getUuid();
+
+            switch (outbox.getOperation()) {
+
+                case DELETE:  batch.removeMeasure(measureKey); break;
+                case CREATE:
+                case UPDATE:
+
+                    String digest = measure.getDigest();
+                    String payloadDigest = measure.getPayloadDigest();
+                    RealtimeMeasure realtimeMeasure = null;
+
+                    // an empty payload digest is computed from the payload, that is loaded only once.
+                    if (digest.isEmpty() && payloadDigest.isEmpty()) {
+
+                        realtimeMeasure = toRealtimeMeasure(sqliteManager, measure);
+
+                        if (realtimeMeasure == null) {
+                            break;
+                        }
+
+                        payloadDigest = MeasureDigest.ofPayload(realtimeMeasure);
+
+                    }
+
+                    if (digest.isEmpty()) {
+                        digest = MeasureDigest.of(measure.getType(),
+                                measure.getTitle(), measure.getDescription(), payloadDigest);
+                    }
+
+                    measure.setDigest(digest);
+                    measure.setPayloadDigest(payloadDigest);
+                    pushedMeasurements.put(measure.getId(), measure);
+
+                    String remoteDigest = remoteDigests.get(measureKey);
+
+                    if (digest.equals(remoteDigest)) {
+                        break;
+                    }
+
+                    if (remoteDigest != null) {
+
+                        batch.updateMeasure(measure.getType(), measureKey,
+                                measure.getTitle(), measure.getDescription(), digest);
+
+                        break;
+
+                    }
+
+                    if (realtimeMeasure == null) {
+                        realtimeMeasure = toRealtimeMeasure(sqliteManager, measure);
+                    }
+
+                    if (realtimeMeasure == null) {
+                        break;
+                    }
+
+                    realtimeMeasure.setDigest(digest);
+
+                    if (realtimeMeasure instanceof RealtimeMagnetometer) {
+
+                        List<String> segments = MagnetometerCodec.encode((RealtimeMagnetometer) realtimeMeasure);
+
+                        // the segments are uploaded before the measure that refers to them.
+                        if (!segments.isEmpty()) {
+                            remoteStore.putSegments(measureKey, segments);
+                        }
+
+                    }
+
+                    batch.addMeasure(realtimeMeasure);
+
+                    break;
+
+                default:
+                case REORDER: break;
+
+            }
+
+        }
+
+        // the pending operations may be all unchanged measurements.
+        if (!batch.isEmpty() && !remoteStore.commitBatch(batch)) {
+            throw new NotConnectedException();
+        }
+
+        sqliteManager.runInTransaction(() -> applyPushedOperations(pendingOperations, pushedMeasurements));
+
+    }
+
+    /**
+     * Update the local flags and the outbox after a push. It must be executed into a transaction.
+     *
+     * <p>
+     *     The outbox may have been changed while the batch was sent: the pushed
+     *     operations are compared with the queued ones by row id.
+     * </p>
+     * <ul>
+     *     <li>only the pushed operations that are still queued are removed,
+     *     a delete queued meanwhile is pushed by the next sync;</li>
+     *     <li>a measure is removed only if its delete has been pushed;</li>
+     *     <li>a measure edited meanwhile keeps an update queued, the queue merged the edit.</li>
+     * </ul>
+     *
+     * @param pushedOperations The not null list of the pushed operations.
+     * @param pushedMeasurements The not null map of the pushed measurements, by id.
+     */
+    private void applyPushedOperations(@NotNull List<Outbox> pushedOperations,
+                                       @NotNull Map<Integer, Measure> pushedMeasurements) {
+
+        MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
+        OutboxDao outboxDao = sqliteManager.outboxDao();
+
+        Map<Integer, List<Outbox>> operationsByMeasure = new LinkedHashMap<>();
+
+        for (Outbox outbox : pushedOperations) {
+            operationsByMeasure.computeIfAbsent(outbox.getMeasureId(), key -> new ArrayList<>()).add(outbox);
+        }
+
+        for (Map.Entry<Integer, List<Outbox>> entry : operationsByMeasure.entrySet()) {
+
+            int measureId = entry.getKey();
+            Set<Integer> queuedIds = new HashSet<>();
+
+            for (Outbox queued : outboxDao.getOperations(measureId)) {
+                queuedIds.add(queued.getId());
+            }
+
+            List<Outbox> removedOperations = new ArrayList<>();
+            boolean deletePushed = false;
+
+            for (Outbox outbox : entry.getValue()) {
+
+                if (queuedIds.contains(outbox.getId())) {
+                    removedOperations.add(outbox);
+                }
+
+                if (outbox.getOperation() == OutboxOperation.DELETE) {
+                    deletePushed = true;
+                }
+
+            }
+
+            outboxDao.removeOperations(removedOperations.toArray(new Outbox[0]));
+            Measure measure = measurementsDao.getMeasure(measureId);
+
+            if (measure == null || measure.isDeleted()) {
+
+                if (measure != null && deletePushed) {
+                    measurementsDao.removeMeasure(measure);
+                }
+
+                continue;
+
+            }
+
+            Measure pushedMeasure = pushedMeasurements.get(measureId);
+
+            if (pushedMeasure == null) {
+
+                measure.setFirebaseSync(true);
+                measurementsDao.updateMeasure(measure);
+
+                continue;
+
+            }
+
+            // the payload is never edited, so its digest is always kept.
+            measure.setPayloadDigest(pushedMeasure.getPayloadDigest());
+
+            if (pushedMeasure.getTitle().equals(measure.getTitle())
+                    && pushedMeasure.getDescription().equals(measure.getDescription())) {
+
+                measure.setDigest(pushedMeasure.getDigest());
+                measure.setFirebaseSync(true);
+
+            } else {
+
+                measure.setDigest("");
+                measure.setFirebaseSync(false);
+                outboxDao.enqueue(measureId, OutboxOperation.UPDATE);
+
+            }
+
+            measurementsDao.updateMeasure(measure);
+
+        }
+
+    }
+
+    /**
+     * Import the remote measurements that are not saved locally
+     * and apply the remote edits of the saved ones.
+     *
+     * <p>
+     *     Only the measurements written after the high-water mark of the user are
+     *     downloaded. The first pull streams all of them one page at a time and
+     *     imports each page with its own transaction, so it runs in bounded memory
+     *     and an interrupted pull resumes by skipping the imported measurements.
+     *     The pulled measurements are looked up locally one page at a time, by key.
+     *     The mark is the server time of the latest pulled write and it is moved
+     *     when all the pulled measurements have been imported. It is never moved
+     *     past a measure that cannot be imported, so the next sync retries it.
+     * </p>
+     *
+     * <p>
+     *     A saved measure whose digest differs from the pulled one has been edited
+     *     by another device, see {@link #applyRemoteEdits(List)}.
+     * </p>
+     *
+     * @return True if the local database has been changed.
+     * @throws NotConnectedException Invoked if the remote store cannot be reached.
+     */
+    private boolean pullRemoteMeasurements() throws NotConnectedException {
+
+        String userId = remoteStore.getUserId();
+
+        if (userId == null) {
+            return false;
+        }
+
+        long mark = syncState.getHighWaterMark(userId);
+
+        // read before the first pull, so the writes made meanwhile are pulled again.
+        long serverTime = mark > 0 ? 0 : remoteStore.getServerTime();
+
+        List<RealtimeMeasure> pulledMeasurements = new ArrayList<>();
+        List<RealtimeMeasure> missingMeasurements = new ArrayList<>();
+        List<RealtimeMeasure> editedMeasurements = new ArrayList<>();
+        long latestMark = mark;
+        long earliestFailure = Long.MAX_VALUE;
+        boolean localChanged = false;
+
+        if (mark > 0) {
+
+            for (RealtimeMeasure remoteMeasure : remoteStore.getMeasurementsUpdatedSince(mark)) {
+
+                latestMark = Math.max(latestMark, remoteMeasure.getUpdatedAtMillis());
+                pulledMeasurements.add(remoteMeasure);
+
+                if (pulledMeasurements.size() >= PULL_PAGE_SIZE) {
+
+                    missingMeasurements.addAll(getMissingMeasurements(pulledMeasurements, editedMeasurements));
+                    pulledMeasurements.clear();
+
+                }
+
+            }
+
+        } else {
+
+            RemoteMeasureIterator iterator = new RemoteMeasureIterator(remoteStore,
+                    RealtimeManager.REMOTE_TYPES, PULL_PAGE_SIZE);
+
+            while (iterator.hasNext()) {
+
+                RealtimeMeasure remoteMeasure = iterator.next();
+
+                latestMark = Math.max(latestMark, remoteMeasure.getUpdatedAtMillis());
+                pulledMeasurements.add(remoteMeasure);
+
+                if (pulledMeasurements.size() < PULL_PAGE_SIZE) {
+                    continue;
+                }
+
+                missingMeasurements.addAll(getMissingMeasurements(pulledMeasurements, editedMeasurements));
+                pulledMeasurements.clear();
+
+                if (missingMeasurements.size() >= PULL_PAGE_SIZE) {
+
+                    earliestFailure = Math.min(earliestFailure, importMeasurements(missingMeasurements));
+                    missingMeasurements.clear();
+
+                    localChanged = true;
+
+                }
+
+                if (editedMeasurements.size() >= PULL_PAGE_SIZE) {
+
+                    sqliteManager.runInTransaction(() -> applyRemoteEdits(editedMeasurements));
+                    editedMeasurements.clear();
+
+                    localChanged = true;
+
+                }
+
+            }
+
+        }
+
+        missingMeasurements.addAll(getMissingMeasurements(pulledMeasurements, editedMeasurements));
+
+        if (!missingMeasurements.isEmpty()) {
+
+            earliestFailure = Math.min(earliestFailure, importMeasurements(missingMeasurements));
+            localChanged = true;
+
+        }
+
+        if (!editedMeasurements.isEmpty()) {
+
+            sqliteManager.runInTransaction(() -> applyRemoteEdits(editedMeasurements));
+            localChanged = true;
+
+        }
+
+        // the measurements written before the server times have none:
+        // the mark starts from now, otherwise every sync would pull all of them again.
+        if (latestMark == 0) {
+            latestMark = serverTime;
+        }
+
+        // the measurements that have not been imported are pulled again by the next sync.
+        if (earliestFailure != Long.MAX_VALUE) {
+            latestMark = Math.min(latestMark, Math.max(0, earliestFailure - 1));
+        }
+
+        syncState.setHighWaterMark(userId, latestMark);
+        return localChanged;
+
+    }
+
+    /**
+     * @param pulledMeasurements The not null list of the pulled measurements, at most {@link #PULL_PAGE_SIZE}.
+     * @param editedMeasurements The not null list where the pulled measurements that are saved locally
+     *                           with another content digest are added.
+     * @return The not null list of the pulled measurements that are not saved locally.
+     */
+    @NotNull
+    private List<RealtimeMeasure> getMissingMeasurements(@NotNull List<RealtimeMeasure> pulledMeasurements,
+                                                         @NotNull List<RealtimeMeasure> editedMeasurements) {
+
+        if (pulledMeasurements.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> pulledKeys = new ArrayList<>(pulledMeasurements.size());
+
+        for (RealtimeMeasure remoteMeasure : pulledMeasurements) {
+
+            if (remoteMeasure.getUuid() != null) {
+                pulledKeys.add(remoteMeasure.getUuid());
+            }
+
+        }
+
+        // only the pulled keys are looked up, through the unique index of the keys.
+        MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
+        Map<String, String> localDigests = new HashMap<>();
+
+        for (Measure measure : measurementsDao.getMeasurementsByUuids(pulledKeys)) {
+            localDigests.put(measure.getUuid(), measure.getDigest());
+        }
+
+        List<RealtimeMeasure> missingMeasurements = new ArrayList<>();
+
+        for (RealtimeMeasure remoteMeasure : pulledMeasurements) {
+
+            String measureKey = remoteMeasure.getUuid();
+
+            if (measureKey == null) {
+                continue;
+            }
+
+            String localDigest = localDigests.get(measureKey);
+
+            if (localDigest == null) {
+                missingMeasurements.add(remoteMeasure);
+            } else if (remoteMeasure.getDigest() != null && !remoteMeasure.getDigest().equals(localDigest)) {
+                editedMeasurements.add(remoteMeasure);
+            }
+
+        }
+
+        return missingMeasurements;
+
+    }
+
+    /**
+     * Apply the remote edits of the measurements saved locally. It must be executed into a transaction.
+     *
+     * <p>
+     *     The payload is never edited, so only the title and the description are copied.
+     *     A measure with pending operations or without a digest has been edited locally:
+     *     the local edit is pushed and it replaces the remote one.
+     *     The deleted measurements are left deleted.
+     * </p>
+     *
+     * @param editedMeasurements The not null list of the pulled measurements edited remotely.
+     */
+    private void applyRemoteEdits(@NotNull List<RealtimeMeasure> editedMeasurements) {
+
+        MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
+        OutboxDao outboxDao = sqliteManager.outboxDao();
+
+        List<String> editedKeys = new ArrayList<>(editedMeasurements.size());
+        Map<String, RealtimeMeasure> remoteMeasurements = new HashMap<>();
+
+        for (RealtimeMeasure remoteMeasure : editedMeasurements) {
+
+            editedKeys.add(remoteMeasure.getUuid());
+            remoteMeasurements.put(remoteMeasure.getUuid(), remoteMeasure);
+
+        }
+
+        for (int from = 0 ; from < editedKeys.size() ; from += PULL_PAGE_SIZE) {
+
+            List<String> pageKeys = editedKeys.subList(from, Math.min(from + PULL_PAGE_SIZE, editedKeys.size()));
+
+            for (Measure measure : measurementsDao.getMeasurementsByUuids(pageKeys)) {
+
+                RealtimeMeasure remoteMeasure = remoteMeasurements.get(measure.getUuid());
+
+                if (remoteMeasure == null || measure.isDeleted() || measure.getDigest().isEmpty()
+                        || !outboxDao.getOperations(measure.getId()).isEmpty()) {
+                    continue;
+                }
+
+                measure.setTitle(remoteMeasure.getTitle());
+                measure.setDescription(remoteMeasure.getDescription());
+                measure.setDigest(remoteMeasure.getDigest());
+                measure.setFirebaseSync(true);
+
+                measurementsDao.updateMeasure(measure);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Save the remote measurements into the local database with a single transaction.
+     * The measurements keep their unique id, so the remote database is not edited.
+     * The samples of the magnetometer measurements are decoded before, the segments
+     * of the long recordings are downloaded too. A measure whose samples are missing
+     * or corrupted is not imported.
+     *
+     * @param remoteMeasurements The not null list of remote measurements.
+     * @return The server time of the earliest measure that has not been imported,
+     *         {@link Long#MAX_VALUE} if all of them have been imported.
+     * @throws NotConnectedException Invoked if the remote store cannot be reached.
+     */
+    private long importMeasurements(@NotNull List<RealtimeMeasure> remoteMeasurements) throws NotConnectedException {
+
+        List<RealtimeMeasure> decodedMeasurements = new ArrayList<>(remoteMeasurements.size());
+        long earliestFailure = Long.MAX_VALUE;
+
+        for (RealtimeMeasure remoteMeasure : remoteMeasurements) {
+
+            if (remoteMeasure instanceof RealtimeMagnetometer && !decode((RealtimeMagnetometer) remoteMeasure)) {
+
+                earliestFailure = Math.min(earliestFailure, remoteMeasure.getUpdatedAtMillis());
+                continue;
+
+            }
+
+            decodedMeasurements.add(remoteMeasure);
+
+        }
+
+        sqliteManager.runInTransaction(() -> {
+
+            for (RealtimeMeasure remoteMeasure : decodedMeasurements) {
+                importMeasure(remoteMeasure);
+            }
+
+        });
+
+        return earliestFailure;
+
+    }
+
+    /**
+     * Unpack the samples of a remote magnetometer measure,
+     * the segments of a long recording are downloaded.
+     *
+     * @param realtimeMagnetometer The not null remote magnetometer measure.
+     * @return True if the samples have been unpacked.
+     * @throws NotConnectedException Invoked if the remote store cannot be reached.
+     */
+    private boolean decode(@NotNull RealtimeMagnetometer realtimeMagnetometer) throws NotConnectedException {
+
+        String measureKey = realtimeMagnetometer.getUuid();
+
+        if (measureKey == null) {
+            return false;
+        }
+
+        try {
+
+            if (!realtimeMagnetometer.isUnpacked()
+                    && realtimeMagnetometer.getEncoding() == MagnetometerCodec.ENCODING_SEGMENTS_V1) {
+                MagnetometerCodec.decodeSegments(realtimeMagnetometer, remoteStore.getSegments(measureKey));
+            } else {
+                MagnetometerCodec.decode(realtimeMagnetometer);
+            }
+
+        } catch (IllegalArgumentException illegalArgumentEx) {
+            Log.e(LOG_TAG, "Cannot decode the samples of " + measureKey, illegalArgumentEx);
+        }
+
+        return realtimeMagnetometer.isUnpacked();
+
+    }
+
+    /**
+     * Create the remote version of a local measure.
+     * The magnetometer samples are left unpacked: they are encoded only
+     * when the measure is uploaded, see {@link MagnetometerCodec#encode(RealtimeMagnetometer)}.
+     *
+     * @param sqliteManager The not null sqlite manager where the payload is read.
+     * @param measure The not null local measure.
+     * @return The realtime measure, null if its type cannot be saved remotely.
+     */
+    @Nullable
+    static RealtimeMeasure toRealtimeMeasure(@NotNull SqliteManager sqliteManager, @NotNull Measure measure) {
+
+        int measureId = measure.getId();
+        Type type = measure.getType();
+        RealtimeMeasure realtimeMeasure;
+
+        if (type == Type.RULER) {
+
+            RulersDao rulersDao = sqliteManager.rulersDao();
+            Ruler ruler = rulersDao.getRuler(measureId);
+            RealtimeRuler realtimeRuler = new RealtimeRuler();
+
+            realtimeRuler.setLength(ruler.getLength());
+            realtimeMeasure = realtimeRuler;
+
+        } else if (type == Type.MAGNETOMETER) {
+
+            MagnetometersDao magnetometersDao = sqliteManager.magnetometersDao();
+            MagnetometerSamples samples = magnetometersDao.getSamples(measureId);
+
+            RealtimeMagnetometer realtimeMagnetometer = new RealtimeMagnetometer();
+
+            realtimeMagnetometer.setUnpackedSamples(samples.getSeconds(), samples.getValues());
+            realtimeMeasure = realtimeMagnetometer;
+
+        } else if (type == Type.BAROMETER) {
+
+            BarometersDao barometersDao = sqliteManager.barometersDao();
+            Barometer barometer = barometersDao.getBarometer(measureId);
+            RealtimeBarometer realtimeBarometer = new RealtimeBarometer();
+
+            realtimeBarometer.setPressure(barometer.getPressure());
+            realtimeMeasure = realtimeBarometer;
+
+        } else {
+            return null;
+        }
+
+        realtimeMeasure.setUuid(measure.getUuid());
+        realtimeMeasure.setTitle(measure.getTitle());
+        realtimeMeasure.setDescription(measure.getDescription());
+        realtimeMeasure.setStartDate(measure.getStartDate());
+
+        return realtimeMeasure;
+
+    }
+
+    /**
+     * Save a remote measure into the local database with a new local id.
+     *
+     * @param remoteMeasure The not null remote measure.
+     */
+    private void importMeasure(@NotNull RealtimeMeasure remoteMeasure) {
+
+        MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
+        Type type = getType(remoteMeasure);
+
+        String measureKey = remoteMeasure.getUuid();
+
+        if (measureKey == null) {
+            return;
+        }
+
+        // the samples are decoded by importMeasurements(), they can be missing or corrupted.
+        if (type == Type.MAGNETOMETER && !((RealtimeMagnetometer) remoteMeasure).isUnpacked()) {
+            return;
+        }
+
+        String payloadDigest = MeasureDigest.ofPayload(remoteMeasure);
+
+        // the measurements written before the digests have none.
+        if (remoteMeasure.getDigest() == null) {
+            remoteMeasure.setDigest(MeasureDigest.of(type,
+                    remoteMeasure.getTitle(), remoteMeasure.getDescription(), payloadDigest));
+        }
+
+        Measure measure = new Measure();
+
+        measure.setUuid(measureKey);
+        measure.setType(type);
+        measure.setTitle(remoteMeasure.getTitle());
+        measure.setDescription(remoteMeasure.getDescription());
+        measure.setStartDate(remoteMeasure.getStartDate());
+        measure.setFirebaseSync(true);
+        measure.setDeleted(false);
+        measure.setDigest(remoteMeasure.getDigest());
+        measure.setPayloadDigest(payloadDigest);
+
+        int measureId = (int) measurementsDao.insertMeasure(measure);
+
+        if (type == Type.RULER) {
+
+            RulersDao rulersDao = sqliteManager.rulersDao();
+            Ruler ruler = new Ruler();
+
+            ruler.setMeasureId(measureId);
+            ruler.setLength(((RealtimeRuler) remoteMeasure).getLength());
+
+            rulersDao.insertRuler(ruler);
+
+        } else if (type == Type.MAGNETOMETER) {
+
+            MagnetometersDao magnetometersDao = sqliteManager.magnetometersDao();
+            RealtimeMagnetometer realtimeMagnetometer = (RealtimeMagnetometer) remoteMeasure;
+
+            int[]   seconds = realtimeMagnetometer.getSampleSeconds();
+            float[] values  = realtimeMagnetometer.getSampleValues();
+
+            assert seconds != null && values != null;
+            magnetometersDao.insertSamples(measureId, seconds, values);
+
+        } else if (type == Type.BAROMETER) {
+
+            BarometersDao barometersDao = sqliteManager.barometersDao();
+            Barometer barometer = new Barometer();
+
+            barometer.setMeasureId(measureId);
+            barometer.setPressure(((RealtimeBarometer) remoteMeasure).getPressure());
+
+            barometersDao.insertBarometer(barometer);
+
+        }
+
+    }
+
+    /**
+     * @param remoteMeasure The not null remote measure.
+     * @return The not null type of the measure, unknown if it cannot be saved locally.
+     */
+    @NotNull
+    private static Type getType(@NotNull RealtimeMeasure remoteMeasure) {
+
+        if (remoteMeasure instanceof RealtimeRuler) {
+            return Type.RULER;
+        } else if (remoteMeasure instanceof RealtimeBarometer) {
+            return Type.BAROMETER;
+        } else if (remoteMeasure instanceof RealtimeMagnetometer) {
+            return Type.MAGNETOMETER;
+        }
+
+        return Type.UNKNOWN;
+
+    }
+
+    /**
+     * @param type The not null measure type.
+     * @param startDate The not null start date.
+     * @param title The not null title.
+     * @return The not null key that matches a legacy remote measure with its local copy.
+     */
+    @NotNull
+    private static String getMatchKey(@NotNull Type type, @NotNull Date startDate, @NotNull String title) {
+        return type + "/" + startDate.getTime() + "/" + title;
+    }
+
+    /**
+     * The listener of the completed synchronizations.
+     * It is called from the sync thread.
+     */
+    public interface SyncListener {
+
+        /**
+         * @param localChanged True if the local database has been changed.
+         */
+        void onSyncCompleted(boolean localChanged);
+
+    }
+
+}
@@ -0,0 +1,52 @@
+package it.uniba.magr.toolbox.database.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The local state of the synchronization, kept for each remote user.
+ */
+public class SyncState {
+
+    private static final String SHARED_SYNC_STATE_KEY = "sync_state";
+    private static final String HIGH_WATER_MARK_KEY   = "high_water_mark_";
+
+    @NotNull
+    private final SharedPreferences preferences;
+
+    public SyncState(@NotNull Context context) {
+        this(context.getSharedPreferences(SHARED_SYNC_STATE_KEY, Context.MODE_PRIVATE));
+    }
+
+    /**
+     * @param preferences The not null preferences where the state is kept,
+     *                    like isolated ones that don't touch the state of the app.
+     */
+    public SyncState(@NotNull SharedPreferences preferences) {
+        this.preferences = preferences;
+    }
+
+    /**
+     * @param userId The not null remote user id.
+     * @return The server time of the latest pulled write, 0 if nothing has been pulled.
+     */
+    public long getHighWaterMark(@NotNull String userId) {
+        return preferences.getLong(HIGH_WATER_MARK_KEY + userId, 0L);
+    }
+
+    /**
+     * @param userId The not null remote user id.
+     * @param mark The server time of the latest pulled write.
+     */
+    public void setHighWaterMark(@NotNull String userId, long mark) {
+
+        SharedPreferences.Editor editor = preferences.edit();
+
+        editor.putLong(HIGH_WATER_MARK_KEY + userId, mark);
+        editor.apply();
+
+    }
+
+}
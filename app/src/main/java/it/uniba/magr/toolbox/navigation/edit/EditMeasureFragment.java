@@ -32,11 +32,7 @@ import java.util.List;
 
 import it.uniba.magr.toolbox.HomeActivity;
 import it.uniba.magr.toolbox.R;
-import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
-import it.uniba.magr.toolbox.database.realtime.RealtimeManager;
-import it.uniba.magr.toolbox.database.sqlite.SqliteManager;
-import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
-import it.uniba.magr.toolbox.database.sqlite.dao.MeasurementsDao;
+import it.uniba.magr.toolbox.database.sync.MeasureWriteCoalescer;
 import it.uniba.magr.toolbox.navigation.NavigationFragment;
 import it.uniba.magr.toolbox.util.GenericUtil;
 import lombok.Getter;
@@ -212,33 +208,19 @@ public abstract class EditMeasureFragment extends NavigationFragment {
 
     /**
      * Asynchronously measure saving.
+     * The edit is merged with the other pending edits and it is written
+     * together with them, the method waits until it is saved locally.
      */
     private void asyncSaving(@NotNull HomeActivity activity) {
 
-        HomeActivity homeActivity = (HomeActivity) getActivity();
-        assert homeActivity != null;
-
-        SqliteManager sqliteManager = homeActivity.getSqliteManager();
-        RealtimeManager realtimeManager = homeActivity.getRealtimeManager();
-
-        MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
-        Measure measure = measurementsDao.getMeasure(measureId);
+        MeasureWriteCoalescer writeCoalescer = activity.getWriteCoalescer();
 
         String title = getTitle();
         String description = getDescription();
 
-        try {
-
-            realtimeManager.updateMeasure(measure.getType(), measureId, title, description);
-            measure.setFirebaseSync(true);
-
-        } catch (NotConnectedException notConnectedEx) {
-            measure.setFirebaseSync(false);
-        }
-
-        measure.setTitle(title);
-        measure.setDescription(description);
-        measurementsDao.updateMeasure(measure);
+        writeCoalescer.edit(measureId, title, description)
+                .exceptionally(throwable -> null) // the failure is logged by the coalescer
+                .join();
 
         NavHostFragment navHostFragment = activity.getNavHostFragment();
         FragmentManager fragmentManager = navHostFragment.getChildFragmentManager();
@@ -50,10 +50,22 @@ public class EditMagnetometerFragment extends EditMeasureFragment {
         float[] values  = bundle.getFloatArray(MagnetometerNavigation.BUNDLE_VALUES_KEY);
         assert seconds != null && values != null;
 
-        lineChart.setVisibleXRangeMaximum(seconds.length);
+        // the values are the means of the summaries, the extremes come from their min and max.
+        float[] minValues = bundle.getFloatArray(MagnetometerNavigation.BUNDLE_MIN_VALUES_KEY);
+        float[] maxValues = bundle.getFloatArray(MagnetometerNavigation.BUNDLE_MAX_VALUES_KEY);
+
+        if (minValues == null || maxValues == null) {
+
+            minValues = values;
+            maxValues = values;
+
+        }
+
+        int length = seconds.length;
+        lineChart.setVisibleXRangeMaximum(length == 0 ? 0 : seconds[length - 1] - seconds[0] + 1);
         initLineChart(lineChart);
 
-        if (seconds.length != values.length) {
+        if (length != values.length || length != minValues.length || length != maxValues.length) {
             throw new IllegalStateException("The seconds array length must be the same of the values array length");
         }
 
@@ -70,19 +82,17 @@ public class EditMagnetometerFragment extends EditMeasureFragment {
 
         }
 
-        for (int i = 0 ; i < seconds.length ; i++) {
-
-            float value = values[i];
+        for (int i = 0 ; i < length ; i++) {
 
-            if (minValue > value) {
-                minValue = value;
+            if (minValue > minValues[i]) {
+                minValue = minValues[i];
             }
 
-            if (maxValue < value) {
-                maxValue = value;
+            if (maxValue < maxValues[i]) {
+                maxValue = maxValues[i];
             }
 
-            data.addEntry(new Entry(set.getEntryCount(), value), 0);
+            data.addEntry(new Entry(seconds[i], values[i]), 0);
 
         }
 
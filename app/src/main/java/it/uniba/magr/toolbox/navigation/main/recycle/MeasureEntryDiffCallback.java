@@ -0,0 +1,64 @@
+package it.uniba.magr.toolbox.navigation.main.recycle;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Objects;
+
+import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
+import it.uniba.magr.toolbox.navigation.main.entry.MeasureEntry;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The differences between two lists of measure entries.
+ * An entry is the same item if it has the same measure id, and it has
+ * the same content if all the shown values are equal.
+ */
+@RequiredArgsConstructor
+public class MeasureEntryDiffCallback extends DiffUtil.Callback {
+
+    @NotNull
+    private final List<MeasureEntry> oldEntries;
+
+    @NotNull
+    private final List<MeasureEntry> newEntries;
+
+    @Override
+    public int getOldListSize() {
+        return oldEntries.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return newEntries.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldPosition, int newPosition) {
+
+        Measure oldMeasure = oldEntries.get(oldPosition).getMeasure();
+        Measure newMeasure = newEntries.get(newPosition).getMeasure();
+
+        return oldMeasure.getId() == newMeasure.getId();
+
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldPosition, int newPosition) {
+
+        MeasureEntry oldEntry = oldEntries.get(oldPosition);
+        MeasureEntry newEntry = newEntries.get(newPosition);
+
+        Measure oldMeasure = oldEntry.getMeasure();
+        Measure newMeasure = newEntry.getMeasure();
+
+        return oldEntry.getImageID() == newEntry.getImageID()
+                && Objects.equals(oldMeasure.getTitle(),       newMeasure.getTitle())
+                && Objects.equals(oldMeasure.getDescription(), newMeasure.getDescription())
+                && Objects.equals(oldMeasure.getStartDate(),   newMeasure.getStartDate());
+
+    }
+
+}
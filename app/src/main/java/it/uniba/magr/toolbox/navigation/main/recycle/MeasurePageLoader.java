@@ -0,0 +1,382 @@
+package it.uniba.magr.toolbox.navigation.main.recycle;
+
+import androidx.annotation.DrawableRes;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import it.uniba.magr.toolbox.HomeActivity;
+import it.uniba.magr.toolbox.R;
+import it.uniba.magr.toolbox.database.sqlite.ObservableQuery;
+import it.uniba.magr.toolbox.database.sqlite.SqliteManager;
+import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
+import it.uniba.magr.toolbox.database.sqlite.bean.Type;
+import it.uniba.magr.toolbox.database.sqlite.dao.MeasurementsDao;
+import it.uniba.magr.toolbox.navigation.main.entry.MeasureEntry;
+
+/**
+ * The paged and observed data source of the main recycler view.
+ *
+ * <p>
+ *     The measurements are read {@link #PAGE_SIZE} at a time, sorted by card order
+ *     and id. Each page starts after the last measure of the previous one (keyset
+ *     pagination), so the first screen costs a single page however many measurements
+ *     are stored, and the next pages are read while the user scrolls towards the end.
+ * </p>
+ *
+ * <p>
+ *     The read pages are an {@link ObservableQuery} of the measurements table:
+ *     they are read again only when the table is changed, by any screen or by the
+ *     synchronization. The differences from the shown entries are computed into
+ *     the background thread and only the changed items are updated.
+ *     The loader outlives the views of the main fragment, so a new recycler view
+ *     is filled with the latest read entries without reading the database.
+ * </p>
+ */
+public class MeasurePageLoader extends RecyclerView.OnScrollListener {
+
+    /**
+     * The max number of measurements of a page.
+     */
+    public static final int PAGE_SIZE = 30;
+
+    /**
+     * The number of not shown items that triggers the read of the next page.
+     */
+    private static final int PREFETCH_DISTANCE = 10;
+
+    @NotNull
+    private final HomeActivity homeActivity;
+
+    @NotNull
+    private final PageListener pageListener;
+
+    /**
+     * The single thread executor where the pages are read and compared.
+     * The read measurements are accessed only from this thread.
+     */
+    @NotNull
+    private final ExecutorService readExecutor = Executors.newSingleThreadExecutor();
+
+    @NotNull
+    private final ObservableQuery<List<Measure>> readPagesQuery;
+
+    /**
+     * The read measurements, all the types included.
+     */
+    @NotNull
+    private List<Measure> measurements = Collections.emptyList();
+
+    /**
+     * The card order of the last read measure. It is copied when the measure is read,
+     * since the shown measurements are changed in place when they are dragged.
+     */
+    private int afterOrder;
+
+    /**
+     * The id of the last read measure.
+     */
+    private int afterId;
+
+    /**
+     * True if there are no more pages after the read ones.
+     */
+    private volatile boolean lastPage;
+
+    /**
+     * The latest entries sent to the adapter, null if nothing has been read yet.
+     */
+    @Nullable
+    private volatile List<MeasureEntry> latestEntries;
+
+    /**
+     * The adapter of the current recycler view.
+     * It is accessed only from the main thread.
+     */
+    @Nullable
+    private MeasureRecyclerAdapter adapter;
+
+    /**
+     * True while the next page is being read.
+     * It is accessed only from the main thread.
+     */
+    private boolean loading;
+
+    /**
+     * @param homeActivity The not null home activity instance.
+     * @param pageListener The not null listener of the shown entries.
+     */
+    public MeasurePageLoader(@NotNull HomeActivity homeActivity, @NotNull PageListener pageListener) {
+
+        this.homeActivity = homeActivity;
+        this.pageListener = pageListener;
+
+        SqliteManager sqliteManager = homeActivity.getSqliteManager();
+
+        this.readPagesQuery = new ObservableQuery<>(sqliteManager, readExecutor,
+                this :: readPages, this :: onPagesRead, "Measurements");
+
+    }
+
+    /**
+     * Show the entries into a new recycler view.
+     * The latest read entries are shown immediately, without reading the database.
+     *
+     * @param adapter The not null adapter of the recycler view.
+     */
+    public void attach(@NotNull MeasureRecyclerAdapter adapter) {
+
+        this.adapter = adapter;
+        this.loading = false;
+
+        List<MeasureEntry> entries = latestEntries;
+
+        if (entries != null) {
+
+            adapter.submitEntries(adapter.getEntries(), entries, null);
+            pageListener.onEntriesShown(entries.isEmpty());
+
+        }
+
+    }
+
+    /**
+     * Start observing the measurements table. The pages are read again
+     * only if the table has been changed while the loader was stopped.
+     */
+    public void start() {
+        readPagesQuery.start();
+    }
+
+    /**
+     * Stop reading the changes of the measurements table, they are read when the loader is started again.
+     */
+    public void stop() {
+        readPagesQuery.stop();
+    }
+
+    /**
+     * Stop observing the measurements table, the loader cannot be started again.
+     */
+    public void close() {
+
+        readPagesQuery.close();
+        readExecutor.shutdown();
+
+    }
+
+    @Override
+    public void onScrolled(@NotNull RecyclerView recyclerView, int dx, int dy) {
+
+        if (loading || lastPage || adapter == null || readExecutor.isShutdown()) {
+            return;
+        }
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        assert layoutManager != null;
+
+        int lastVisiblePosition = layoutManager.findLastVisibleItemPosition();
+
+        if (lastVisiblePosition < adapter.getItemCount() - PREFETCH_DISTANCE) {
+            return;
+        }
+
+        loading = true;
+        readExecutor.execute(this :: readNextPage);
+
+    }
+
+    //
+    // READING METHODS
+    //
+
+    /**
+     * Read again all the read pages, plus a page if the end has been reached,
+     * so the measurements added at the end are read too.
+     * It is executed into the read executor.
+     *
+     * @return The not null read measurements.
+     */
+    @NotNull
+    private List<Measure> readPages() {
+
+        int limit = Math.max(PAGE_SIZE, measurements.size() + (lastPage ? PAGE_SIZE : 0));
+
+        MeasurementsDao measurementsDao = homeActivity.getSqliteManager().measurementsDao();
+        List<Measure> pages = measurementsDao.getVisibleFirstPage(limit);
+
+        lastPage = pages.size() < limit;
+        return pages;
+
+    }
+
+    /**
+     * It is executed into the read executor.
+     *
+     * @param pages The not null read measurements.
+     */
+    private void onPagesRead(@NotNull List<Measure> pages) {
+
+        setMeasurements(pages);
+        publish();
+
+    }
+
+    /**
+     * Read the page after the read measurements.
+     * It is executed into the read executor.
+     */
+    private void readNextPage() {
+
+        try {
+
+            if (lastPage || measurements.isEmpty()) {
+                return;
+            }
+
+            MeasurementsDao measurementsDao = homeActivity.getSqliteManager().measurementsDao();
+            List<Measure> page = measurementsDao.getVisiblePage(afterOrder, afterId, PAGE_SIZE);
+
+            lastPage = page.size() < PAGE_SIZE;
+
+            List<Measure> pages = new ArrayList<>(measurements.size() + page.size());
+
+            pages.addAll(measurements);
+            pages.addAll(page);
+
+            setMeasurements(pages);
+            publish();
+
+        } finally {
+            homeActivity.runOnUiThread(() -> loading = false);
+        }
+
+    }
+
+    /**
+     * Replace the read measurements and move the cursor after the last one.
+     * It is executed into the read executor.
+     *
+     * @param pages The not null read measurements.
+     */
+    private void setMeasurements(@NotNull List<Measure> pages) {
+
+        measurements = pages;
+
+        if (!pages.isEmpty()) {
+
+            Measure last = pages.get(pages.size() - 1);
+
+            afterOrder = last.getCardOrder();
+            afterId = last.getId();
+
+        }
+
+    }
+
+    /**
+     * Send the read measurements to the adapter.
+     * The entries shown by the adapter are copied into the main thread, then
+     * the differences are computed into the read executor and applied into
+     * the main thread. It is executed into the read executor.
+     */
+    private void publish() {
+
+        List<MeasureEntry> newEntries = toEntries(measurements);
+        latestEntries = newEntries;
+
+        homeActivity.runOnUiThread(() -> {
+
+            MeasureRecyclerAdapter currentAdapter = adapter;
+
+            if (currentAdapter == null || readExecutor.isShutdown()) {
+                return;
+            }
+
+            List<MeasureEntry> oldEntries = currentAdapter.getEntries();
+
+            readExecutor.execute(() -> {
+
+                DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(
+                        new MeasureEntryDiffCallback(oldEntries, newEntries));
+
+                homeActivity.runOnUiThread(() -> {
+
+                    currentAdapter.submitEntries(oldEntries, newEntries, diffResult);
+                    pageListener.onEntriesShown(newEntries.isEmpty());
+
+                });
+
+            });
+
+        });
+
+    }
+
+    /**
+     * @param measurements The not null measurements.
+     * @return The not null entries of the measurements, the ones of unknown type are skipped.
+     */
+    @NotNull
+    private static List<MeasureEntry> toEntries(@NotNull List<Measure> measurements) {
+
+        List<MeasureEntry> entries = new ArrayList<>(measurements.size());
+
+        for (Measure measure : measurements) {
+
+            int iconId = getIconId(measure.getType());
+
+            if (iconId != 0) {
+                entries.add(new MeasureEntry(iconId, measure));
+            }
+
+        }
+
+        return entries;
+
+    }
+
+    /**
+     * @param type The not null measure type.
+     * @return The drawable icon id of the type, 0 if the type is unknown.
+     */
+    @DrawableRes
+    private static int getIconId(@NotNull Type type) {
+
+        switch (type) {
+
+            case RULER:        return R.drawable.icon_ruler;
+            case MAGNETOMETER: return R.drawable.icon_magnetometer;
+            case LUX_METER:    return R.drawable.icon_lux_meter;
+            case BAROMETER:    return R.drawable.icon_barometer;
+            case PEDOMETER:    return R.drawable.icon_pedometer;
+            default:
+            case UNKNOWN:      return 0;
+
+        }
+
+    }
+
+    /**
+     * The listener of the entries shown by the recycler view.
+     * It is called from the main thread.
+     */
+    public interface PageListener {
+
+        /**
+         * @param empty True if there are no measurements to show.
+         */
+        void onEntriesShown(boolean empty);
+
+    }
+
+}
@@ -16,7 +16,9 @@ import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
 import it.uniba.magr.toolbox.database.realtime.RealtimeManager;
 import it.uniba.magr.toolbox.database.sqlite.SqliteManager;
 import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
+import it.uniba.magr.toolbox.database.sqlite.bean.OutboxOperation;
 import it.uniba.magr.toolbox.database.sqlite.dao.MeasurementsDao;
+import it.uniba.magr.toolbox.database.sync.MeasureWriteCoalescer;
 import it.uniba.magr.toolbox.navigation.main.entry.MeasureEntry;
 
 public class MeasureRecycleTouchHelper extends ItemTouchHelper.Callback {
@@ -56,33 +58,28 @@ public class MeasureRecycleTouchHelper extends ItemTouchHelper.Callback {
 
         adapter.onRowMoved(fromPosition, toPosition);
 
-        Thread thread = new Thread(() -> {
+        Context context = recyclerView.getContext();
+        HomeActivity homeActivity = (HomeActivity) context;
 
-            Context context = recyclerView.getContext();
-            HomeActivity homeActivity = (HomeActivity) context;
+        MeasureEntry e1 = adapter.getMeasureEntry(fromPosition);
+        MeasureEntry e2 = adapter.getMeasureEntry(toPosition);
 
-            SqliteManager sqliteManager = homeActivity.getSqliteManager();
-            MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
+        if (e1 != null && e2 != null) {
 
-            MeasureEntry e1 = adapter.getMeasureEntry(fromPosition);
-            MeasureEntry e2 = adapter.getMeasureEntry(toPosition);
+            Measure m1 = e1.getMeasure();
+            Measure m2 = e2.getMeasure();
 
-            if (e1 != null && e2 != null) {
+            int temp = m1.getCardOrder();
+            m1.setCardOrder(m2.getCardOrder());
+            m2.setCardOrder(temp);
 
-                Measure m1 = e1.getMeasure();
-                Measure m2 = e2.getMeasure();
+            // a drag is merged into a single transaction when it ends.
+            MeasureWriteCoalescer writeCoalescer = homeActivity.getWriteCoalescer();
+            writeCoalescer.reorder(m1.getId(), m1.getCardOrder());
+            writeCoalescer.reorder(m2.getId(), m2.getCardOrder());
 
-                int temp = m1.getCardOrder();
-                m1.setCardOrder(m2.getCardOrder());
-                m2.setCardOrder(temp);
-
-                measurementsDao.updateMeasurements(m1, m2);
-
-            }
-
-        });
+        }
 
-        thread.start();
         return true;
 
     }
@@ -150,21 +147,43 @@ public class MeasureRecycleTouchHelper extends ItemTouchHelper.Callback {
                 RealtimeManager realtimeMeasure = homeActivity.getRealtimeManager();
                 MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
 
-                try {
+                boolean removed = false;
+
+                // a measure with pending operations may be being pushed by the sync engine, so its
+                // removal is queued after them. The remote key of an unmapped measure is not known yet.
+                if (sqliteManager.outboxDao().getOperations(measure.getId()).isEmpty()
+                        && !measure.getUuid().startsWith(SqliteManager.UNMAPPED_UUID_PREFIX)) {
+
+                    try {
 
-                    realtimeMeasure.removeMeasure(measure.getId());
+                        realtimeMeasure.removeMeasure(measure.getUuid());
+                        removed = true;
+
+                    } catch (NotConnectedException notConnectedEx) {
+                        // the removal is queued.
+                    }
+
+                }
+
+                if (removed) {
 
                     measure.setFirebaseSync(true);
                     measure.setDeleted(true);
 
                     measurementsDao.removeMeasure(measure);
 
-                } catch (NotConnectedException notConnectedEx) {
+                } else {
 
                     measure.setFirebaseSync(false);
                     measure.setDeleted(true);
 
-                    measurementsDao.updateMeasure(measure);
+                    // the tombstone and its operation are written together, so it is never purged before.
+                    sqliteManager.runInTransaction(() -> {
+
+                        measurementsDao.updateMeasure(measure);
+                        sqliteManager.outboxDao().enqueue(measure.getId(), OutboxOperation.DELETE);
+
+                    });
 
                 }
 
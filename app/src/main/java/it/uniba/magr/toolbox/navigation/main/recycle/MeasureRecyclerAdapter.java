@@ -8,6 +8,7 @@ import android.view.ViewGroup;
 
 import androidx.annotation.DrawableRes;
 import androidx.core.content.res.ResourcesCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.card.MaterialCardView;
@@ -16,7 +17,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.text.DateFormat;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
 
 import it.uniba.magr.toolbox.R;
 import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
@@ -32,7 +34,7 @@ public class MeasureRecyclerAdapter extends RecyclerView.Adapter<MeasureRecycler
     private final RecyclerView recyclerView;
 
     @NotNull
-    private final LinkedList<MeasureEntry> entries = new LinkedList<>();
+    private final List<MeasureEntry> entries = new ArrayList<>();
 
     public MeasureRecyclerAdapter(@NotNull RecyclerView recyclerView) {
         this.recyclerView = recyclerView;
@@ -127,6 +129,45 @@ public class MeasureRecyclerAdapter extends RecyclerView.Adapter<MeasureRecycler
         return entries.isEmpty();
     }
 
+    /**
+     * @return A not null copy of the entries.
+     */
+    @NotNull
+    public List<MeasureEntry> getEntries() {
+        return new ArrayList<>(entries);
+    }
+
+    /**
+     * Replace the entries and update only the changed items.
+     *
+     * <p>
+     *     The differences are computed from a copy of the old entries, so they are
+     *     applied only if the entries have not been changed in the meantime
+     *     (e.g. by a swipe), otherwise all the view is updated.
+     * </p>
+     *
+     * @param oldEntries The not null entries the differences are computed from.
+     * @param newEntries The not null new entries.
+     * @param diffResult The differences between the old and the new entries,
+     *                   null to update all the view.
+     */
+    public void submitEntries(@NotNull List<MeasureEntry> oldEntries,
+                              @NotNull List<MeasureEntry> newEntries,
+                              @Nullable DiffUtil.DiffResult diffResult) {
+
+        boolean unchanged = entries.equals(oldEntries);
+
+        entries.clear();
+        entries.addAll(newEntries);
+
+        if (diffResult != null && unchanged) {
+            diffResult.dispatchUpdatesTo(this);
+        } else {
+            updateAll();
+        }
+
+    }
+
     /**
      * Remove all entries.
      */
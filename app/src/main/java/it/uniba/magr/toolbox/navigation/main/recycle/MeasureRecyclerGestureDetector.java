@@ -20,7 +20,7 @@ import it.uniba.magr.toolbox.HomeActivity;
 import it.uniba.magr.toolbox.R;
 import it.uniba.magr.toolbox.database.sqlite.SqliteManager;
 import it.uniba.magr.toolbox.database.sqlite.bean.Barometer;
-import it.uniba.magr.toolbox.database.sqlite.bean.Magnetometer;
+import it.uniba.magr.toolbox.database.sqlite.bean.MagnetometerSummary;
 import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
 import it.uniba.magr.toolbox.database.sqlite.bean.Ruler;
 import it.uniba.magr.toolbox.database.sqlite.bean.Type;
@@ -187,18 +187,24 @@ public class MeasureRecyclerGestureDetector extends GestureDetector.SimpleOnGest
         SqliteManager sqliteManager = activity.getSqliteManager();
         MagnetometersDao magnetometersDao = sqliteManager.magnetometersDao();
 
-        List<Magnetometer> results = magnetometersDao.getMagnetometers(measureId);
+        // the chart is as wide as the screen, so it needs about a summary per pixel.
+        int pixelWidth = context.getResources().getDisplayMetrics().widthPixels;
+        List<MagnetometerSummary> summaries = magnetometersDao.getSummaries(measureId, pixelWidth);
 
-        int length = results.size();
+        int length = summaries.size();
         int[] seconds = new int[length];
         float[] values = new float[length];
+        float[] minValues = new float[length];
+        float[] maxValues = new float[length];
 
         for (int i = 0; i < length; i++) {
 
-            Magnetometer magnetometer = results.get(i);
+            MagnetometerSummary summary = summaries.get(i);
 
-            seconds[i] = magnetometer.getTime();
-            values[i] = (float) magnetometer.getValue();
+            seconds[i] = summary.getBucketStart();
+            values[i] = summary.getMean();
+            minValues[i] = summary.getMin();
+            maxValues[i] = summary.getMax();
 
         }
 
@@ -210,6 +216,8 @@ public class MeasureRecyclerGestureDetector extends GestureDetector.SimpleOnGest
 
         bundle.putIntArray(MagnetometerNavigation.BUNDLE_SECONDS_KEY, seconds);
         bundle.putFloatArray(MagnetometerNavigation.BUNDLE_VALUES_KEY, values);
+        bundle.putFloatArray(MagnetometerNavigation.BUNDLE_MIN_VALUES_KEY, minValues);
+        bundle.putFloatArray(MagnetometerNavigation.BUNDLE_MAX_VALUES_KEY, maxValues);
 
         activity.runOnUiThread(() -> {
 
@@ -24,12 +24,16 @@ import org.jetbrains.annotations.Nullable;
 
 import it.uniba.magr.toolbox.HomeActivity;
 import it.uniba.magr.toolbox.R;
+import it.uniba.magr.toolbox.database.realtime.MeasureDigest;
 import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
 import it.uniba.magr.toolbox.database.realtime.RealtimeManager;
 import it.uniba.magr.toolbox.database.sqlite.SqliteManager;
 import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
+import it.uniba.magr.toolbox.database.sqlite.bean.Outbox;
+import it.uniba.magr.toolbox.database.sqlite.bean.OutboxOperation;
 import it.uniba.magr.toolbox.database.sqlite.bean.Type;
 import it.uniba.magr.toolbox.database.sqlite.dao.MeasurementsDao;
+import it.uniba.magr.toolbox.database.sqlite.dao.OutboxDao;
 import it.uniba.magr.toolbox.navigation.NavigationFragment;
 import it.uniba.magr.toolbox.util.GenericUtil;
 import lombok.Getter;
@@ -39,6 +43,7 @@ import static it.uniba.magr.toolbox.util.GenericUtil.getTextFromInputLayout;
 import static it.uniba.magr.toolbox.util.GenericUtil.setTextToInputLayout;
 
 import java.util.List;
+import java.util.UUID;
 
 @SuppressWarnings("unused") // unused methods
 public abstract class SaveMeasureFragment extends NavigationFragment {
@@ -103,6 +108,13 @@ public abstract class SaveMeasureFragment extends NavigationFragment {
      */
     protected abstract void handleParametersCreation(@NotNull FragmentActivity activity, @NotNull Bundle bundle);
 
+    /**
+     * @return The not null digest of the tool values such as ruler length,
+     *         see {@link MeasureDigest}.
+     */
+    @NotNull
+    protected abstract String getPayloadDigest();
+
     /**
      * Save additional parameters such as ruler length to the sqlite database.
      *
@@ -223,11 +235,19 @@ public abstract class SaveMeasureFragment extends NavigationFragment {
         MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
         Measure measure = new Measure();
 
+        measure.setUuid(UUID.randomUUID().toString());
         measure.setType(getMeasureType());
         measure.setTitle(getTitle());
         measure.setDescription(getDescription());
         measure.setCardOrder(0);
 
+        // the payload is digested once, the edits reuse its digest.
+        String payloadDigest = getPayloadDigest();
+
+        measure.setPayloadDigest(payloadDigest);
+        measure.setDigest(MeasureDigest.of(measure.getType(),
+                measure.getTitle(), measure.getDescription(), payloadDigest));
+
         measurementsDao.insertMeasure(measure);
         int latestMeasureID = measurementsDao.getLatestMeasureID();
         Measure latestMeasure = measurementsDao.getMeasure(latestMeasureID);
@@ -246,17 +266,31 @@ public abstract class SaveMeasureFragment extends NavigationFragment {
         // perform the tool saving with the measure just saved.
         saveToSqlite(sqliteManager, measure);
 
+        // the creation is queued before the upload: an interrupted upload is resumed by the sync
+        // engine, or it is replaced by a deletion that also removes the uploaded segments.
+        OutboxDao outboxDao = sqliteManager.outboxDao();
+        Measure savedMeasure = measure;
+
+        savedMeasure.setFirebaseSync(false);
+
+        sqliteManager.runInTransaction(() -> {
+
+            measurementsDao.updateMeasure(savedMeasure);
+            outboxDao.enqueue(savedMeasure.getId(), OutboxOperation.CREATE);
+
+        });
+
+        List<Outbox> createOperations = outboxDao.getOperations(savedMeasure.getId());
+
         try {
 
-            saveToRealtime(realtimeManager, measure);
-            measure.setFirebaseSync(true);
+            saveToRealtime(realtimeManager, savedMeasure);
+            sqliteManager.runInTransaction(() -> confirmCreation(sqliteManager, savedMeasure, createOperations));
 
         } catch (NotConnectedException notConnectedEx) {
-            measure.setFirebaseSync(false);
+            // the queued creation is pushed by the sync engine.
         }
 
-        measurementsDao.updateMeasure(measure);
-
         NavHostFragment navHostFragment = activity.getNavHostFragment();
         FragmentManager fragmentManager = navHostFragment.getChildFragmentManager();
 
@@ -284,6 +318,54 @@ public abstract class SaveMeasureFragment extends NavigationFragment {
     }
 
 
+    /**
+     * Dequeue the creation of a measure that has been saved remotely.
+     * It must be executed into a transaction.
+     *
+     * <ul>
+     *     <li>a measure deleted meanwhile queues its deletion again, the queued
+     *     one may have been pushed before the upload;</li>
+     *     <li>a measure edited meanwhile keeps an update queued, the queue merged
+     *     the edit into the creation.</li>
+     * </ul>
+     *
+     * @param sqliteManager The not null sqlite manager.
+     * @param uploaded The not null measure as it has been uploaded.
+     * @param createOperations The not null queued creation of the measure.
+     */
+    private static void confirmCreation(@NotNull SqliteManager sqliteManager,
+                                        @NotNull Measure uploaded,
+                                        @NotNull List<Outbox> createOperations) {
+
+        MeasurementsDao measurementsDao = sqliteManager.measurementsDao();
+        OutboxDao outboxDao = sqliteManager.outboxDao();
+
+        Measure measure = measurementsDao.getMeasure(uploaded.getId());
+
+        if (measure == null) {
+            return;
+        }
+
+        if (measure.isDeleted()) {
+
+            outboxDao.enqueue(measure.getId(), OutboxOperation.DELETE);
+            return;
+
+        }
+
+        outboxDao.removeOperations(createOperations.toArray(new Outbox[0]));
+
+        if (uploaded.getTitle().equals(measure.getTitle())
+                && uploaded.getDescription().equals(measure.getDescription())) {
+            measure.setFirebaseSync(true);
+        } else {
+            outboxDao.enqueue(measure.getId(), OutboxOperation.UPDATE);
+        }
+
+        measurementsDao.updateMeasure(measure);
+
+    }
+
     /**
      * Disable internal views layout clicking and editing.
      * @param viewGroup The not null view group instance.
@@ -2,23 +2,31 @@ package it.uniba.magr.toolbox.navigation.settings;
 
 import android.app.Activity;
 import android.content.Context;
+import android.graphics.Typeface;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.preference.ListPreference;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Locale;
 
 import it.uniba.magr.toolbox.HomeActivity;
 import it.uniba.magr.toolbox.R;
+import it.uniba.magr.toolbox.database.metrics.SyncMetrics;
 import it.uniba.magr.toolbox.util.LocaleUtil;
 
 /**
@@ -31,6 +39,16 @@ public class SettingsFragment extends PreferenceFragmentCompat {
      */
     private static final String LIST_SELECT_LANGUAGE = "list_select_language";
 
+    /**
+     * the name of the sync_diagnostics into the application_settings.xml file
+     */
+    private static final String SYNC_DIAGNOSTICS = "sync_diagnostics";
+
+    /**
+     * The name of the file where the diagnostics are saved.
+     */
+    private static final String DIAGNOSTICS_FILE_NAME = "sync_diagnostics.txt";
+
     @Override
     public void onCreatePreferences(Bundle bundle, String rootKey) {
         setPreferencesFromResource(R.xml.application_settings, rootKey);
@@ -46,6 +64,11 @@ public class SettingsFragment extends PreferenceFragmentCompat {
 
         listSelectLanguage.setOnPreferenceChangeListener(this :: changeLanguageClick);
 
+        Preference syncDiagnostics = findPreference(SYNC_DIAGNOSTICS);
+        assert syncDiagnostics != null;
+
+        syncDiagnostics.setOnPreferenceClickListener(this :: syncDiagnosticsClick);
+
         assert getContext() != null;
 
         Context context = getContext();
@@ -84,6 +107,73 @@ public class SettingsFragment extends PreferenceFragmentCompat {
 
     }
 
+    /**
+     * Show the metrics of the remote operations into a dialog,
+     * they can be saved into a file or reset.
+     */
+    private boolean syncDiagnosticsClick(Preference preference) {
+
+        Context context = getContext();
+
+        if (!(context instanceof HomeActivity)) {
+            return false;
+        }
+
+        HomeActivity homeActivity = (HomeActivity) context;
+        SyncMetrics metrics = homeActivity.getRealtimeManager().getMetrics();
+
+        TextView dumpTextView = new TextView(context);
+        int padding = (int) (16 * getResources().getDisplayMetrics().density);
+
+        dumpTextView.setText(metrics.dump());
+        dumpTextView.setTypeface(Typeface.MONOSPACE);
+        dumpTextView.setTextIsSelectable(true);
+        dumpTextView.setPadding(padding, padding, padding, padding);
+
+        ScrollView scrollView = new ScrollView(context);
+        scrollView.addView(dumpTextView);
+
+        new AlertDialog.Builder(context)
+                .setTitle(R.string.text_sync_diagnostics)
+                .setView(scrollView)
+                .setPositiveButton(R.string.text_sync_diagnostics_export,
+                        (dialog, which) -> saveDiagnostics(context, metrics))
+                .setNeutralButton(R.string.text_sync_diagnostics_reset,
+                        (dialog, which) -> metrics.reset())
+                .setNegativeButton(R.string.text_sync_diagnostics_close, null)
+                .show();
+
+        return true;
+
+    }
+
+    /**
+     * Save the metrics of the remote operations into the
+     * application external files directory.
+     */
+    private static void saveDiagnostics(@NotNull Context context, @NotNull SyncMetrics metrics) {
+
+        File directory = context.getExternalFilesDir(null);
+
+        if (directory == null) {
+            directory = context.getFilesDir();
+        }
+
+        File file = new File(directory, DIAGNOSTICS_FILE_NAME);
+
+        try {
+
+            metrics.dumpToFile(file);
+
+            String message = context.getString(R.string.text_sync_diagnostics_saved, file.getAbsolutePath());
+            Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+
+        } catch (IOException ioEx) {
+            Toast.makeText(context, R.string.text_sync_diagnostics_not_saved, Toast.LENGTH_LONG).show();
+        }
+
+    }
+
     private boolean changeLanguageClick(Preference preference, Object newValue) {
 
         Context context = getContext();
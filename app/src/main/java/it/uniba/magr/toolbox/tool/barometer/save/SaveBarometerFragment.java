@@ -9,6 +9,7 @@ import com.google.android.material.textfield.TextInputEditText;
 import org.jetbrains.annotations.NotNull;
 
 import it.uniba.magr.toolbox.R;
+import it.uniba.magr.toolbox.database.realtime.MeasureDigest;
 import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
 import it.uniba.magr.toolbox.database.realtime.RealtimeManager;
 import it.uniba.magr.toolbox.database.realtime.bean.RealtimeBarometer;
@@ -52,6 +53,12 @@ public class SaveBarometerFragment extends SaveMeasureFragment {
 
     }
 
+    @NotNull
+    @Override
+    protected String getPayloadDigest() {
+        return MeasureDigest.ofScalarPayload(pressure);
+    }
+
     @Override
     protected void saveToSqlite(@NotNull SqliteManager sqliteManager, @NotNull Measure measure) {
 
@@ -69,18 +76,19 @@ public class SaveBarometerFragment extends SaveMeasureFragment {
     protected void saveToRealtime(@NotNull RealtimeManager realtimeManager,
                                   @NotNull Measure measure) throws NotConnectedException {
 
-        int measureId      = measure.getId();
+        String uuid        = measure.getUuid();
         String title       = measure.getTitle();
         String description = measure.getDescription();
         Date startDate     = measure.getStartDate();
 
         RealtimeBarometer realtimeBarometer = new RealtimeBarometer();
 
-        realtimeBarometer.setMeasureId(measureId);
+        realtimeBarometer.setUuid(uuid);
         realtimeBarometer.setTitle(title);
         realtimeBarometer.setDescription(description);
         realtimeBarometer.setStartDate(startDate);
         realtimeBarometer.setPressure(pressure);
+        realtimeBarometer.setDigest(measure.getDigest());
 
         realtimeManager.addMeasure(realtimeBarometer);
 
@@ -52,6 +52,16 @@ public class MagnetometerNavigation implements Navigable, SensorEventListener {
      */
     public static final String BUNDLE_VALUES_KEY = "values";
 
+    /**
+     * The navigation bundle min values key, one for each value when the values are summaries.
+     */
+    public static final String BUNDLE_MIN_VALUES_KEY = "min_values";
+
+    /**
+     * The navigation bundle max values key, one for each value when the values are summaries.
+     */
+    public static final String BUNDLE_MAX_VALUES_KEY = "max_values";
+
     /**
      * The tesla bound to be added into the plot value to avoid pinnacles.
      */
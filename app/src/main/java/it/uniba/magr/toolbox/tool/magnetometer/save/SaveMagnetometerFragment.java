@@ -22,16 +22,16 @@ import com.google.android.material.textfield.TextInputEditText;
 import org.jetbrains.annotations.NotNull;
 
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import it.uniba.magr.toolbox.R;
+import it.uniba.magr.toolbox.database.realtime.MagnetometerCodec;
+import it.uniba.magr.toolbox.database.realtime.MeasureDigest;
 import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
 import it.uniba.magr.toolbox.database.realtime.RealtimeManager;
 import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMagnetometer;
 import it.uniba.magr.toolbox.database.sqlite.SqliteManager;
-import it.uniba.magr.toolbox.database.sqlite.bean.Magnetometer;
 import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
 import it.uniba.magr.toolbox.database.sqlite.bean.Type;
 import it.uniba.magr.toolbox.database.sqlite.dao.MagnetometersDao;
@@ -121,29 +121,17 @@ public class SaveMagnetometerFragment extends SaveMeasureFragment {
 
     }
 
+    @NotNull
+    @Override
+    protected String getPayloadDigest() {
+        return MeasureDigest.ofSamplesPayload(seconds, values);
+    }
+
     @Override
     protected void saveToSqlite(@NotNull SqliteManager sqliteManager, @NotNull Measure measure) {
 
         MagnetometersDao magnetometersDao = sqliteManager.magnetometersDao();
-        int length = seconds.length;
-
-        Magnetometer[] magnetometers = new Magnetometer[length];
-
-        for (int i = 0 ; i < length ; i++) {
-
-
-            Magnetometer magnetometer = new Magnetometer();
-
-            magnetometer.setMeasureId(measure.getId());
-            magnetometer.setCount(i);
-            magnetometer.setValue(values[i]);
-            magnetometer.setTime(seconds[i]);
-
-            magnetometers[i] = magnetometer;
-
-        }
-
-        magnetometersDao.insertMagnetometers(magnetometers);
+        magnetometersDao.insertSamples(measure.getId(), seconds, values);
 
     }
 
@@ -151,7 +139,7 @@ public class SaveMagnetometerFragment extends SaveMeasureFragment {
     protected void saveToRealtime(@NotNull RealtimeManager realtimeManager,
                                   @NotNull Measure measure) throws NotConnectedException {
 
-        int measureId      = measure.getId();
+        String uuid        = measure.getUuid();
         String title       = measure.getTitle();
         String description = measure.getDescription();
         Date startDate     = measure.getStartDate();
@@ -159,24 +147,20 @@ public class SaveMagnetometerFragment extends SaveMeasureFragment {
         RealtimeMagnetometer realtimeMagnetometer = new RealtimeMagnetometer();
 
         assert seconds.length == values.length;
-        List<Integer> secondsToList = new ArrayList<>(seconds.length);
-        List<Float>   valuesToList  = new ArrayList<>(values.length);
-
-        int length = seconds.length;
-
-        for (int i = 0 ; i < length ; i++) {
-
-            secondsToList.add(seconds[i]);
-            valuesToList.add(values[i]);
 
-        }
-
-        realtimeMagnetometer.setMeasureId(measureId);
+        realtimeMagnetometer.setUuid(uuid);
         realtimeMagnetometer.setTitle(title);
         realtimeMagnetometer.setDescription(description);
         realtimeMagnetometer.setStartDate(startDate);
-        realtimeMagnetometer.setSeconds(secondsToList);
-        realtimeMagnetometer.setValues(valuesToList);
+        realtimeMagnetometer.setUnpackedSamples(seconds, values);
+        realtimeMagnetometer.setDigest(measure.getDigest());
+
+        List<String> segments = MagnetometerCodec.encode(realtimeMagnetometer);
+
+        // the segments are uploaded before the measure that refers to them.
+        if (!segments.isEmpty()) {
+            realtimeManager.putSegments(uuid, segments);
+        }
 
         realtimeManager.addMeasure(realtimeMagnetometer);
 
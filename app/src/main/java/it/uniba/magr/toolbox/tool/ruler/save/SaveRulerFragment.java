@@ -14,6 +14,7 @@ import org.jetbrains.annotations.NotNull;
 import java.util.Date;
 
 import it.uniba.magr.toolbox.R;
+import it.uniba.magr.toolbox.database.realtime.MeasureDigest;
 import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
 import it.uniba.magr.toolbox.database.realtime.RealtimeManager;
 import it.uniba.magr.toolbox.database.realtime.bean.RealtimeRuler;
@@ -79,6 +80,12 @@ public class SaveRulerFragment extends SaveMeasureFragment {
 
     }
 
+    @NotNull
+    @Override
+    protected String getPayloadDigest() {
+        return MeasureDigest.ofScalarPayload(length);
+    }
+
     @Override
     protected void saveToSqlite(@NotNull SqliteManager sqliteManager, @NotNull Measure measure) {
 
@@ -96,18 +103,19 @@ public class SaveRulerFragment extends SaveMeasureFragment {
     protected void saveToRealtime(@NotNull RealtimeManager realtimeManager,
                                   @NotNull Measure measure) throws NotConnectedException {
 
-        int measureId      = measure.getId();
+        String uuid        = measure.getUuid();
         String title       = measure.getTitle();
         String description = measure.getDescription();
         Date startDate     = measure.getStartDate();
 
         RealtimeRuler realtimeRuler = new RealtimeRuler();
 
-        realtimeRuler.setMeasureId(measureId);
+        realtimeRuler.setUuid(uuid);
         realtimeRuler.setTitle(title);
         realtimeRuler.setDescription(description);
         realtimeRuler.setStartDate(startDate);
         realtimeRuler.setLength(length);
+        realtimeRuler.setDigest(measure.getDigest());
 
         realtimeManager.addMeasure(realtimeRuler);
 
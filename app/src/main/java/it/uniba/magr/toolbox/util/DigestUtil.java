@@ -32,6 +32,17 @@ public final class DigestUtil {
         MessageDigest md5Digest = MessageDigest.getInstance(MD5_DIGEST);
         byte[] digest = md5Digest.digest(text.getBytes());
 
+        return toMD5String(digest);
+
+    }
+
+    /**
+     * @param digest The not null 16 bytes md5 digest.
+     * @return The 32 chars md5 string of the digest.
+     */
+    @NotNull
+    public static String toMD5String(@NotNull byte[] digest) {
+
         BigInteger bigInteger = new BigInteger(MD5_POSITIVE_SIGNUM_DIGEST, digest);
         StringBuilder result = new StringBuilder(bigInteger.toString(MD5_CHAR_LENGTH));
 
@@ -0,0 +1,86 @@
+package it.uniba.magr.toolbox.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * In this util class you have to find the variable length integer methods
+ * shared by the compact encodings of the samples.
+ *
+ * <p>
+ *     A varint writes 7 bits per byte, from the least significant ones, and
+ *     the highest bit of each byte is set if another byte follows. The zigzag
+ *     mapping interleaves the negative and the positive numbers, so a number
+ *     close to 0 has a short varint whatever its sign.
+ * </p>
+ */
+public final class VarintUtil {
+
+    private VarintUtil() {
+        throw new IllegalStateException("This is a static class");
+    }
+
+    /**
+     * @param value The signed value.
+     * @return The zigzag mapped value: 0, -1, 1, -2, ... become 0, 1, 2, 3, ...
+     */
+    public static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * @param value The zigzag mapped value.
+     * @return The signed value.
+     */
+    public static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @param output The not null output stream.
+     * @param value The value, it is written as unsigned.
+     */
+    public static void writeVarint(@NotNull ByteArrayOutputStream output, long value) {
+
+        while ((value & ~0x7FL) != 0) {
+
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+
+        }
+
+        output.write((int) value);
+
+    }
+
+    /**
+     * @param input The not null input bytes.
+     * @param position The not null single element array of the read position, it is moved after the value.
+     * @return The read value.
+     * @throws IllegalArgumentException Invoked if the input is truncated or the value is too long.
+     */
+    public static long readVarint(@NotNull byte[] input, @NotNull int[] position) {
+
+        long result = 0;
+
+        for (int shift = 0 ; shift < 64 ; shift += 7) {
+
+            if (position[0] >= input.length) {
+                throw new IllegalArgumentException("Truncated varint");
+            }
+
+            byte current = input[position[0]++];
+            result |= (long) (current & 0x7F) << shift;
+
+            if ((current & 0x80) == 0) {
+                return result;
+            }
+
+        }
+
+        throw new IllegalArgumentException("Malformed varint");
+
+    }
+
+}
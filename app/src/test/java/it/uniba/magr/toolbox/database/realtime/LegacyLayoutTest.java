@@ -0,0 +1,112 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The moves of the legacy array layout, whose measure ids are all the same.
+ */
+class LegacyLayoutTest {
+
+    private static final String TYPE_PATH = "measurements/rulers/";
+
+    @Test
+    void legacyMeasurementsWithTheSameIdAreAllKept() {
+
+        Map<String, Object> first  = newLegacyNode("Desk");
+        Map<String, Object> second = newLegacyNode("Door");
+        Map<String, Object> third  = newLegacyNode("Window");
+
+        Map<String, Object> children = new LinkedHashMap<>();
+
+        children.put("0", first);
+        children.put("1", second);
+        children.put("2", third);
+
+        Map<String, Object> updates = LegacyLayout.getMoves(TYPE_PATH, "rulers", children);
+
+        assertEquals(6, updates.size());
+        assertSame(first,  updates.get(TYPE_PATH + "legacy_rulers_0"));
+        assertSame(second, updates.get(TYPE_PATH + "legacy_rulers_1"));
+        assertSame(third,  updates.get(TYPE_PATH + "legacy_rulers_2"));
+
+        for (String index : new String[] { "0", "1", "2" }) {
+
+            assertTrue(updates.containsKey(TYPE_PATH + index));
+            assertNull(updates.get(TYPE_PATH + index));
+
+        }
+
+    }
+
+    @Test
+    void keyedMeasurementsAreNotMoved() {
+
+        Map<String, Object> children = new LinkedHashMap<>();
+
+        children.put("0", newLegacyNode("Desk"));
+        children.put("3f2b8c1e-5d0a-4c6e-9a51-0c9e2f6d7b14", newLegacyNode("Door"));
+
+        Map<String, Object> updates = LegacyLayout.getMoves(TYPE_PATH, "rulers", children);
+
+        assertEquals(2, updates.size());
+        assertFalse(updates.containsKey(TYPE_PATH + "3f2b8c1e-5d0a-4c6e-9a51-0c9e2f6d7b14"));
+
+    }
+
+    @Test
+    void usedKeyIsNotOverwritten() {
+
+        Map<String, Object> children = new LinkedHashMap<>();
+
+        children.put("0", newLegacyNode("Desk"));
+        children.put("legacy_rulers_0", newLegacyNode("Door"));
+
+        assertThrows(IllegalStateException.class, () -> LegacyLayout.getMoves(TYPE_PATH, "rulers", children));
+
+    }
+
+    @Test
+    void legacyKeysAreRecognized() {
+
+        assertTrue(LegacyLayout.isLegacyIndex("12"));
+        assertFalse(LegacyLayout.isLegacyIndex("m12"));
+        assertTrue(LegacyLayout.isLegacyKey(LegacyLayout.getKey("barometers", "12")));
+        assertFalse(LegacyLayout.isLegacyKey("3f2b8c1e-5d0a-4c6e-9a51-0c9e2f6d7b14"));
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    /**
+     * @param title The not null title.
+     * @return The not null raw node of a legacy ruler, uploaded with the same measure id of all the others.
+     */
+    @NotNull
+    private static Map<String, Object> newLegacyNode(@NotNull String title) {
+
+        Map<String, Object> node = new HashMap<>();
+
+        node.put("measureId", 1L);
+        node.put("title", title);
+        node.put("startDate", 1_500_000_000_000L);
+        node.put("length", 12.5D);
+
+        return node;
+
+    }
+
+}
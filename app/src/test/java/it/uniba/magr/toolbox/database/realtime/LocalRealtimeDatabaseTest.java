@@ -0,0 +1,146 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMagnetometer;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMeasure;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeRuler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The stand-in of the realtime database stores what firebase would store:
+ * the batches of the app are applied and read back like on the remote database.
+ */
+class LocalRealtimeDatabaseTest {
+
+    @Test
+    void batchIsReadBackWithTheDecoder() {
+
+        LocalRealtimeDatabase database = new LocalRealtimeDatabase();
+        LocalRealtimeDatabase.Reference userReference = database.getReference("users/local");
+
+        RealtimeRuler ruler = new RealtimeRuler();
+
+        ruler.setUuid("ruler-key");
+        ruler.setTitle("Desk");
+        ruler.setLength(12.5D);
+
+        userReference.updateChildren(new RealtimeBatch().addMeasure(ruler).getUserUpdates());
+
+        Object rawRuler = userReference.child("measurements/rulers/ruler-key").get();
+        RealtimeRuler decoded = RealtimeDecoder.decode(rawRuler, RealtimeRuler.class);
+
+        assertNotNull(decoded);
+        assertEquals("Desk", decoded.getTitle());
+        assertEquals(12.5D, decoded.getLength());
+        assertEquals(ruler.getStartDate(), decoded.getStartDate());
+
+        // the excluded unique id is the key, the server timestamp is resolved.
+        assertFalse(((Map<?, ?>) rawRuler).containsKey("uuid"));
+        assertTrue(((Map<?, ?>) rawRuler).get("updatedAt") instanceof Long);
+        assertEquals(ruler.getDigest(), userReference.child("digests/ruler-key").get());
+
+    }
+
+    @Test
+    void removedMeasureLeavesNoEmptyNode() {
+
+        LocalRealtimeDatabase database = new LocalRealtimeDatabase();
+        LocalRealtimeDatabase.Reference userReference = database.getReference("users/local");
+
+        RealtimeRuler ruler = new RealtimeRuler();
+        ruler.setUuid("ruler-key");
+
+        userReference.updateChildren(new RealtimeBatch().addMeasure(ruler).getUserUpdates());
+        userReference.child("segments/ruler-key/s00000").setValue("segment");
+        userReference.updateChildren(new RealtimeBatch().removeMeasure("ruler-key").getUserUpdates());
+
+        assertNull(database.getReference().get());
+
+    }
+
+    @Test
+    void listsAreReadBackAsLists() {
+
+        LocalRealtimeDatabase database = new LocalRealtimeDatabase();
+        RealtimeMagnetometer magnetometer = new RealtimeMagnetometer();
+
+        magnetometer.setSeconds(new ArrayList<>(Arrays.asList(0, 1, 2)));
+        magnetometer.setValues(new ArrayList<>(Arrays.asList(40.5F, 41F, 41.5F)));
+
+        database.getReference("magnetometer").setValue(magnetometer);
+        Object rawMagnetometer = database.getReference("magnetometer").get();
+
+        assertEquals(Arrays.asList(0L, 1L, 2L), ((Map<?, ?>) rawMagnetometer).get("seconds"));
+        assertEquals(3, ((List<?>) ((Map<?, ?>) rawMagnetometer).get("values")).size());
+
+    }
+
+    @Test
+    void ancestorPathIsRefused() {
+
+        LocalRealtimeDatabase database = new LocalRealtimeDatabase();
+        Map<String, Object> updates = new HashMap<>();
+
+        updates.put("measurements/rulers/key", "measure");
+        updates.put("measurements/rulers/key/title", "title");
+
+        assertThrows(IllegalArgumentException.class, () -> database.getReference().updateChildren(updates));
+        assertNull(database.getReference().get());
+
+    }
+
+    @Test
+    void listenerReceivesTheChangesOfItsNode() {
+
+        LocalRealtimeDatabase database = new LocalRealtimeDatabase();
+        List<Object> values = new ArrayList<>();
+
+        LocalRealtimeDatabase.ValueListener listener = values :: add;
+        database.getReference("digests").addValueEventListener(listener);
+
+        database.getReference("digests/key").setValue("digest");
+        database.getReference("segments/key").setValue("segment");
+        database.getReference().child("digests").removeEventListener(listener);
+        database.getReference("digests/key").removeValue();
+
+        Map<String, Object> digests = new HashMap<>();
+        digests.put("key", "digest");
+
+        assertEquals(Arrays.asList(null, digests), values);
+
+    }
+
+    @Test
+    void pageStartsAfterTheCursor() {
+
+        LocalRealtimeDatabase database = new LocalRealtimeDatabase();
+        LocalRealtimeDatabase.Reference typeReference = database.getReference("rulers");
+
+        for (String key : new String[] { "c", "a", "b", "d" }) {
+
+            RealtimeMeasure ruler = new RealtimeRuler();
+            ruler.setUpdatedAt((long) key.charAt(0));
+
+            typeReference.child(key).setValue(ruler);
+
+        }
+
+        assertEquals(Arrays.asList("b", "c"), new ArrayList<>(typeReference.getChildrenAfter("a", 2).keySet()));
+        assertEquals(Arrays.asList("c", "d"), new ArrayList<>(typeReference.getChildrenStartingAt("updatedAt", 'c').keySet()));
+
+    }
+
+}
@@ -0,0 +1,168 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMagnetometer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The round trips of the magnetometer samples through the remote encodings,
+ * the decoding time is measured by the {@link MagnetometerDecodeBenchmark}.
+ */
+class MagnetometerCodecTest {
+
+    @Test
+    void shortRecordingIsKeptIntoTheMeasure() {
+
+        RealtimeMagnetometer magnetometer = newMagnetometer(1_000);
+        List<String> segments = MagnetometerCodec.encode(magnetometer);
+
+        assertTrue(segments.isEmpty());
+        assertEquals(MagnetometerCodec.ENCODING_DELTA_V1, magnetometer.getEncoding());
+
+        RealtimeMagnetometer downloaded = download(magnetometer);
+        MagnetometerCodec.decode(downloaded);
+
+        assertSamples(magnetometer, downloaded);
+
+    }
+
+    @Test
+    void longRecordingIsSplitIntoSegments() {
+
+        RealtimeMagnetometer magnetometer = newMagnetometer(10_000);
+        List<String> segments = MagnetometerCodec.encode(magnetometer);
+
+        int expectedSegments = (10_000 + MagnetometerCodec.SEGMENT_SIZE - 1) / MagnetometerCodec.SEGMENT_SIZE;
+
+        assertEquals(expectedSegments, segments.size());
+        assertEquals(MagnetometerCodec.ENCODING_SEGMENTS_V1, magnetometer.getEncoding());
+        assertEquals(expectedSegments, magnetometer.getSegmentCount());
+
+        RealtimeMagnetometer downloaded = download(magnetometer);
+        MagnetometerCodec.decodeSegments(downloaded, segments);
+
+        assertSamples(magnetometer, downloaded);
+
+    }
+
+    @Test
+    void irregularSecondsAreWrittenIntoTheLists() {
+
+        int[]   seconds = { 0, 1, 3, 4, 9 };
+        float[] values  = { 40.5F, 41.25F, -12F, 0F, 63.75F };
+
+        RealtimeMagnetometer magnetometer = new RealtimeMagnetometer();
+        magnetometer.setUnpackedSamples(seconds, values);
+
+        assertTrue(MagnetometerCodec.encode(magnetometer).isEmpty());
+        assertEquals(MagnetometerCodec.ENCODING_LISTS, magnetometer.getEncoding());
+
+        RealtimeMagnetometer downloaded = download(magnetometer);
+        MagnetometerCodec.decode(downloaded);
+
+        assertArrayEquals(seconds, downloaded.getSampleSeconds());
+        assertArrayEquals(values, downloaded.getSampleValues());
+
+    }
+
+    @Test
+    void missingSegmentIsRejected() {
+
+        RealtimeMagnetometer magnetometer = newMagnetometer(10_000);
+        List<String> segments = MagnetometerCodec.encode(magnetometer);
+
+        RealtimeMagnetometer downloaded = download(magnetometer);
+        List<String> truncated = segments.subList(0, segments.size() - 1);
+
+        assertThrows(IllegalArgumentException.class, () -> MagnetometerCodec.decodeSegments(downloaded, truncated));
+
+    }
+
+    @Test
+    void downloadedSamplesHaveTheUploadedDigest() {
+
+        RealtimeMagnetometer magnetometer = newMagnetometer(10_000);
+        String uploadedDigest = MeasureDigest.ofPayload(magnetometer);
+
+        List<String> segments = MagnetometerCodec.encode(magnetometer);
+        RealtimeMagnetometer downloaded = download(magnetometer);
+
+        MagnetometerCodec.decodeSegments(downloaded, segments);
+
+        // the digested values are the quantized ones, not the uploaded floats.
+        assertEquals(uploadedDigest, MeasureDigest.ofPayload(downloaded));
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    /**
+     * @param sampleCount The number of samples, one per second.
+     * @return The not null magnetometer with unpacked samples.
+     */
+    @NotNull
+    static RealtimeMagnetometer newMagnetometer(int sampleCount) {
+
+        int[]   seconds = new int[sampleCount];
+        float[] values  = new float[sampleCount];
+
+        for (int i = 0 ; i < sampleCount ; i++) {
+
+            seconds[i] = i;
+            values[i]  = (float) (45 + 20 * Math.sin(i / 30.0));
+
+        }
+
+        RealtimeMagnetometer magnetometer = new RealtimeMagnetometer();
+        magnetometer.setUnpackedSamples(seconds, values);
+
+        return magnetometer;
+
+    }
+
+    /**
+     * @param uploaded The not null encoded magnetometer.
+     * @return The not null copy of the encoded fields, as they are read from the remote database.
+     */
+    @NotNull
+    private static RealtimeMagnetometer download(@NotNull RealtimeMagnetometer uploaded) {
+
+        RealtimeMagnetometer downloaded = new RealtimeMagnetometer();
+
+        downloaded.setEncoding(uploaded.getEncoding());
+        downloaded.setSamples(uploaded.getSamples());
+        downloaded.setSegmentCount(uploaded.getSegmentCount());
+        downloaded.setSeconds(uploaded.getSeconds());
+        downloaded.setValues(uploaded.getValues());
+
+        return downloaded;
+
+    }
+
+    private static void assertSamples(@NotNull RealtimeMagnetometer expected, @NotNull RealtimeMagnetometer actual) {
+
+        float[] expectedValues = expected.getSampleValues();
+        float[] actualValues   = actual.getSampleValues();
+
+        assertTrue(actual.isUnpacked());
+        assertArrayEquals(expected.getSampleSeconds(), actual.getSampleSeconds());
+        assertEquals(expectedValues.length, actualValues.length);
+
+        // the values are quantized, see MagnetometerCodec.QUANTUM.
+        for (int i = 0 ; i < expectedValues.length ; i++) {
+            assertEquals(expectedValues[i], actualValues[i], MagnetometerCodec.QUANTUM);
+        }
+
+    }
+
+}
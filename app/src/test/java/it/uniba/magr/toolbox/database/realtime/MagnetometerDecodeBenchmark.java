@@ -0,0 +1,194 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import com.google.firebase.database.core.utilities.encoding.CustomClassMapper;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMagnetometer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The decoding time and allocation of the magnetometer recordings of 1k, 10k and 100k samples.
+ *
+ * <p>
+ *     The reflective bean mapping of DataSnapshot.getValue(Class), that boxes
+ *     each sample into the lists, is compared with the {@link RealtimeDecoder},
+ *     both with the legacy lists and with the packed samples of the {@link MagnetometerCodec}.
+ *     Each decoding is warmed up before its measured iterations, the median time
+ *     and the mean bytes allocated by a decoding are published with the test report.
+ * </p>
+ *
+ * <p>
+ *     The times depend on the machine and are not checked, the allocations are:
+ *     the decoder must allocate less than the reflective mapping.
+ * </p>
+ */
+class MagnetometerDecodeBenchmark {
+
+    /**
+     * The decodings run before the measured ones, so the measured code is compiled.
+     */
+    private static final int WARM_UP_ITERATIONS  = 20;
+    private static final int MEASURED_ITERATIONS = 15;
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1_000, 10_000, 100_000 })
+    void decodeOfTheRecording(int sampleCount, @NotNull TestReporter reporter) {
+
+        // firebase reads the dates as beans, not as the milliseconds of the node.
+        Map<String, Object> legacyNode = RealtimeDecoderTest.newLegacyMagnetometerNode(sampleCount);
+        legacyNode.remove("startDate");
+
+        RealtimeMagnetometer uploaded = MagnetometerCodecTest.newMagnetometer(sampleCount);
+        List<String> segments = MagnetometerCodec.encode(uploaded);
+
+        Map<String, Object> packedNode = new HashMap<>();
+
+        packedNode.put("encoding", (long) uploaded.getEncoding());
+        packedNode.put("samples", uploaded.getSamples());
+        packedNode.put("segmentCount", (long) uploaded.getSegmentCount());
+
+        DecodeCost reflectiveCost = measure(sampleCount, () -> CustomClassMapper
+                .convertToCustomClass(legacyNode, RealtimeMagnetometer.class).getSeconds().size());
+
+        DecodeCost listsCost = measure(sampleCount, () -> RealtimeDecoder
+                .decode(legacyNode, RealtimeMagnetometer.class).getSampleSeconds().length);
+
+        DecodeCost packedCost = measure(sampleCount, () -> {
+
+            RealtimeMagnetometer magnetometer = RealtimeDecoder.decode(packedNode, RealtimeMagnetometer.class);
+
+            if (segments.isEmpty()) {
+                MagnetometerCodec.decode(magnetometer);
+            } else {
+                MagnetometerCodec.decodeSegments(magnetometer, segments);
+            }
+
+            return magnetometer.getSampleSeconds().length;
+
+        });
+
+        reporter.publishEntry("reflective lists of " + sampleCount, reflectiveCost.toString());
+        reporter.publishEntry("decoder lists of " + sampleCount, listsCost.toString());
+        reporter.publishEntry("decoder packed of " + sampleCount, packedCost.toString());
+
+        if (reflectiveCost.allocatedBytes >= 0) {
+
+            String costs = Arrays.asList(reflectiveCost, listsCost, packedCost).toString();
+
+            assertTrue(listsCost.allocatedBytes < reflectiveCost.allocatedBytes, costs);
+            assertTrue(packedCost.allocatedBytes < reflectiveCost.allocatedBytes, costs);
+
+        }
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    /**
+     * @param sampleCount The number of samples of the recording.
+     * @param decoding The not null decoding, it returns the number of decoded samples.
+     * @return The not null cost of the decoding.
+     */
+    @NotNull
+    private static DecodeCost measure(int sampleCount, @NotNull Decoding decoding) {
+
+        for (int i = 0 ; i < WARM_UP_ITERATIONS ; i++) {
+            assertEquals(sampleCount, decoding.decode());
+        }
+
+        long[] nanos = new long[MEASURED_ITERATIONS];
+        long startBytes = getAllocatedBytes();
+
+        for (int i = 0 ; i < MEASURED_ITERATIONS ; i++) {
+
+            long startNanos = System.nanoTime();
+            int decodedCount = decoding.decode();
+
+            nanos[i] = System.nanoTime() - startNanos;
+            assertEquals(sampleCount, decodedCount);
+
+        }
+
+        long endBytes = getAllocatedBytes();
+        Arrays.sort(nanos);
+
+        long allocatedBytes = startBytes < 0 ? -1 : (endBytes - startBytes) / MEASURED_ITERATIONS;
+        return new DecodeCost(nanos[MEASURED_ITERATIONS / 2], allocatedBytes);
+
+    }
+
+    /**
+     * @return The bytes allocated by the current thread, -1 if the JVM doesn't measure them.
+     */
+    private static long getAllocatedBytes() {
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+
+        if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+
+        return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+
+    }
+
+    private interface Decoding {
+
+        /**
+         * @return The number of decoded samples.
+         */
+        int decode();
+
+    }
+
+    /**
+     * The median time and the mean allocated bytes of a decoding.
+     */
+    private static class DecodeCost {
+
+        private final long medianNanos;
+        private final long allocatedBytes;
+
+        private DecodeCost(long medianNanos, long allocatedBytes) {
+
+            this.medianNanos    = medianNanos;
+            this.allocatedBytes = allocatedBytes;
+
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+
+            String allocated = allocatedBytes < 0 ? "n/a" : allocatedBytes + " bytes";
+            return String.format(Locale.ROOT, "median %d us, allocated %s",
+                    TimeUnit.NANOSECONDS.toMicros(medianNanos), allocated);
+
+        }
+
+    }
+
+}
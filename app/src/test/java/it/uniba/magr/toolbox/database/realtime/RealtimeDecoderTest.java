@@ -0,0 +1,157 @@
+package it.uniba.magr.toolbox.database.realtime;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeBarometer;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeMagnetometer;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeRuler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The decoding of the raw measure nodes, as firebase reads them:
+ * the integers are longs and the decimals are doubles.
+ */
+class RealtimeDecoderTest {
+
+    @Test
+    void rulerFieldsAreDecoded() {
+
+        Map<String, Object> node = newNode("Desk", 1_600_000_000_000L);
+        node.put("length", 12.5D);
+
+        RealtimeRuler ruler = RealtimeDecoder.decode(node, RealtimeRuler.class);
+
+        assertNotNull(ruler);
+        assertEquals("Desk", ruler.getTitle());
+        assertEquals("", ruler.getDescription());
+        assertEquals(12.5D, ruler.getLength());
+        assertEquals(1_600_000_000_000L, ruler.getUpdatedAtMillis());
+        assertEquals("digest", ruler.getDigest());
+
+    }
+
+    @Test
+    void barometerWithoutServerTimeIsDecoded() {
+
+        Map<String, Object> node = newNode("Window", null);
+        node.put("pressure", 1013L);
+
+        RealtimeBarometer barometer = RealtimeDecoder.decode(node, RealtimeBarometer.class);
+
+        assertNotNull(barometer);
+        assertEquals(1013D, barometer.getPressure());
+        assertEquals(0L, barometer.getUpdatedAtMillis());
+
+    }
+
+    @Test
+    void notMeasureNodeIsSkipped() {
+
+        assertNull(RealtimeDecoder.decode(null, RealtimeRuler.class));
+        assertNull(RealtimeDecoder.decode("text", RealtimeRuler.class));
+
+    }
+
+    @Test
+    void packedSamplesAreLeftPacked() {
+
+        RealtimeMagnetometer uploaded = MagnetometerCodecTest.newMagnetometer(1_000);
+        MagnetometerCodec.encode(uploaded);
+
+        Map<String, Object> node = newNode("Office", 1L);
+
+        node.put("encoding", (long) uploaded.getEncoding());
+        node.put("samples", uploaded.getSamples());
+        node.put("segmentCount", 0L);
+
+        RealtimeMagnetometer magnetometer = RealtimeDecoder.decode(node, RealtimeMagnetometer.class);
+
+        assertNotNull(magnetometer);
+        assertFalse(magnetometer.isUnpacked());
+        assertEquals(uploaded.getSamples(), magnetometer.getSamples());
+
+        MagnetometerCodec.decode(magnetometer);
+        assertArrayEquals(uploaded.getSampleSeconds(), magnetometer.getSampleSeconds());
+
+    }
+
+    @Test
+    void legacyListsAreUnpacked() {
+
+        Map<String, Object> node = newLegacyMagnetometerNode(1_000);
+        RealtimeMagnetometer magnetometer = RealtimeDecoder.decode(node, RealtimeMagnetometer.class);
+
+        assertNotNull(magnetometer);
+        assertTrue(magnetometer.isUnpacked());
+        assertEquals(1_000, magnetometer.getSampleSeconds().length);
+        assertEquals(999, magnetometer.getSampleSeconds()[999]);
+        assertEquals((float) (45 + 20 * Math.sin(999 / 30.0)), magnetometer.getSampleValues()[999]);
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    /**
+     * @param title The not null title.
+     * @param updatedAt The server time, null if the node has none.
+     * @return The not null raw node with the common fields.
+     */
+    @NotNull
+    private static Map<String, Object> newNode(@NotNull String title, Long updatedAt) {
+
+        Map<String, Object> node = new HashMap<>();
+
+        node.put("title", title);
+        node.put("startDate", 1_500_000_000_000L);
+        node.put("digest", "digest");
+
+        if (updatedAt != null) {
+            node.put("updatedAt", updatedAt);
+        }
+
+        return node;
+
+    }
+
+    /**
+     * @param sampleCount The number of samples, one per second.
+     * @return The not null raw node of a magnetometer written with the legacy lists.
+     */
+    @NotNull
+    static Map<String, Object> newLegacyMagnetometerNode(int sampleCount) {
+
+        List<Object> seconds = new ArrayList<>(sampleCount);
+        List<Object> values  = new ArrayList<>(sampleCount);
+
+        for (int i = 0 ; i < sampleCount ; i++) {
+
+            seconds.add((long) i);
+            values.add(45 + 20 * Math.sin(i / 30.0));
+
+        }
+
+        Map<String, Object> node = newNode("Legacy", null);
+
+        node.put("encoding", (long) MagnetometerCodec.ENCODING_LISTS);
+        node.put("seconds", seconds);
+        node.put("values", values);
+
+        return node;
+
+    }
+
+}
@@ -0,0 +1,181 @@
+package it.uniba.magr.toolbox.database.sync;
+
+import android.content.SharedPreferences;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Preferences kept in memory, so each test has its own state and
+ * the preferences of the app are never touched.
+ * The listeners of the changes are not supported.
+ */
+class InMemorySharedPreferences implements SharedPreferences {
+
+    @NotNull
+    private final Map<String, Object> values = new HashMap<>();
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<>(values);
+    }
+
+    @Nullable
+    @Override
+    public String getString(String key, @Nullable String defValue) {
+        return (String) get(key, defValue);
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        return (Set<String>) get(key, defValues);
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        return (Integer) get(key, defValue);
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        return (Long) get(key, defValue);
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        return (Float) get(key, defValue);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        return (Boolean) get(key, defValue);
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new InMemoryEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        throw new UnsupportedOperationException("The listeners are not supported");
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        throw new UnsupportedOperationException("The listeners are not supported");
+    }
+
+    @Nullable
+    private synchronized Object get(@NotNull String key, @Nullable Object defValue) {
+        return values.containsKey(key) ? values.get(key) : defValue;
+    }
+
+    /**
+     * The changes are applied together by commit or apply.
+     */
+    private class InMemoryEditor implements Editor {
+
+        /**
+         * The changed values, the removed ones are mapped to null.
+         */
+        @NotNull
+        private final Map<String, Object> changes = new HashMap<>();
+
+        private boolean cleared;
+
+        @Override
+        public Editor putString(String key, @Nullable String value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putStringSet(String key, @Nullable Set<String> values) {
+            return put(key, values);
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor remove(String key) {
+            return put(key, null);
+        }
+
+        @Override
+        public Editor clear() {
+
+            cleared = true;
+            return this;
+
+        }
+
+        @Override
+        public boolean commit() {
+
+            synchronized (InMemorySharedPreferences.this) {
+
+                if (cleared) {
+                    values.clear();
+                }
+
+                for (Map.Entry<String, Object> change : changes.entrySet()) {
+
+                    if (change.getValue() == null) {
+                        values.remove(change.getKey());
+                    } else {
+                        values.put(change.getKey(), change.getValue());
+                    }
+
+                }
+
+            }
+
+            return true;
+
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+
+        @NotNull
+        private Editor put(@NotNull String key, @Nullable Object value) {
+
+            changes.put(key, value);
+            return this;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,647 @@
+package it.uniba.magr.toolbox.database.sync;
+
+import androidx.room.DatabaseConfiguration;
+import androidx.room.InvalidationTracker;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import it.uniba.magr.toolbox.database.sqlite.SqliteManager;
+import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
+import it.uniba.magr.toolbox.database.sqlite.bean.Outbox;
+import it.uniba.magr.toolbox.database.sqlite.bean.Ruler;
+import it.uniba.magr.toolbox.database.sqlite.bean.embedded.MeasureAndBarometer;
+import it.uniba.magr.toolbox.database.sqlite.bean.embedded.MeasureAndRuler;
+import it.uniba.magr.toolbox.database.sqlite.dao.BarometersDao;
+import it.uniba.magr.toolbox.database.sqlite.dao.MagnetometersDao;
+import it.uniba.magr.toolbox.database.sqlite.dao.MeasurementsDao;
+import it.uniba.magr.toolbox.database.sqlite.dao.OutboxDao;
+import it.uniba.magr.toolbox.database.sqlite.dao.RulersDao;
+
+/**
+ * A local database kept in memory without sqlite, so the sync engine runs on a plain JVM.
+ * Only the measurements, the rulers and the outbox are stored: the rows are copied
+ * like room does and the transactions are serialized. The queries that the sync
+ * engine doesn't use are not supported.
+ */
+class InMemorySqliteManager extends SqliteManager {
+
+    private static final Comparator<Measure> CARD_ORDER = Comparator
+            .comparingInt(Measure :: getCardOrder)
+            .thenComparingInt(Measure :: getId);
+
+    @NotNull
+    private final TreeMap<Integer, Measure> measurements = new TreeMap<>();
+
+    /**
+     * The unique index of the measurements.
+     */
+    @NotNull
+    private final Map<String, Integer> idsByUuid = new HashMap<>();
+
+    @NotNull
+    private final TreeMap<Integer, Ruler> rulers = new TreeMap<>();
+
+    @NotNull
+    private final TreeMap<Integer, Outbox> outbox = new TreeMap<>();
+
+    private int nextMeasureId = 1;
+    private int nextOutboxId = 1;
+
+    @NotNull
+    private final MeasurementsDao measurementsDao = new InMemoryMeasurementsDao();
+
+    @NotNull
+    private final RulersDao rulersDao = new InMemoryRulersDao();
+
+    @NotNull
+    private final OutboxDao outboxDao = new InMemoryOutboxDao();
+
+    @Override
+    public MeasurementsDao measurementsDao() {
+        return measurementsDao;
+    }
+
+    @Override
+    public RulersDao rulersDao() {
+        return rulersDao;
+    }
+
+    @Override
+    public BarometersDao barometersDao() {
+        throw new UnsupportedOperationException("The barometers are not stored");
+    }
+
+    @Override
+    public MagnetometersDao magnetometersDao() {
+        throw new UnsupportedOperationException("The magnetometers are not stored");
+    }
+
+    @Override
+    public OutboxDao outboxDao() {
+        return outboxDao;
+    }
+
+    /**
+     * The transactions are serialized, the dao methods are serialized too.
+     * A failed transaction is not rolled back.
+     */
+    @Override
+    public void runInTransaction(@NotNull Runnable body) {
+
+        synchronized (this) {
+            body.run();
+        }
+
+    }
+
+    @NotNull
+    @Override
+    protected SupportSQLiteOpenHelper createOpenHelper(@NotNull DatabaseConfiguration config) {
+        throw new UnsupportedOperationException("There is no sqlite database");
+    }
+
+    @NotNull
+    @Override
+    protected InvalidationTracker createInvalidationTracker() {
+        return new InvalidationTracker(this);
+    }
+
+    @Override
+    public synchronized void clearAllTables() {
+
+        measurements.clear();
+        idsByUuid.clear();
+        rulers.clear();
+        outbox.clear();
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    @NotNull
+    private static Measure copy(@NotNull Measure measure) {
+
+        Measure copy = new Measure();
+
+        copy.setId(measure.getId());
+        copy.setUuid(measure.getUuid());
+        copy.setUserToken(measure.getUserToken());
+        copy.setType(measure.getType());
+        copy.setTitle(measure.getTitle());
+        copy.setDescription(measure.getDescription());
+        copy.setStartDate(measure.getStartDate());
+        copy.setCardOrder(measure.getCardOrder());
+        copy.setFirebaseSync(measure.isFirebaseSync());
+        copy.setDeleted(measure.isDeleted());
+        copy.setDigest(measure.getDigest());
+        copy.setPayloadDigest(measure.getPayloadDigest());
+
+        return copy;
+
+    }
+
+    @NotNull
+    private static Ruler copy(@NotNull Ruler ruler) {
+
+        Ruler copy = new Ruler();
+
+        copy.setMeasureId(ruler.getMeasureId());
+        copy.setLength(ruler.getLength());
+
+        return copy;
+
+    }
+
+    @NotNull
+    private static Outbox copy(@NotNull Outbox operation) {
+
+        Outbox copy = new Outbox();
+
+        copy.setId(operation.getId());
+        copy.setMeasureId(operation.getMeasureId());
+        copy.setOperation(operation.getOperation());
+        copy.setCreatedAt(operation.getCreatedAt());
+
+        return copy;
+
+    }
+
+    /**
+     * @param rows The not null rows.
+     * @return The not null sorted copies of the rows, like the card order index.
+     */
+    @NotNull
+    private static List<Measure> sortByCardOrder(@NotNull Iterable<Measure> rows) {
+
+        List<Measure> results = new ArrayList<>();
+
+        for (Measure measure : rows) {
+            results.add(copy(measure));
+        }
+
+        results.sort(CARD_ORDER);
+        return results;
+
+    }
+
+    /**
+     * The child rows are removed by cascade.
+     *
+     * @param id The id of the measure to remove.
+     * @return True if the measure existed.
+     */
+    private boolean removeMeasureRow(int id) {
+
+        Measure measure = measurements.remove(id);
+
+        if (measure == null) {
+            return false;
+        }
+
+        idsByUuid.remove(measure.getUuid());
+        rulers.remove(id);
+
+        return true;
+
+    }
+
+    /**
+     * @param row The not null row to store, it replaces the row with the same id.
+     */
+    private void putMeasureRow(@NotNull Measure row) {
+
+        Measure previous = measurements.put(row.getId(), row);
+
+        if (previous != null) {
+            idsByUuid.remove(previous.getUuid());
+        }
+
+        idsByUuid.put(row.getUuid(), row.getId());
+
+    }
+
+    /**
+     * The Measurements table of the local database.
+     */
+    private class InMemoryMeasurementsDao implements MeasurementsDao {
+
+        @Override
+        public List<Measure> getAll() {
+
+            synchronized (InMemorySqliteManager.this) {
+                return sortByCardOrder(measurements.values());
+            }
+
+        }
+
+        @Override
+        public List<Measure> getVisible() {
+
+            List<Measure> results = getAll();
+
+            results.removeIf(Measure :: isDeleted);
+            return results;
+
+        }
+
+        @Override
+        public List<Measure> getVisibleFirstPage(int limit) {
+
+            List<Measure> results = getVisible();
+            return new ArrayList<>(results.subList(0, Math.min(limit, results.size())));
+
+        }
+
+        @Override
+        public List<Measure> getVisiblePage(int afterOrder, int afterId, int limit) {
+
+            List<Measure> results = new ArrayList<>();
+
+            for (Measure measure : getVisible()) {
+
+                boolean after = measure.getCardOrder() > afterOrder
+                        || (measure.getCardOrder() == afterOrder && measure.getId() > afterId);
+
+                if (after && results.size() < limit) {
+                    results.add(measure);
+                }
+
+            }
+
+            return results;
+
+        }
+
+        @Override
+        public List<String> getExistingUuids(List<String> uuids) {
+
+            Set<String> keys = new HashSet<>(uuids);
+            List<String> results = new ArrayList<>();
+
+            synchronized (InMemorySqliteManager.this) {
+
+                for (String uuid : keys) {
+
+                    if (idsByUuid.containsKey(uuid)) {
+                        results.add(uuid);
+                    }
+
+                }
+
+            }
+
+            return results;
+
+        }
+
+        @Override
+        public List<Measure> getMeasurementsByUuids(List<String> uuids) {
+
+            Set<String> keys = new HashSet<>(uuids);
+            List<Measure> results = new ArrayList<>();
+
+            synchronized (InMemorySqliteManager.this) {
+
+                for (String uuid : keys) {
+
+                    Integer id = idsByUuid.get(uuid);
+
+                    if (id != null) {
+                        results.add(copy(measurements.get(id)));
+                    }
+
+                }
+
+            }
+
+            return results;
+
+        }
+
+        @Override
+        public List<Measure> getUnmappedMeasurements() {
+
+            List<Measure> results = getAll();
+
+            results.removeIf(measure -> !measure.getUuid().startsWith(SqliteManager.UNMAPPED_UUID_PREFIX));
+            return results;
+
+        }
+
+        @Override
+        public Measure getMeasure(int id) {
+
+            synchronized (InMemorySqliteManager.this) {
+
+                Measure measure = measurements.get(id);
+                return measure == null ? null : copy(measure);
+
+            }
+
+        }
+
+        @Override
+        public List<Measure> getMeasurements(String title) {
+
+            List<Measure> results = getAll();
+
+            results.removeIf(measure -> !measure.getTitle().equals(title));
+            return results;
+
+        }
+
+        @Override
+        public List<MeasureAndRuler> getRulerMeasure(int id) {
+            throw new UnsupportedOperationException("The joins are not supported");
+        }
+
+        @Override
+        public List<MeasureAndBarometer> getBarometerMeasure(int id) {
+            throw new UnsupportedOperationException("The joins are not supported");
+        }
+
+        /**
+         * Like sqlite, a row that has the same id or the same unique id is replaced.
+         */
+        @Override
+        public long insertMeasure(Measure measure) {
+
+            synchronized (InMemorySqliteManager.this) {
+
+                Measure row = copy(measure);
+
+                if (row.getId() == 0) {
+                    row.setId(nextMeasureId);
+                }
+
+                nextMeasureId = Math.max(nextMeasureId, row.getId() + 1);
+
+                Integer existingId = idsByUuid.get(row.getUuid());
+
+                if (existingId != null && existingId != row.getId()) {
+                    removeMeasureRow(existingId);
+                }
+
+                putMeasureRow(row);
+                return row.getId();
+
+            }
+
+        }
+
+        @Override
+        public void insertMeasurements(Measure... measurements) {
+
+            for (Measure measure : measurements) {
+                insertMeasure(measure);
+            }
+
+        }
+
+        @Override
+        public void updateMeasure(Measure measure) {
+
+            synchronized (InMemorySqliteManager.this) {
+
+                if (measurements.containsKey(measure.getId())) {
+                    putMeasureRow(copy(measure));
+                }
+
+            }
+
+        }
+
+        @Override
+        public void updateMeasurements(Measure... measurements) {
+
+            for (Measure measure : measurements) {
+                updateMeasure(measure);
+            }
+
+        }
+
+        @Override
+        public void removeMeasure(Measure measure) {
+
+            synchronized (InMemorySqliteManager.this) {
+                removeMeasureRow(measure.getId());
+            }
+
+        }
+
+        @Override
+        public void removeMeasurements(Measure... measurements) {
+
+            for (Measure measure : measurements) {
+                removeMeasure(measure);
+            }
+
+        }
+
+        @Override
+        public List<Integer> getPurgeableTombstones(int limit) {
+
+            List<Integer> results = new ArrayList<>();
+
+            synchronized (InMemorySqliteManager.this) {
+
+                Set<Integer> queuedIds = new HashSet<>();
+
+                for (Outbox operation : outbox.values()) {
+                    queuedIds.add(operation.getMeasureId());
+                }
+
+                for (Measure measure : measurements.values()) {
+
+                    if (measure.isDeleted() && !queuedIds.contains(measure.getId()) && results.size() < limit) {
+                        results.add(measure.getId());
+                    }
+
+                }
+
+            }
+
+            return results;
+
+        }
+
+        @Override
+        public int removeMeasurements(List<Integer> ids) {
+
+            int removed = 0;
+
+            synchronized (InMemorySqliteManager.this) {
+
+                for (int id : ids) {
+
+                    if (removeMeasureRow(id)) {
+                        removed++;
+                    }
+
+                }
+
+            }
+
+            return removed;
+
+        }
+
+        @Override
+        public int getLatestMeasureID() {
+
+            synchronized (InMemorySqliteManager.this) {
+                return measurements.isEmpty() ? 0 : measurements.lastKey();
+            }
+
+        }
+
+        @Override
+        public int getMaxOrder() {
+
+            int maxOrder = 0;
+
+            for (Measure measure : getAll()) {
+                maxOrder = Math.max(maxOrder, measure.getCardOrder());
+            }
+
+            return maxOrder;
+
+        }
+
+    }
+
+    /**
+     * The Rulers table of the local database.
+     */
+    private class InMemoryRulersDao implements RulersDao {
+
+        @Override
+        public Ruler getRuler(int measureId) {
+
+            synchronized (InMemorySqliteManager.this) {
+
+                Ruler ruler = rulers.get(measureId);
+                return ruler == null ? null : copy(ruler);
+
+            }
+
+        }
+
+        @Override
+        public void insertRuler(Ruler ruler) {
+
+            synchronized (InMemorySqliteManager.this) {
+
+                if (!measurements.containsKey(ruler.getMeasureId())) {
+                    throw new IllegalStateException("The measure " + ruler.getMeasureId() + " doesn't exist");
+                }
+
+                rulers.put(ruler.getMeasureId(), copy(ruler));
+
+            }
+
+        }
+
+        @Override
+        public void insertRulers(Ruler... rulers) {
+
+            for (Ruler ruler : rulers) {
+                insertRuler(ruler);
+            }
+
+        }
+
+    }
+
+    /**
+     * The Outbox table of the local database, the merge of the operations is the one of the dao.
+     */
+    private class InMemoryOutboxDao implements OutboxDao {
+
+        @Override
+        public List<Outbox> getPendingOperations() {
+
+            List<Outbox> results = new ArrayList<>();
+
+            synchronized (InMemorySqliteManager.this) {
+
+                for (Outbox operation : outbox.values()) {
+                    results.add(copy(operation));
+                }
+
+            }
+
+            return results;
+
+        }
+
+        @Override
+        public List<Outbox> getOperations(int measureId) {
+
+            List<Outbox> results = getPendingOperations();
+
+            results.removeIf(operation -> operation.getMeasureId() != measureId);
+            return results;
+
+        }
+
+        @Override
+        public int getPendingCount() {
+
+            synchronized (InMemorySqliteManager.this) {
+                return outbox.size();
+            }
+
+        }
+
+        @Override
+        public void insertOperation(Outbox operation) {
+
+            synchronized (InMemorySqliteManager.this) {
+
+                Outbox row = copy(operation);
+
+                row.setId(nextOutboxId++);
+                outbox.put(row.getId(), row);
+
+            }
+
+        }
+
+        @Override
+        public void removeOperations(Outbox... operations) {
+
+            synchronized (InMemorySqliteManager.this) {
+
+                for (Outbox operation : operations) {
+                    outbox.remove(operation.getId());
+                }
+
+            }
+
+        }
+
+        @Override
+        public void removeMeasureOperations(int measureId) {
+
+            synchronized (InMemorySqliteManager.this) {
+                outbox.values().removeIf(operation -> operation.getMeasureId() == measureId);
+            }
+
+        }
+
+    }
+
+}
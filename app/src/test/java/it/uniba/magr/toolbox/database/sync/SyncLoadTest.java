@@ -0,0 +1,343 @@
+package it.uniba.magr.toolbox.database.sync;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import it.uniba.magr.toolbox.database.metrics.SyncMetrics;
+import it.uniba.magr.toolbox.database.realtime.NotConnectedException;
+import it.uniba.magr.toolbox.database.realtime.RealtimeManager;
+import it.uniba.magr.toolbox.database.realtime.bean.RealtimeRuler;
+import it.uniba.magr.toolbox.database.sqlite.bean.Measure;
+import it.uniba.magr.toolbox.database.sqlite.bean.OutboxOperation;
+import it.uniba.magr.toolbox.database.sqlite.bean.Ruler;
+import it.uniba.magr.toolbox.database.sqlite.bean.Type;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The load of the synchronizations while the history grows, on the JVM:
+ * the sync engine runs on an in-memory local database against the
+ * {@link InMemoryRemoteStore}, whose round trips have a simulated latency.
+ *
+ * <p>
+ *     The round trips and the bytes are recorded by the store, the time is
+ *     the wall-clock one from the request to the end of the synchronization.
+ *     Only the first pull reads the whole history, the next synchronizations
+ *     cost the same round trips and bytes whatever the number of already
+ *     synchronized measurements, and their time is the time of the round trips.
+ *     The cost of each synchronization is published with the test report.
+ * </p>
+ */
+class SyncLoadTest {
+
+    /**
+     * The numbers of remote measurements already written before the tested synchronization.
+     */
+    private static final int[] HISTORY_SIZES = { 100, 1_000, 10_000 };
+
+    /**
+     * The number of remote measurements requested at a time by the first pull,
+     * see SyncEngine.PULL_PAGE_SIZE.
+     */
+    private static final int PULL_PAGE_SIZE = 100;
+
+    /**
+     * The simulated latency of a round trip.
+     */
+    private static final long LATENCY_MILLIS = 5L;
+
+    /**
+     * The max time spent by a synchronization apart from its round trips,
+     * it doesn't depend on the history.
+     */
+    private static final long LOCAL_WORK_MILLIS = 500L;
+
+    /**
+     * The max time waited for a synchronization.
+     */
+    private static final long SYNC_TIMEOUT_SECONDS = 60L;
+
+    private InMemorySqliteManager sqliteManager;
+    private InMemoryRemoteStore remoteStore;
+    private SyncEngine syncEngine;
+
+    @AfterEach
+    void closeEngine() {
+        close();
+    }
+
+    @Test
+    void firstPullReadsTheHistoryOnePageAtATime(@NotNull TestReporter reporter) throws InterruptedException {
+
+        for (int historySize : HISTORY_SIZES) {
+
+            open(historySize);
+            SyncCost cost = sync();
+
+            // a page shorter than the page size ends a type, each other remote type has an empty page.
+            int pages = historySize / PULL_PAGE_SIZE + 1;
+            int expectedRoundTrips = 1 + pages + RealtimeManager.REMOTE_TYPES.size() - 1;
+
+            reporter.publishEntry("first pull of " + historySize, cost.toString());
+
+            assertEquals(historySize, sqliteManager.measurementsDao().getAll().size());
+            assertEquals(expectedRoundTrips, cost.roundTrips, cost.toString());
+            assertEquals(0L, cost.bytesUp, cost.toString());
+            assertTrue(cost.elapsedMillis >= cost.roundTrips * LATENCY_MILLIS, cost.toString());
+
+            close();
+
+        }
+
+    }
+
+    @Test
+    void deltaPullCostDoesNotGrowWithTheHistory(@NotNull TestReporter reporter) throws InterruptedException {
+
+        SyncCost firstCost = null;
+
+        for (int historySize : HISTORY_SIZES) {
+
+            open(historySize);
+            sync();
+
+            remoteStore.putMeasure(newRemoteRuler(historySize + 1));
+            SyncCost cost = sync();
+
+            reporter.publishEntry("delta pull of " + historySize, cost.toString());
+
+            assertEquals(historySize + 1, sqliteManager.measurementsDao().getAll().size());
+            assertBoundedByRoundTrips(cost);
+
+            if (firstCost == null) {
+                firstCost = cost;
+            } else {
+                assertEquals(firstCost.roundTrips, cost.roundTrips, firstCost + " " + cost);
+                assertEquals(firstCost.bytesDown, cost.bytesDown, firstCost + " " + cost);
+            }
+
+            close();
+
+        }
+
+    }
+
+    @Test
+    void idleSyncDownloadsNothing(@NotNull TestReporter reporter) throws InterruptedException {
+
+        for (int historySize : HISTORY_SIZES) {
+
+            open(historySize);
+            sync();
+
+            SyncCost cost = sync();
+
+            reporter.publishEntry("idle sync of " + historySize, cost.toString());
+
+            // the liveness check and the changes since the mark.
+            assertEquals(2L, cost.roundTrips, cost.toString());
+            assertEquals(0L, cost.bytesDown, cost.toString());
+            assertEquals(0L, cost.bytesUp, cost.toString());
+            assertBoundedByRoundTrips(cost);
+
+            close();
+
+        }
+
+    }
+
+    @Test
+    void pushCostDoesNotGrowWithTheHistory(@NotNull TestReporter reporter)
+            throws InterruptedException, NotConnectedException {
+
+        SyncCost firstCost = null;
+
+        for (int historySize : HISTORY_SIZES) {
+
+            open(historySize);
+            sync();
+
+            insertLocalRuler();
+            SyncCost cost = sync();
+
+            reporter.publishEntry("push of " + historySize, cost.toString());
+
+            assertEquals(historySize + 1, remoteStore.getDigests().size());
+            assertBoundedByRoundTrips(cost);
+
+            // the digests manifest is downloaded whole, so the downloaded bytes are not compared.
+            if (firstCost == null) {
+                firstCost = cost;
+            } else {
+                assertEquals(firstCost.roundTrips, cost.roundTrips, firstCost + " " + cost);
+                assertEquals(firstCost.bytesUp, cost.bytesUp, firstCost + " " + cost);
+            }
+
+            close();
+
+        }
+
+    }
+
+    //
+    // PRIVATE METHODS
+    //
+
+    /**
+     * Create an empty local database and a remote store with the history.
+     * The state of the synchronization is isolated from the one of the app.
+     *
+     * @param historySize The number of remote measurements.
+     */
+    private void open(int historySize) {
+
+        sqliteManager = new InMemorySqliteManager();
+        remoteStore = new InMemoryRemoteStore();
+
+        for (int i = 1 ; i <= historySize ; i++) {
+            remoteStore.putMeasure(newRemoteRuler(i));
+        }
+
+        remoteStore.setLatencyMillis(LATENCY_MILLIS);
+
+        SyncState syncState = new SyncState(new InMemorySharedPreferences());
+        syncEngine = new SyncEngine(sqliteManager, remoteStore, syncState, new SyncMetrics());
+
+    }
+
+    private void close() {
+
+        if (syncEngine != null) {
+
+            assertTrue(syncEngine.shutdown());
+            syncEngine = null;
+
+        }
+
+        sqliteManager = null;
+        remoteStore = null;
+
+    }
+
+    /**
+     * Run a synchronization and wait for its end.
+     *
+     * @return The not null cost of the synchronization.
+     * @throws InterruptedException Invoked if the wait is interrupted.
+     */
+    @NotNull
+    private SyncCost sync() throws InterruptedException {
+
+        CountDownLatch completed = new CountDownLatch(1);
+        SyncEngine.SyncListener listener = localChanged -> completed.countDown();
+
+        remoteStore.getMetrics().reset();
+        syncEngine.addListener(listener);
+
+        long startNanos = System.nanoTime();
+
+        try {
+
+            syncEngine.requestSync();
+            assertTrue(completed.await(SYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS), "The sync has not been completed");
+
+        } finally {
+            syncEngine.removeListener(listener);
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return new SyncCost(remoteStore.getMetrics(), elapsedMillis);
+
+    }
+
+    /**
+     * @param cost The not null cost of a synchronization that doesn't read the history.
+     */
+    private static void assertBoundedByRoundTrips(@NotNull SyncCost cost) {
+
+        long roundTripsMillis = cost.roundTrips * LATENCY_MILLIS;
+
+        assertTrue(cost.elapsedMillis >= roundTripsMillis, cost.toString());
+        assertTrue(cost.elapsedMillis <= roundTripsMillis + LOCAL_WORK_MILLIS, cost.toString());
+
+    }
+
+    /**
+     * Save a local ruler to upload with the next synchronization.
+     */
+    private void insertLocalRuler() {
+
+        Measure measure = new Measure();
+
+        measure.setUuid(UUID.randomUUID().toString());
+        measure.setType(Type.RULER);
+        measure.setTitle("Local");
+
+        int measureId = (int) sqliteManager.measurementsDao().insertMeasure(measure);
+
+        Ruler ruler = new Ruler();
+
+        ruler.setMeasureId(measureId);
+        ruler.setLength(12.5D);
+
+        sqliteManager.rulersDao().insertRuler(ruler);
+        sqliteManager.outboxDao().enqueue(measureId, OutboxOperation.CREATE);
+
+    }
+
+    /**
+     * The titles have the same length, so the measurements have the same size.
+     *
+     * @param index The index of the measure.
+     * @return The not null remote ruler, written by the store with its server time and its digest.
+     */
+    @NotNull
+    private static RealtimeRuler newRemoteRuler(int index) {
+
+        RealtimeRuler ruler = new RealtimeRuler();
+
+        ruler.setUuid(UUID.randomUUID().toString());
+        ruler.setTitle(String.format(Locale.ROOT, "Remote %05d", index));
+        ruler.setLength(index);
+
+        return ruler;
+
+    }
+
+    /**
+     * The round trips, the bytes and the wall-clock time of a synchronization.
+     */
+    private static class SyncCost {
+
+        private final long roundTrips;
+        private final long bytesUp;
+        private final long bytesDown;
+        private final long elapsedMillis;
+
+        private SyncCost(@NotNull SyncMetrics metrics, long elapsedMillis) {
+
+            this.roundTrips    = metrics.getCalls();
+            this.bytesUp       = metrics.getBytesUp();
+            this.bytesDown     = metrics.getBytesDown();
+            this.elapsedMillis = elapsedMillis;
+
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return "roundTrips=" + roundTrips + " bytesUp=" + bytesUp
+                    + " bytesDown=" + bytesDown + " elapsed=" + elapsedMillis + "ms";
+        }
+
+    }
+
+}